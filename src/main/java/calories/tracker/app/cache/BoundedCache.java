@@ -0,0 +1,145 @@
+package calories.tracker.app.cache;
+
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ *
+ * A size bounded, least recently used cache whose entries expire a fixed time after being written.
+ *
+ * The hits, misses and evictions are published in the metric registry under cache.[name].*, along with the
+ * current size and the hit ratio.
+ *
+ * @param <K> - the key type
+ * @param <V> - the value type
+ */
+public class BoundedCache<K, V> {
+
+    private final int maxSize;
+    private final long timeToLiveMillis;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public BoundedCache(String name, int maxSize, long timeToLiveMillis, MetricRegistry metricRegistry) {
+        this.maxSize = maxSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.inc();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.hits = metricRegistry.counter(MetricRegistry.name("cache", name, "hits"));
+        this.misses = metricRegistry.counter(MetricRegistry.name("cache", name, "misses"));
+        this.evictions = metricRegistry.counter(MetricRegistry.name("cache", name, "evictions"));
+
+        metricRegistry.remove(MetricRegistry.name("cache", name, "size"));
+        metricRegistry.register(MetricRegistry.name("cache", name, "size"), (Gauge<Integer>) this::size);
+
+        metricRegistry.remove(MetricRegistry.name("cache", name, "hitRatio"));
+        metricRegistry.register(MetricRegistry.name("cache", name, "hitRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
+    }
+
+    /**
+     *
+     * @param key - the key to look up
+     * @return the cached value, or null if there is none or if it has expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+
+        if (entry == null) {
+            misses.inc();
+            return null;
+        }
+
+        if (entry.isExpired()) {
+            entries.remove(key);
+            evictions.inc();
+            misses.inc();
+            return null;
+        }
+
+        hits.inc();
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + timeToLiveMillis));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * removes all the entries whose key matches the given condition
+     */
+    public synchronized void invalidateIf(Predicate<K> condition) {
+        Iterator<K> keys = entries.keySet().iterator();
+
+        while (keys.hasNext()) {
+            if (condition.test(keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.getCount();
+    }
+
+    public long getMissCount() {
+        return misses.getCount();
+    }
+
+    public long getEvictionCount() {
+        return evictions.getCount();
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package calories.tracker.app.cache;
+
+
+import calories.tracker.app.dao.FirmRepository;
+import calories.tracker.app.dto.FirmDTO;
+import calories.tracker.app.services.FirmsChangedEvent;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *
+ * In-memory trigram index of the names and addresses of the firms of the recently active users, that suggests
+ * the firms matching what is being typed in the firm editor.
+ *
+ * Names are matched fuzzily: the texts are folded to lower case ASCII letters and digits (so that diacritics and
+ * punctuation do not matter), cut in trigrams, and the firms sharing the most trigrams with the query are ranked
+ * first - a typo only breaks the few trigrams around it. The last word of the query is taken as a prefix.
+ *
+ * - the firms of a user are indexed on the first suggestion for the user, and the least recently used users are
+ *   evicted once the estimated size of all the indexes exceeds the memory budget, @see UserIndexCache
+ * - on startup, the users who created firms most recently are indexed, up to the budget
+ * - saved and deleted firms are applied to the index once their transaction has committed, @see FirmsChangedEvent
+ *
+ * The index only sees the changes made through this application instance - the suggestions are only ids, read
+ * back from the database, so a firm deleted elsewhere is not suggested, but a firm renamed elsewhere is found by
+ * its former name until the user is indexed again. It is disabled by -Dfirms.nameIndex.enabled=false, and its
+ * budget is set in bytes by firms.nameIndex.maxBytes.
+ *
+ */
+@Component
+public class FirmNameIndex implements ApplicationListener<ApplicationEvent> {
+
+    private static final Logger LOGGER = Logger.getLogger(FirmNameIndex.class);
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    public static final int DEFAULT_WARM_UP_USERS = 100;
+
+    /**
+     * the longest query matched, in characters - the rest of a longer query is ignored
+     */
+    public static final int MAX_QUERY_LENGTH = 100;
+
+    private static final String NAME = "firmNameIndex";
+
+    @Autowired
+    private FirmRepository firmRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private final int warmUpUsers = Integer.getInteger("firms.nameIndex.warmUpUsers", DEFAULT_WARM_UP_USERS);
+    private final AtomicBoolean warmedUp = new AtomicBoolean();
+
+    private UserIndexCache<UserFirms> users;
+
+    @PostConstruct
+    public void init() {
+        users = new UserIndexCache<>(NAME, !"false".equals(System.getProperty("firms.nameIndex.enabled")),
+                Long.getLong("firms.nameIndex.maxBytes", DEFAULT_MAX_BYTES), this::load, (firms) -> firms.bytes,
+                metricRegistry);
+    }
+
+    /**
+     *
+     * finds the firms of a user best matching a query - must be called in a transaction, as the firms of the user
+     * are indexed on the first suggestion.
+     *
+     * @param username - the currently logged in username
+     * @param query - the beginning of a firm name (or address), possibly misspelled
+     * @param limit - the maximum number of firms to return
+     * @return - the ids of the best matching firms, best first, or null if the index is disabled or the user has too
+     * many firms to be held in memory
+     */
+    public List<Long> suggest(String username, String query, int limit) {
+        UserFirms firms = users.get(username);
+
+        if (firms == null) {
+            return null;
+        }
+
+        String normalized = TextFolding.fold(query.length() > MAX_QUERY_LENGTH ? query.substring(0, MAX_QUERY_LENGTH) : query);
+        return firms.search(normalized, limit);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof FirmsChangedEvent) {
+            apply((FirmsChangedEvent) event);
+        } else if (event instanceof ContextRefreshedEvent && warmedUp.compareAndSet(false, true)) {
+            warmUp();
+        }
+    }
+
+    /**
+     *
+     * indexes the firms of the users who created firms most recently, until the memory budget is used
+     *
+     * @return - the number of indexed users
+     */
+    public int warmUp() {
+        if (!users.isEnabled()) {
+            return 0;
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        return transactionTemplate.execute((status) -> {
+            int indexed = 0;
+
+            for (String username : firmRepository.findUsernamesByLatestFirm(warmUpUsers)) {
+                if (getTotalBytes() >= users.getMaxBytes() || users.get(username) == null) {
+                    break;
+                }
+                indexed++;
+            }
+
+            LOGGER.info("Indexed the firm names of " + indexed + " users, " + getTotalBytes() + " bytes.");
+
+            return indexed;
+        });
+    }
+
+    public boolean isEnabled() {
+        return users.isEnabled();
+    }
+
+    /**
+     * enables or disables the index - disabling it drops all the indexed firms
+     */
+    public void setEnabled(boolean enabled) {
+        users.setEnabled(enabled);
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        users.setMaxBytes(maxBytes);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public long getTotalBytes() {
+        return users.getTotalBytes();
+    }
+
+    public long getEvictionCount() {
+        return users.getEvictionCount();
+    }
+
+    /**
+     * applies the committed changes to the indexed firms of the user
+     */
+    private void apply(FirmsChangedEvent event) {
+        users.update(event.getUsername(), (firms) -> {
+            firms.apply(event.getSavedFirms(), event.getDeletedIds());
+            return firms;
+        });
+    }
+
+    /**
+     * indexes all the firms of a user, unless the estimated size of the index exceeds the given limit - the firms
+     * are counted first, so that the firms of a user that has far too many are not read at all
+     */
+    private UserFirms load(String username, long maxUserBytes) {
+        if (firmRepository.countFirms(username, null, null, null, null) * UserFirms.SLOT_BYTES > maxUserBytes) {
+            throw new UserIndexCache.TooLargeException();
+        }
+
+        UserFirms firms = new UserFirms();
+
+        firmRepository.scrollFirmNames(username, (row) -> {
+            firms.add((Long) row[0], (String) row[1], (String) row[2]);
+
+            if (firms.bytes > maxUserBytes) {
+                throw new UserIndexCache.TooLargeException();
+            }
+        });
+
+        return firms;
+    }
+
+    /**
+     *
+     * @param normalized - a text folded by TextFolding
+     * @param lastWordPrefix - true if the last word is only the beginning of a word, as in a query being typed
+     * @return - the distinct trigrams of the words of the text, each padded with a space before and after, sorted
+     */
+    static int[] trigrams(String normalized, boolean lastWordPrefix) {
+        int[] trigrams = new int[normalized.length() + 2];
+        int count = 0;
+        int wordStart = 0;
+
+        while (wordStart < normalized.length()) {
+            int wordEnd = normalized.indexOf(' ', wordStart);
+            wordEnd = wordEnd < 0 ? normalized.length() : wordEnd;
+
+            boolean prefix = lastWordPrefix && wordEnd == normalized.length();
+            int paddedLength = wordEnd - wordStart + (prefix ? 1 : 2);
+
+            for (int i = 0; i + 3 <= paddedLength; i++) {
+                trigrams[count++] = paddedChar(normalized, wordStart, wordEnd, i) << 16 |
+                        paddedChar(normalized, wordStart, wordEnd, i + 1) << 8 |
+                        paddedChar(normalized, wordStart, wordEnd, i + 2);
+            }
+
+            wordStart = wordEnd + 1;
+        }
+
+        Arrays.sort(trigrams, 0, count);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    private static int paddedChar(String text, int wordStart, int wordEnd, int i) {
+        return i == 0 || wordStart + i - 1 >= wordEnd ? ' ' : text.charAt(wordStart + i - 1);
+    }
+
+    /**
+     * the trigram index of the firms of a user - the firms are numbered in slots, and each trigram has the list of
+     * the slots (shifted left by one, the low bit telling name or address) whose name or address contains it
+     */
+    static final class UserFirms {
+
+        // the id, name reference and normalized name of a slot, plus its entry in slotsById
+        private static final long SLOT_BYTES = 8 + 8 + 40 + 64;
+        private static final long TRIGRAM_BYTES = 100;
+        private static final long POSTING_BYTES = 6;
+
+        private static final int NAME_WEIGHT = 2;
+        private static final int ADDRESS_WEIGHT = 1;
+
+        private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private long[] ids = new long[16];
+        private String[] names = new String[16];
+        private final BitSet deleted = new BitSet();
+        private final Map<Long, Integer> slotsById = new HashMap<>();
+        private Map<Integer, Postings> postings = new HashMap<>();
+        private int slots;
+        private int deletedCount;
+
+        private volatile long bytes;
+
+        private void add(long id, String name, String address) {
+            if (slots == ids.length) {
+                ids = Arrays.copyOf(ids, slots * 2);
+                names = Arrays.copyOf(names, slots * 2);
+            }
+
+            int slot = slots++;
+            String normalizedName = TextFolding.fold(name);
+            ids[slot] = id;
+            names[slot] = normalizedName;
+            slotsById.put(id, slot);
+
+            long added = SLOT_BYTES + 2L * normalizedName.length();
+            added += index(trigrams(normalizedName, false), slot << 1);
+            added += index(trigrams(TextFolding.fold(address), false), slot << 1 | 1);
+
+            bytes += added;
+        }
+
+        /**
+         * @return - the estimated bytes added to the postings
+         */
+        private long index(int[] trigrams, int posting) {
+            long added = 0;
+
+            for (int trigram : trigrams) {
+                Postings list = postings.get(trigram);
+
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(trigram, list);
+                    added += TRIGRAM_BYTES;
+                }
+
+                list.add(posting);
+                added += POSTING_BYTES;
+            }
+
+            return added;
+        }
+
+        private void remove(long id) {
+            Integer slot = slotsById.remove(id);
+
+            if (slot != null) {
+                deleted.set(slot);
+                deletedCount++;
+            }
+        }
+
+        /**
+         * applies saved and deleted firms - the postings of the replaced and deleted firms are only dropped once
+         * they are the majority
+         */
+        private void apply(List<FirmDTO> savedFirms, Collection<Long> deletedIds) {
+            lock.writeLock().lock();
+
+            try {
+                for (FirmDTO firm : savedFirms) {
+                    remove(firm.getId());
+                    add(firm.getId(), firm.getName(), firm.getAddress());
+                }
+
+                for (Long id : deletedIds) {
+                    remove(id);
+                }
+
+                if (deletedCount > 64 && deletedCount > slots - deletedCount) {
+                    compact();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void compact() {
+            int[] newSlots = new int[slots];
+            int live = 0;
+            long compactedBytes = 0;
+
+            for (int slot = 0; slot < slots; slot++) {
+                if (!deleted.get(slot)) {
+                    newSlots[slot] = live;
+                    ids[live] = ids[slot];
+                    names[live] = names[slot];
+                    slotsById.put(ids[live], live);
+                    compactedBytes += SLOT_BYTES + 2L * names[live].length();
+                    live++;
+                }
+            }
+
+            Map<Integer, Postings> compacted = new HashMap<>();
+
+            for (Map.Entry<Integer, Postings> entry : postings.entrySet()) {
+                Postings list = new Postings();
+
+                for (int i = 0; i < entry.getValue().size; i++) {
+                    int posting = entry.getValue().entries[i];
+
+                    if (!deleted.get(posting >>> 1)) {
+                        list.add(newSlots[posting >>> 1] << 1 | (posting & 1));
+                    }
+                }
+
+                if (list.size > 0) {
+                    compacted.put(entry.getKey(), list);
+                    compactedBytes += TRIGRAM_BYTES + list.size * POSTING_BYTES;
+                }
+            }
+
+            Arrays.fill(names, live, slots, null);
+            postings = compacted;
+            slots = live;
+            deleted.clear();
+            deletedCount = 0;
+            bytes = compactedBytes;
+        }
+
+        /**
+         * ranks the firms by the weight of the query trigrams found in their name (or address), any firm whose name
+         * starts with the query coming first - the ranks are packed in longs, and the best ones kept in a min-heap
+         */
+        private List<Long> search(String normalizedQuery, int limit) {
+            int[] trigrams = trigrams(normalizedQuery, true);
+
+            if (trigrams.length == 0 || limit <= 0) {
+                return new ArrayList<>();
+            }
+
+            int threshold = trigrams.length;
+            String wordPrefix = " " + normalizedQuery;
+
+            lock.readLock().lock();
+
+            try {
+                Scratch scratch = SCRATCH.get().ensureCapacity(slots);
+                int[] weights = scratch.weights;
+                int[] touched = scratch.touched;
+                int touchedCount = 0;
+
+                for (int trigram : trigrams) {
+                    Postings list = postings.get(trigram);
+
+                    for (int i = 0; list != null && i < list.size; i++) {
+                        int slot = list.entries[i] >>> 1;
+
+                        if (weights[slot] == 0) {
+                            touched[touchedCount++] = slot;
+                        }
+                        weights[slot] += (list.entries[i] & 1) == 0 ? NAME_WEIGHT : ADDRESS_WEIGHT;
+                    }
+                }
+
+                long[] heap = new long[limit];
+                int heapSize = 0;
+
+                for (int i = 0; i < touchedCount; i++) {
+                    int slot = touched[i];
+                    int weight = weights[slot];
+                    weights[slot] = 0;
+
+                    if (weight < threshold || deleted.get(slot)) {
+                        continue;
+                    }
+
+                    String name = names[slot];
+                    int bonus = name.startsWith(normalizedQuery) ? 2 * threshold * NAME_WEIGHT :
+                            name.contains(wordPrefix) ? threshold * NAME_WEIGHT : 0;
+
+                    // rank, then shorter names first, then the slot - compared by its id, @see #compare
+                    long rank = (long) (weight + bonus) << 48 | (long) (0xFFFF - Math.min(name.length(), 0xFFFF)) << 32 | slot;
+
+                    if (heapSize < limit) {
+                        heap[heapSize++] = rank;
+                        siftUp(heap, heapSize - 1);
+                    } else if (compare(rank, heap[0]) > 0) {
+                        heap[0] = rank;
+                        siftDown(heap, heapSize);
+                    }
+                }
+
+                // the worst is taken out of the heap first, so the list is filled from the end
+                Long[] found = new Long[heapSize];
+                for (int size = heapSize; size > 0; size--) {
+                    found[size - 1] = ids[(int) heap[0]];
+                    heap[0] = heap[size - 1];
+                    siftDown(heap, size - 1);
+                }
+
+                return new ArrayList<>(Arrays.asList(found));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * compares two packed ranks - equal ranks and name lengths are ordered by the ids of the firms, so that the
+         * latest firms come first whatever the order the firms were read in
+         */
+        private int compare(long rank, long other) {
+            int byRank = Long.compare(rank >>> 32, other >>> 32);
+            return byRank != 0 ? byRank : Long.compare(ids[(int) rank], ids[(int) other]);
+        }
+
+        private void siftUp(long[] heap, int i) {
+            while (i > 0 && compare(heap[(i - 1) / 2], heap[i]) > 0) {
+                swap(heap, i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void siftDown(long[] heap, int size) {
+            int i = 0;
+
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+
+                if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0) {
+                    child++;
+                }
+
+                if (compare(heap[i], heap[child]) <= 0) {
+                    return;
+                }
+
+                swap(heap, i, child);
+                i = child;
+            }
+        }
+
+        private static void swap(long[] heap, int i, int j) {
+            long tmp = heap[i];
+            heap[i] = heap[j];
+            heap[j] = tmp;
+        }
+    }
+
+    /**
+     * a growable list of postings
+     */
+    private static final class Postings {
+
+        private int[] entries = new int[4];
+        private int size;
+
+        private void add(int posting) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size + (size >> 1));
+            }
+            entries[size++] = posting;
+        }
+    }
+
+    /**
+     * the per thread arrays of a search, reused across searches - the weights are left at zero after each search
+     */
+    private static final class Scratch {
+
+        private int[] weights = new int[0];
+        private int[] touched = new int[0];
+
+        private Scratch ensureCapacity(int slots) {
+            if (weights.length < slots) {
+                weights = new int[slots];
+                touched = new int[slots];
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package calories.tracker.app.cache;
+
+
+import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.dao.MealTextSearch;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.SearchResult;
+import calories.tracker.app.services.MealsChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * Full-text search of the meal descriptions for the test profile, whose in-memory HSQLDB has no full-text index -
+ * an inverted index from the stems of the words of the descriptions to the meals, kept per user.
+ *
+ * - the meals of a user are indexed on the first search of the user
+ * - saved and deleted meals are applied to the index once their transaction has committed, and bulk changes drop
+ *   the index of the user, @see MealsChangedEvent
+ *
+ * The meals are ranked like ts_rank does on PostgreSQL, by the frequency of the query words in the description,
+ * weighted by their rarity among the meals of the user and normalized by the length of the description. The words
+ * are reduced by a light english stemmer (plurals, -ed, -ing and a final e), that is cruder than the snowball
+ * stemmer of PostgreSQL, so the two implementations can disagree on rare word forms.
+ *
+ * The index is not bounded in memory, it is only meant for the test data.
+ *
+ */
+@Component
+@Profile("test")
+public class InMemoryMealTextSearch implements MealTextSearch, ApplicationListener<MealsChangedEvent> {
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "as", "at", "by", "for", "from", "in", "of", "on", "or", "the", "to", "with"));
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    private final Map<String, UserMeals> users = new HashMap<>();
+    private final Map<String, Object> loading = new HashMap<>();
+
+    @Override
+    public SearchResult<MealDTO> findMeals(String username, String query, Date fromDate, Date toDate, Time fromTime,
+                                           Time toTime, int pageNumber, int pageSize) {
+
+        List<MealDTO> meals = meals(username).search(new LinkedHashSet<>(terms(query)), fromDate, toDate,
+                fromTime, toTime);
+
+        int from = (int) Math.min((long) (pageNumber - 1) * pageSize, meals.size());
+        int to = (int) Math.min((long) from + pageSize, meals.size());
+
+        return new SearchResult<>(meals.size(), new ArrayList<>(meals.subList(from, to)));
+    }
+
+    /**
+     * applies the committed changes to the index of the user
+     */
+    @Override
+    public synchronized void onApplicationEvent(MealsChangedEvent event) {
+        // a load running right now may have read the meals before the change
+        loading.remove(event.getUsername());
+
+        UserMeals meals = users.get(event.getUsername());
+
+        if (meals == null) {
+            return;
+        }
+
+        if (!event.isDetailed()) {
+            users.remove(event.getUsername());
+            return;
+        }
+
+        event.getDeletedIds().forEach(meals::remove);
+        event.getSavedMeals().forEach(meals::add);
+    }
+
+    private UserMeals meals(String username) {
+        Object token = new Object();
+
+        synchronized (this) {
+            UserMeals meals = users.get(username);
+
+            if (meals != null) {
+                return meals;
+            }
+
+            loading.put(username, token);
+        }
+
+        UserMeals loaded = new UserMeals();
+        mealRepository.scrollMeals(username, null, null, (row) -> loaded.add(new MealDTO((Long) row[0],
+                (Date) row[1], (Time) row[2], (String) row[3], (Long) row[4])));
+
+        synchronized (this) {
+            // the loaded meals are only kept if no change of the user was committed in the meantime
+            if (loading.get(username) == token) {
+                loading.remove(username);
+                users.put(username, loaded);
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     *
+     * @param text - a description or a query
+     * @return - the stems of the words of the text, without the stop words, in order
+     */
+    static List<String> terms(String text) {
+        String folded = TextFolding.fold(text);
+
+        if (folded.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> terms = new ArrayList<>();
+
+        for (String word : folded.split(" ")) {
+            if (!STOP_WORDS.contains(word)) {
+                terms.add(stem(word));
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     *
+     * @param word - a lower case word
+     * @return - the word without its plural, -ed or -ing ending and final e, so that salmon, glazes, glazed and
+     * glazing share their stems with the singular forms
+     */
+    static String stem(String word) {
+        if (word.length() <= 3) {
+            return word;
+        }
+
+        String stem = word;
+
+        if (stem.endsWith("ies")) {
+            stem = stem.substring(0, stem.length() - 3) + "y";
+        } else if (stem.endsWith("sses") || stem.endsWith("shes") || stem.endsWith("ches") || stem.endsWith("xes")
+                || stem.endsWith("zzes") || stem.endsWith("oes")) {
+            stem = stem.substring(0, stem.length() - 2);
+        } else if (stem.endsWith("s") && !stem.endsWith("ss") && !stem.endsWith("us")) {
+            stem = stem.substring(0, stem.length() - 1);
+        }
+
+        if (stem.endsWith("ing") && stem.length() > 5) {
+            stem = undouble(stem.substring(0, stem.length() - 3));
+        } else if (stem.endsWith("ed") && stem.length() > 4) {
+            stem = undouble(stem.substring(0, stem.length() - 2));
+        }
+
+        if (stem.endsWith("e") && stem.length() > 3) {
+            stem = stem.substring(0, stem.length() - 1);
+        }
+
+        return stem;
+    }
+
+    /**
+     * chopp (from chopped) becomes chop, but stuff and grill stay
+     */
+    private static String undouble(String stem) {
+        int length = stem.length();
+
+        if (length > 2 && stem.charAt(length - 1) == stem.charAt(length - 2) && "bdgmnprt".indexOf(stem.charAt(length - 1)) >= 0) {
+            return stem.substring(0, length - 1);
+        }
+
+        return stem;
+    }
+
+    /**
+     * the inverted index of the meals of a user
+     */
+    private static final class UserMeals {
+
+        private final Map<Long, IndexedMeal> meals = new HashMap<>();
+        private final Map<String, Set<Long>> postings = new HashMap<>();
+
+        private synchronized void add(MealDTO meal) {
+            remove(meal.getId());
+
+            IndexedMeal indexed = new IndexedMeal(meal, terms(meal.getDescription()));
+            meals.put(meal.getId(), indexed);
+
+            for (String term : indexed.terms) {
+                postings.computeIfAbsent(term, (key) -> new HashSet<>()).add(meal.getId());
+            }
+        }
+
+        private synchronized void remove(Long id) {
+            IndexedMeal indexed = meals.remove(id);
+
+            if (indexed == null) {
+                return;
+            }
+
+            for (String term : indexed.terms) {
+                Set<Long> ids = postings.get(term);
+
+                if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+
+        /**
+         * @return - all the meals in the criteria containing all the terms, the most relevant first
+         */
+        private synchronized List<MealDTO> search(Set<String> terms, Date fromDate, Date toDate, Time fromTime,
+                                                  Time toTime) {
+            if (terms.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            Set<Long> smallest = null;
+
+            for (String term : terms) {
+                Set<Long> ids = postings.getOrDefault(term, Collections.emptySet());
+                smallest = smallest == null || ids.size() < smallest.size() ? ids : smallest;
+            }
+
+            int fromSecond = fromTime != null ? fromTime.toLocalTime().toSecondOfDay() : Integer.MIN_VALUE;
+            int toSecond = toTime != null ? toTime.toLocalTime().toSecondOfDay() : Integer.MAX_VALUE;
+            List<IndexedMeal> found = new ArrayList<>();
+
+            for (Long id : smallest) {
+                IndexedMeal meal = meals.get(id);
+                long date = meal.meal.getDate().getTime();
+                int second = meal.meal.getTime().toLocalTime().toSecondOfDay();
+
+                if (date >= fromDate.getTime() && date <= toDate.getTime() && second >= fromSecond
+                        && second <= toSecond && containsAll(meal, terms)) {
+                    meal.rank = rank(meal, terms);
+                    found.add(meal);
+                }
+            }
+
+            found.sort(Comparator.comparingDouble((IndexedMeal meal) -> -meal.rank)
+                    .thenComparing((IndexedMeal meal) -> -meal.meal.getDate().getTime())
+                    .thenComparing((IndexedMeal meal) -> meal.meal.getTime().toLocalTime())
+                    .thenComparing((IndexedMeal meal) -> meal.meal.getId()));
+
+            List<MealDTO> result = new ArrayList<>(found.size());
+            found.forEach((meal) -> result.add(meal.meal));
+
+            return result;
+        }
+
+        private boolean containsAll(IndexedMeal meal, Set<String> terms) {
+            for (String term : terms) {
+                if (!postings.get(term).contains(meal.meal.getId())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double rank(IndexedMeal meal, Set<String> terms) {
+            double rank = 0;
+
+            for (String term : terms) {
+                int frequency = Collections.frequency(meal.terms, term);
+                rank += frequency * Math.log(1 + (double) meals.size() / postings.get(term).size());
+            }
+
+            return rank / Math.sqrt(meal.terms.size());
+        }
+    }
+
+    private static final class IndexedMeal {
+
+        private final MealDTO meal;
+        private final List<String> terms;
+        private double rank;
+
+        private IndexedMeal(MealDTO meal, List<String> terms) {
+            this.meal = meal;
+            this.terms = terms;
+        }
+    }
+}
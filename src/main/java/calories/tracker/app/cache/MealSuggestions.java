@@ -0,0 +1,278 @@
+package calories.tracker.app.cache;
+
+
+import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.dto.MealSuggestionDTO;
+import calories.tracker.app.services.MealsChangedEvent;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * In-memory index of the meal descriptions each recently active user logged before, that suggests the
+ * descriptions starting with what the user is typing.
+ *
+ * The descriptions of a user are kept in a TreeMap by their folded form (lower case, without diacritics and
+ * punctuation, @see TextFolding), so that the descriptions with a prefix are a range of the map. Each description
+ * is ranked by frecency: every meal adds a weight that doubles every HALF_LIFE_DAYS of its date, so a description
+ * logged often wins, but a description logged a few times lately wins over one logged often long ago. The weights
+ * are summed as logarithms, which keeps the rank of a description independent of the current date.
+ *
+ * - the descriptions of a user are read on the first suggestion for the user, and the least recently used users
+ *   are evicted once the estimated size of all the indexes exceeds the memory budget, @see UserIndexCache
+ * - new meals are added once their transaction has committed, @see MealsChangedEvent - edits, deletes and imports
+ *   drop the descriptions of the user, which are read again on the next suggestion. A saved meal is an edit if its
+ *   id is one of the meals already read, as the ids are allocated in blocks per instance and are not increasing
+ *
+ * It is disabled by -Dmeals.suggestions.enabled=false, and its budget is set in bytes by meals.suggestions.maxBytes.
+ *
+ */
+@Component
+public class MealSuggestions implements ApplicationListener<MealsChangedEvent> {
+
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    public static final double HALF_LIFE_DAYS = 30;
+
+    private static final String NAME = "mealSuggestions";
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private UserIndexCache<UserDescriptions> users;
+
+    @PostConstruct
+    public void init() {
+        users = new UserIndexCache<>(NAME, !"false".equals(System.getProperty("meals.suggestions.enabled")),
+                Long.getLong("meals.suggestions.maxBytes", DEFAULT_MAX_BYTES), this::load,
+                (descriptions) -> descriptions.bytes, metricRegistry);
+    }
+
+    /**
+     *
+     * suggests the descriptions of a user starting with a prefix - must be called in a transaction, as the
+     * descriptions of the user are read on the first suggestion.
+     *
+     * @param username - the currently logged in username
+     * @param prefix - the beginning of a description, compared without case, diacritics and punctuation
+     * @param limit - the maximum number of suggestions
+     * @return - the suggestions, most frequently and recently used first, or null if the index is disabled or the
+     * user has too many distinct descriptions to be held in memory
+     */
+    public List<MealSuggestionDTO> suggest(String username, String prefix, int limit) {
+        UserDescriptions descriptions = users.get(username);
+
+        if (descriptions == null) {
+            return null;
+        }
+
+        return descriptions.suggest(TextFolding.fold(prefix), limit);
+    }
+
+    @Override
+    public void onApplicationEvent(MealsChangedEvent event) {
+        users.update(event.getUsername(), (descriptions) -> event.isDetailed() && event.getDeletedIds().isEmpty()
+                && descriptions.addNew(event.getSavedMeals()) ? descriptions : null);
+    }
+
+    public boolean isEnabled() {
+        return users.isEnabled();
+    }
+
+    /**
+     * enables or disables the index - disabling it drops all the indexed descriptions
+     */
+    public void setEnabled(boolean enabled) {
+        users.setEnabled(enabled);
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        users.setMaxBytes(maxBytes);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public long getTotalBytes() {
+        return users.getTotalBytes();
+    }
+
+    public long getMissCount() {
+        return users.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return users.getEvictionCount();
+    }
+
+    /**
+     * reads the descriptions of all the meals of a user, unless their estimated size exceeds the given limit
+     */
+    private UserDescriptions load(String username, long maxUserBytes) {
+        UserDescriptions descriptions = new UserDescriptions();
+
+        mealRepository.scrollMeals(username, null, null, (row) -> {
+            descriptions.load((Long) row[0], (Date) row[1], (Time) row[2], (String) row[3], (Long) row[4]);
+
+            if (descriptions.bytes > maxUserBytes) {
+                throw new UserIndexCache.TooLargeException();
+            }
+        });
+
+        return descriptions.loaded();
+    }
+
+    /**
+     * the descriptions of a user, by folded description, with the ids of the meals read so far
+     */
+    private static final class UserDescriptions {
+
+        // the TreeMap entry, the folded key and the Description, plus two bytes per character of the key and text
+        private static final long DESCRIPTION_BYTES = 40 + 40 + 40 + 64;
+        private static final long LOADED_ID_BYTES = 8;
+        private static final long ADDED_ID_BYTES = 64;
+
+        private final TreeMap<String, Description> descriptions = new TreeMap<>();
+
+        // the ids of the meals read on load, sorted once loaded, and of the meals added since
+        private long[] loadedIds = new long[64];
+        private int loadedCount;
+        private final Set<Long> addedIds = new HashSet<>();
+
+        private volatile long bytes;
+
+        private synchronized void load(Long id, Date date, Time time, String text, Long calories) {
+            if (loadedCount == loadedIds.length) {
+                loadedIds = Arrays.copyOf(loadedIds, loadedCount * 2);
+            }
+
+            loadedIds[loadedCount++] = id;
+            bytes += LOADED_ID_BYTES;
+            add(date, time, text, calories);
+        }
+
+        private synchronized UserDescriptions loaded() {
+            loadedIds = Arrays.copyOf(loadedIds, loadedCount);
+            Arrays.sort(loadedIds);
+            return this;
+        }
+
+        private void add(Date date, Time time, String text, Long calories) {
+            String key = TextFolding.fold(text);
+
+            if (key.isEmpty()) {
+                return;
+            }
+
+            Description description = descriptions.get(key);
+
+            if (description == null) {
+                description = new Description();
+                descriptions.put(key, description);
+                bytes += DESCRIPTION_BYTES + 2L * key.length() + 2L * text.length();
+            }
+
+            description.used(date, time, text, calories);
+        }
+
+        /**
+         * adds the descriptions of new meals
+         *
+         * @return - false if some meals are edits of meals already read, whose previous description is unknown
+         */
+        private synchronized boolean addNew(List<MealDTO> meals) {
+            for (MealDTO meal : meals) {
+                if (Arrays.binarySearch(loadedIds, meal.getId()) >= 0 || addedIds.contains(meal.getId())) {
+                    return false;
+                }
+            }
+
+            for (MealDTO meal : meals) {
+                addedIds.add(meal.getId());
+                bytes += ADDED_ID_BYTES;
+                add(meal.getDate(), meal.getTime(), meal.getDescription(), meal.getCalories());
+            }
+
+            return true;
+        }
+
+        private synchronized List<MealSuggestionDTO> suggest(String prefix, int limit) {
+            if (prefix.isEmpty() || limit <= 0) {
+                return new ArrayList<>();
+            }
+
+            PriorityQueue<Description> best = new PriorityQueue<>(limit + 1, Description::compareTo);
+
+            for (Description description : descriptions.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                if (best.size() < limit) {
+                    best.add(description);
+                } else if (description.compareTo(best.peek()) > 0) {
+                    best.poll();
+                    best.add(description);
+                }
+            }
+
+            List<MealSuggestionDTO> suggestions = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                Description description = best.poll();
+                suggestions.add(0, new MealSuggestionDTO(description.text, description.calories, description.count));
+            }
+
+            return suggestions;
+        }
+    }
+
+    /**
+     * a description with its rank, and the spelling and calories of its latest meal
+     */
+    private static final class Description implements Comparable<Description> {
+
+        private String text;
+        private Long calories;
+        private int count;
+        private long lastUsed = Long.MIN_VALUE;
+        private double logWeight = Double.NEGATIVE_INFINITY;
+
+        private void used(Date date, Time time, String text, Long calories) {
+            long day = TimeUnit.MILLISECONDS.toDays(date.getTime());
+            long usedAt = day * 86400 + time.toLocalTime().toSecondOfDay();
+
+            // log2(2^a + 2^b), without computing the weights themselves
+            double mealLogWeight = day / HALF_LIFE_DAYS;
+            double max = Math.max(logWeight, mealLogWeight);
+            logWeight = max + Math.log1p(Math.pow(2, Math.min(logWeight, mealLogWeight) - max)) / Math.log(2);
+
+            count++;
+
+            if (usedAt >= lastUsed) {
+                lastUsed = usedAt;
+                this.text = text;
+                this.calories = calories;
+            }
+        }
+
+        @Override
+        public int compareTo(Description other) {
+            int byWeight = Double.compare(logWeight, other.logWeight);
+            return byWeight != 0 ? byWeight : Long.compare(lastUsed, other.lastUsed);
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package calories.tracker.app.cache;
+
+
+import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.MealCursor;
+import calories.tracker.app.model.SearchResult;
+import calories.tracker.app.services.MealsChangedEvent;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Time;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * An optional in-memory copy of all the meals of the recently active users, that answers the meal searches
+ * without going to the database.
+ *
+ * The meals of a user are held in columns of primitive arrays, sorted in the search order (date desc, time asc,
+ * id asc), so that a search is a binary search on the date range followed by a scan of that range, and only the
+ * meals of the returned page are materialized.
+ *
+ * - the meals of a user are loaded on the first search of the user, and the least recently searched users are
+ *   evicted once the estimated size of all the loaded meals exceeds the memory budget, @see UserIndexCache
+ * - saved and deleted meals are applied to the loaded copy once their transaction has committed, @see
+ *   MealsChangedEvent
+ * - the loaded copies are regularly compared with the database, and dropped if they differ
+ *
+ * The copies only see the changes made through this application instance, so the working set must stay disabled
+ * when several instances share the database. It is enabled by the meals.workingSet.enabled system property, and
+ * its budget is set in bytes by meals.workingSet.maxBytes.
+ *
+ */
+@Component
+public class MealWorkingSet implements ApplicationListener<MealsChangedEvent> {
+
+    private static final Logger LOGGER = Logger.getLogger(MealWorkingSet.class);
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String NAME = "mealWorkingSet";
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private UserIndexCache<UserMeals> users;
+    private Counter inconsistencies;
+
+    @PostConstruct
+    public void init() {
+        users = new UserIndexCache<>(NAME, Boolean.getBoolean("meals.workingSet.enabled"),
+                Long.getLong("meals.workingSet.maxBytes", DEFAULT_MAX_BYTES), this::load, (meals) -> meals.bytes,
+                metricRegistry);
+        inconsistencies = metricRegistry.counter(MetricRegistry.name("cache", NAME, "inconsistencies"));
+    }
+
+    /**
+     *
+     * finds a page of meals of a user, given the bellow criteria - must be called in a transaction, as the meals
+     * of the user are loaded on the first search.
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param offset - the number of matching meals to skip
+     * @param maxResults - the maximum number of meals to return
+     * @return - the matching meals and the exact total, or null if the working set
+     * is disabled or the user has too many meals to be held in memory
+     */
+    public SearchResult<MealDTO> findMeals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime,
+                                           long offset, int maxResults) {
+        UserMeals meals = users.get(username);
+
+        if (meals == null) {
+            return null;
+        }
+
+        int start = meals.firstOnOrBefore(toDate);
+        int end = meals.firstBefore(fromDate);
+        int fromSecond = fromTime != null ? secondOfDay(fromTime) : Integer.MIN_VALUE;
+        int toSecond = toTime != null ? secondOfDay(toTime) : Integer.MAX_VALUE;
+
+        List<MealDTO> page = new ArrayList<>(Math.min(maxResults, 100));
+        long count = 0;
+
+        for (int i = start; i < end; i++) {
+            if (meals.times[i] >= fromSecond && meals.times[i] <= toSecond) {
+                if (count >= offset && page.size() < maxResults) {
+                    page.add(meals.toMealDTO(i));
+                }
+                count++;
+            }
+        }
+
+        return new SearchResult<>(count, page);
+    }
+
+    /**
+     *
+     * finds the meals of a user right after (or before) a given cursor - must be called in a transaction, as the
+     * meals of the user are loaded on the first search.
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param cursor - the position to seek from
+     * @param maxResults - the maximum number of meals to return
+     * @return - the matching meals in search order and the exact total, or null if the
+     * working set is disabled or the user has too many meals to be held in memory
+     */
+    public SearchResult<MealDTO> findMealsByCursor(String username, Date fromDate, Date toDate, Time fromTime,
+                                                   Time toTime, MealCursor cursor, int maxResults) {
+        UserMeals meals = users.get(username);
+
+        if (meals == null) {
+            return null;
+        }
+
+        int start = meals.firstOnOrBefore(toDate);
+        int end = meals.firstBefore(fromDate);
+        int fromSecond = fromTime != null ? secondOfDay(fromTime) : Integer.MIN_VALUE;
+        int toSecond = toTime != null ? secondOfDay(toTime) : Integer.MAX_VALUE;
+
+        long count = 0;
+
+        for (int i = start; i < end; i++) {
+            if (meals.times[i] >= fromSecond && meals.times[i] <= toSecond) {
+                count++;
+            }
+        }
+
+        long cursorDate = cursor.getDate().getTime();
+        int cursorTime = secondOfDay(cursor.getTime());
+        long cursorId = cursor.getId();
+        List<MealDTO> page = new ArrayList<>(Math.min(maxResults, 100));
+
+        if (cursor.getDirection() == MealCursor.Direction.NEXT) {
+            for (int i = Math.max(start, meals.firstAfter(cursorDate, cursorTime, cursorId, false));
+                 i < end && page.size() < maxResults; i++) {
+                if (meals.times[i] >= fromSecond && meals.times[i] <= toSecond) {
+                    page.add(meals.toMealDTO(i));
+                }
+            }
+        } else {
+            for (int i = Math.min(end, meals.firstAfter(cursorDate, cursorTime, cursorId, true)) - 1;
+                 i >= start && page.size() < maxResults; i--) {
+                if (meals.times[i] >= fromSecond && meals.times[i] <= toSecond) {
+                    page.add(meals.toMealDTO(i));
+                }
+            }
+            Collections.reverse(page);
+        }
+
+        return new SearchResult<>(count, page);
+    }
+
+    /**
+     * applies the committed changes to the loaded meals of the user
+     */
+    @Override
+    public void onApplicationEvent(MealsChangedEvent event) {
+        users.update(event.getUsername(), (meals) -> event.isDetailed() ?
+                meals.apply(event.getSavedMeals(), event.getDeletedIds()) : null);
+    }
+
+    /**
+     *
+     * compares the loaded meals of each user with the database, and drops the ones that differ
+     *
+     * @return - the number of users whose loaded meals differed from the database
+     */
+    public int verify() {
+        List<Map.Entry<String, UserMeals>> loaded = users.entries();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        int inconsistent = 0;
+
+        for (Map.Entry<String, UserMeals> entry : loaded) {
+            UserMeals actual = transactionTemplate.execute((status) -> load(entry.getKey(), Long.MAX_VALUE));
+
+            // meals changed since the copy was taken are not compared, the change may not be read yet
+            if (!entry.getValue().sameAs(actual) && users.remove(entry.getKey(), entry.getValue())) {
+                inconsistencies.inc();
+                inconsistent++;
+                LOGGER.warn("The loaded meals of user " + entry.getKey() + " differed from the database, dropped.");
+            }
+        }
+
+        return inconsistent;
+    }
+
+    @Scheduled(fixedDelay = 15 * 60 * 1000)
+    public void scheduledVerify() {
+        if (users.isEnabled()) {
+            verify();
+        }
+    }
+
+    public boolean isEnabled() {
+        return users.isEnabled();
+    }
+
+    /**
+     * enables or disables the working set - disabling it drops all the loaded meals
+     */
+    public void setEnabled(boolean enabled) {
+        users.setEnabled(enabled);
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        users.setMaxBytes(maxBytes);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public long getTotalBytes() {
+        return users.getTotalBytes();
+    }
+
+    public long getHitCount() {
+        return users.getHitCount();
+    }
+
+    public long getMissCount() {
+        return users.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return users.getEvictionCount();
+    }
+
+    /**
+     * reads all the meals of a user, unless their estimated size exceeds the given limit - the meals are counted
+     * first, so that the meals of a user that has far too many are not read at all
+     */
+    private UserMeals load(String username, long maxUserBytes) {
+        long maxMeals = maxUserBytes / UserMeals.MEAL_BYTES + 1;
+
+        if (maxMeals < Integer.MAX_VALUE && mealRepository.countMeals(username, maxMeals) >= maxMeals) {
+            throw new UserIndexCache.TooLargeException();
+        }
+
+        UserMeals.Builder builder = new UserMeals.Builder(64);
+
+        mealRepository.scrollMeals(username, null, null, (row) -> {
+            builder.add((Long) row[0], ((Date) row[1]).getTime(), secondOfDay((Time) row[2]), (Long) row[4],
+                    (String) row[3]);
+
+            if (builder.bytes > maxUserBytes) {
+                throw new UserIndexCache.TooLargeException();
+            }
+        });
+
+        return builder.build();
+    }
+
+    private static int secondOfDay(Time time) {
+        return time.toLocalTime().toSecondOfDay();
+    }
+
+    /**
+     * the meals of a user, in columns sorted in the search order - never modified once built
+     */
+    static final class UserMeals {
+
+        // array slots, reference and boxed id of each meal, plus the header and characters of its description
+        private static final long MEAL_BYTES = 8 + 8 + 4 + 8 + 8;
+        private static final long STRING_BYTES = 40;
+
+        private final long[] ids;
+        private final long[] dates;
+        private final int[] times;
+        private final long[] calories;
+        private final String[] descriptions;
+        private final long bytes;
+
+        private UserMeals(long[] ids, long[] dates, int[] times, long[] calories, String[] descriptions, long bytes) {
+            this.ids = ids;
+            this.dates = dates;
+            this.times = times;
+            this.calories = calories;
+            this.descriptions = descriptions;
+            this.bytes = bytes;
+        }
+
+        private int size() {
+            return ids.length;
+        }
+
+        private MealDTO toMealDTO(int i) {
+            return new MealDTO(ids[i], new Date(dates[i]), Time.valueOf(LocalTime.ofSecondOfDay(times[i])),
+                    descriptions[i], calories[i]);
+        }
+
+        /**
+         * @return - the index of the first meal on or before the given date, as the dates are descending
+         */
+        private int firstOnOrBefore(Date date) {
+            if (date == null) {
+                return 0;
+            }
+
+            long time = date.getTime();
+            int low = 0;
+            int high = size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (dates[middle] > time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * @return - the index of the first meal strictly before the given date, as the dates are descending
+         */
+        private int firstBefore(Date date) {
+            if (date == null) {
+                return size();
+            }
+
+            long time = date.getTime();
+            int low = 0;
+            int high = size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (dates[middle] >= time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * @return - the index of the first meal after the given position in the search order, or at the position
+         * if inclusive
+         */
+        private int firstAfter(long date, int time, long id, boolean inclusive) {
+            int low = 0;
+            int high = size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(dates[middle], times[middle], ids[middle], date, time, id);
+                if (comparison < 0 || (comparison == 0 && !inclusive)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * @return - a copy of these meals, with the given meals saved and the given ids deleted
+         */
+        private UserMeals apply(List<MealDTO> saved, Collection<Long> deletedIds) {
+            Set<Long> removed = new HashSet<>(deletedIds);
+            List<MealDTO> added = new ArrayList<>(saved);
+            added.forEach((meal) -> removed.add(meal.getId()));
+            added.sort((first, second) -> compare(first.getDate().getTime(), secondOfDay(first.getTime()), first.getId(),
+                    second.getDate().getTime(), secondOfDay(second.getTime()), second.getId()));
+
+            Builder builder = new Builder(size() + added.size());
+            int next = 0;
+
+            for (int i = 0; i < size(); i++) {
+                if (removed.contains(ids[i])) {
+                    continue;
+                }
+
+                while (next < added.size() && compare(added.get(next).getDate().getTime(),
+                        secondOfDay(added.get(next).getTime()), added.get(next).getId(), dates[i], times[i], ids[i]) < 0) {
+                    builder.add(added.get(next++));
+                }
+
+                builder.add(ids[i], dates[i], times[i], calories[i], descriptions[i]);
+            }
+
+            while (next < added.size()) {
+                builder.add(added.get(next++));
+            }
+
+            return builder.build();
+        }
+
+        private boolean sameAs(UserMeals other) {
+            return other != null && Arrays.equals(ids, other.ids) && Arrays.equals(dates, other.dates)
+                    && Arrays.equals(times, other.times) && Arrays.equals(calories, other.calories)
+                    && Arrays.equals(descriptions, other.descriptions);
+        }
+
+        /**
+         * compares two meals in the search order - date desc, time asc, id asc
+         */
+        private static int compare(long date, int time, long id, long otherDate, int otherTime, long otherId) {
+            if (date != otherDate) {
+                return date > otherDate ? -1 : 1;
+            }
+            if (time != otherTime) {
+                return time < otherTime ? -1 : 1;
+            }
+            return Long.compare(id, otherId);
+        }
+
+        private static class Builder {
+
+            private long[] ids;
+            private long[] dates;
+            private int[] times;
+            private long[] calories;
+            private String[] descriptions;
+            private int size;
+            private long bytes;
+
+            private Builder(int capacity) {
+                ids = new long[capacity];
+                dates = new long[capacity];
+                times = new int[capacity];
+                calories = new long[capacity];
+                descriptions = new String[capacity];
+            }
+
+            private void add(MealDTO meal) {
+                add(meal.getId(), meal.getDate().getTime(), secondOfDay(meal.getTime()), meal.getCalories(),
+                        meal.getDescription());
+            }
+
+            private void add(long id, long date, int time, long mealCalories, String description) {
+                if (size == ids.length) {
+                    int capacity = Math.max(16, size * 2);
+                    ids = Arrays.copyOf(ids, capacity);
+                    dates = Arrays.copyOf(dates, capacity);
+                    times = Arrays.copyOf(times, capacity);
+                    calories = Arrays.copyOf(calories, capacity);
+                    descriptions = Arrays.copyOf(descriptions, capacity);
+                }
+
+                ids[size] = id;
+                dates[size] = date;
+                times[size] = time;
+                calories[size] = mealCalories;
+                descriptions[size] = description;
+                size++;
+
+                bytes += MEAL_BYTES + (description != null ? STRING_BYTES + 2L * description.length() : 0);
+            }
+
+            private UserMeals build() {
+                return new UserMeals(Arrays.copyOf(ids, size), Arrays.copyOf(dates, size), Arrays.copyOf(times, size),
+                        Arrays.copyOf(calories, size), Arrays.copyOf(descriptions, size), bytes);
+            }
+        }
+    }
+}
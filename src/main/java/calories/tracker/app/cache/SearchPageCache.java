@@ -0,0 +1,141 @@
+package calories.tracker.app.cache;
+
+
+import calories.tracker.app.dto.FirmsDTO;
+import calories.tracker.app.dto.MealsDTO;
+import calories.tracker.app.services.FirmsChangedEvent;
+import calories.tracker.app.services.MealsChangedEvent;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Cache of the search replies of the meals and firms, so that repeated searches skip both the queries and the
+ * mapping to DTOs.
+ *
+ * All the cached pages of a user are dropped once a change of their meals or firms has committed. A page whose
+ * search ran while such a change was committed is not cached, as it may not include the change.
+ *
+ * The pages only expire after a short while, so with several application instances a user can see the pages
+ * cached before a change made through another instance for up to TTL_SECONDS.
+ *
+ */
+@Component
+public class SearchPageCache implements ApplicationListener<ApplicationEvent> {
+
+    private static final int MAX_SIZE = 10000;
+    private static final long TTL_SECONDS = 60;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private BoundedCache<PageKey, MealsDTO> mealPages;
+    private BoundedCache<PageKey, FirmsDTO> firmPages;
+
+    private long generation;
+
+    /**
+     * the user and the search parameters of a page
+     */
+    public static final class PageKey {
+
+        private final String username;
+        private final Object[] parameters;
+
+        private PageKey(String username, Object[] parameters) {
+            this.username = username;
+            this.parameters = parameters;
+        }
+
+        /**
+         *
+         * @param username - the owner of the searched meals or firms
+         * @param parameters - all the parameters of the search that can change the reply, nulls included
+         */
+        public static PageKey of(String username, Object... parameters) {
+            return new PageKey(username, parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            PageKey that = (PageKey) o;
+
+            return username.equals(that.username) && Arrays.equals(parameters, that.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * username.hashCode() + Arrays.hashCode(parameters);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        mealPages = new BoundedCache<>("mealPages", MAX_SIZE, TimeUnit.SECONDS.toMillis(TTL_SECONDS), metricRegistry);
+        firmPages = new BoundedCache<>("firmPages", MAX_SIZE, TimeUnit.SECONDS.toMillis(TTL_SECONDS), metricRegistry);
+    }
+
+    /**
+     *
+     * @return - the value to pass when caching the page of a search started now
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public MealsDTO getMeals(PageKey key) {
+        return mealPages.get(key);
+    }
+
+    /**
+     *
+     * @param key - the user and the search parameters
+     * @param page - the reply of the search
+     * @param generation - the generation read before the search was started
+     */
+    public synchronized void putMeals(PageKey key, MealsDTO page, long generation) {
+        if (this.generation == generation) {
+            mealPages.put(key, page);
+        }
+    }
+
+    public FirmsDTO getFirms(PageKey key) {
+        return firmPages.get(key);
+    }
+
+    /**
+     *
+     * @param key - the user and the search parameters
+     * @param page - the reply of the search
+     * @param generation - the generation read before the search was started
+     */
+    public synchronized void putFirms(PageKey key, FirmsDTO page, long generation) {
+        if (this.generation == generation) {
+            firmPages.put(key, page);
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof MealsChangedEvent) {
+            invalidate(mealPages, ((MealsChangedEvent) event).getUsername());
+        } else if (event instanceof FirmsChangedEvent) {
+            invalidate(firmPages, ((FirmsChangedEvent) event).getUsername());
+        }
+    }
+
+    private synchronized void invalidate(BoundedCache<PageKey, ?> pages, String username) {
+        generation++;
+        pages.invalidateIf((key) -> key.username.equals(username));
+    }
+}
@@ -0,0 +1,50 @@
+package calories.tracker.app.cache;
+
+
+import java.text.Normalizer;
+
+/**
+ *
+ * Folds the texts typed by the users to a form where spelling variants compare equal - used as the keys of the
+ * in-memory suggestion indexes.
+ *
+ */
+final class TextFolding {
+
+    private TextFolding() {
+    }
+
+    /**
+     *
+     * @param text - a firm name or address, a meal description, or a query
+     * @return - the text in lower case ASCII letters and digits, without diacritics, and with any other characters
+     * but dots and apostrophes (s.r.o. becomes sro) as single spaces between the words
+     */
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean space = true;
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = Character.toLowerCase(decomposed.charAt(i));
+
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                folded.append(c);
+                space = false;
+            } else if (c != '.' && c != '\'' && Character.getType(c) != Character.NON_SPACING_MARK && !space) {
+                folded.append(' ');
+                space = true;
+            }
+        }
+
+        if (space && folded.length() > 0) {
+            folded.setLength(folded.length() - 1);
+        }
+
+        return folded.toString();
+    }
+}
@@ -0,0 +1,300 @@
+package calories.tracker.app.cache;
+
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import org.apache.log4j.Logger;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ *
+ * The in-memory indexes of the recently active users, held within a memory budget - the common part of
+ * MealWorkingSet, FirmNameIndex and MealSuggestions.
+ *
+ * - the index of a user is loaded on its first use, and the least recently used users are evicted once the
+ *   estimated size of all the indexes exceeds the budget
+ * - committed changes of a user are applied to its index, and a load running at the same time is not kept, as it
+ *   may have read the data of the user before the change
+ * - a user whose index would take more than a quarter of the budget is remembered as too large, so that its next
+ *   lookups go to the database straight away instead of reading all its data again - until the user changes its
+ *   data, the budget changes, or cache.tooLargeTtlMinutes pass
+ *
+ * The hits, misses and evictions are published in the metric registry under cache.[name].*, along with the number
+ * of users, the estimated bytes and the hit ratio, and the lookups of users known to be too large under
+ * cache.[name].tooLarge.*.
+ *
+ * @param <V> - the index of a user
+ */
+public class UserIndexCache<V> {
+
+    private static final Logger LOGGER = Logger.getLogger(UserIndexCache.class);
+
+    private static final int MAX_TOO_LARGE_USERS = 10000;
+    private static final long TOO_LARGE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("cache.tooLargeTtlMinutes", 10L));
+
+    /**
+     * reads the data of a user into a new index
+     */
+    public interface Loader<V> {
+
+        /**
+         *
+         * @param username - the user whose index is loaded
+         * @param maxBytes - the largest estimated size allowed for the index
+         * @return - the index of the user
+         * @throws TooLargeException - as soon as the index is known to exceed maxBytes
+         */
+        V load(String username, long maxBytes);
+    }
+
+    private final String name;
+    private final Loader<V> loader;
+    private final ToLongFunction<V> sizeOf;
+
+    private final LinkedHashMap<String, V> users = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Object> loading = new HashMap<>();
+    private final BoundedCache<String, Boolean> tooLarge;
+    private long totalBytes;
+
+    private volatile boolean enabled;
+    private volatile long maxBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    /**
+     *
+     * @param name - the name of the metrics
+     * @param enabled - false to start disabled
+     * @param maxBytes - the memory budget of all the indexes
+     * @param loader - loads the index of a user
+     * @param sizeOf - the estimated size of an index in bytes
+     * @param metricRegistry - the registry where the metrics are published
+     */
+    public UserIndexCache(String name, boolean enabled, long maxBytes, Loader<V> loader, ToLongFunction<V> sizeOf,
+                          MetricRegistry metricRegistry) {
+        this.name = name;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+        this.sizeOf = sizeOf;
+        this.tooLarge = new BoundedCache<>(MetricRegistry.name(name, "tooLarge"), MAX_TOO_LARGE_USERS,
+                TOO_LARGE_TTL_MILLIS, metricRegistry);
+
+        hits = metricRegistry.counter(MetricRegistry.name("cache", name, "hits"));
+        misses = metricRegistry.counter(MetricRegistry.name("cache", name, "misses"));
+        evictions = metricRegistry.counter(MetricRegistry.name("cache", name, "evictions"));
+
+        metricRegistry.remove(MetricRegistry.name("cache", name, "size"));
+        metricRegistry.register(MetricRegistry.name("cache", name, "size"), (Gauge<Integer>) this::size);
+
+        metricRegistry.remove(MetricRegistry.name("cache", name, "bytes"));
+        metricRegistry.register(MetricRegistry.name("cache", name, "bytes"), (Gauge<Long>) this::getTotalBytes);
+
+        metricRegistry.remove(MetricRegistry.name("cache", name, "hitRatio"));
+        metricRegistry.register(MetricRegistry.name("cache", name, "hitRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
+    }
+
+    /**
+     *
+     * @param username - the user whose index is looked up
+     * @return - the index of the user, loaded if needed, or null if the cache is disabled or the index of the user
+     * is too large to be held in memory
+     */
+    public V get(String username) {
+        if (!enabled) {
+            return null;
+        }
+
+        Object token = new Object();
+
+        synchronized (this) {
+            V index = users.get(username);
+
+            if (index != null) {
+                hits.inc();
+                return index;
+            }
+
+            misses.inc();
+
+            if (tooLarge.get(username) != null) {
+                return null;
+            }
+
+            loading.put(username, token);
+        }
+
+        V loaded;
+
+        try {
+            loaded = loader.load(username, maxBytes / 4);
+        } catch (TooLargeException e) {
+            LOGGER.info("The " + name + " index of user " + username + " is too large to be held in memory.");
+            loaded = null;
+        }
+
+        synchronized (this) {
+            // the loaded index is only kept if no change of the user was committed in the meantime
+            if (loading.get(username) == token) {
+                loading.remove(username);
+
+                if (loaded == null) {
+                    tooLarge.put(username, Boolean.TRUE);
+                } else if (enabled) {
+                    put(username, loaded);
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     *
+     * applies a committed change of a user to its index, if it is loaded
+     *
+     * @param username - the user whose data changed
+     * @param change - returns the changed index, which may be the given one changed in place, or null to drop it
+     */
+    public synchronized void update(String username, UnaryOperator<V> change) {
+        // a load running right now may have read the data before the change
+        loading.remove(username);
+        tooLarge.invalidate(username);
+
+        V index = users.remove(username);
+
+        if (index == null) {
+            return;
+        }
+
+        totalBytes -= sizeOf.applyAsLong(index);
+
+        V changed = change.apply(index);
+
+        if (changed != null) {
+            put(username, changed);
+        }
+    }
+
+    /**
+     * @return - the loaded indexes, from the least recently used
+     */
+    public synchronized List<Map.Entry<String, V>> entries() {
+        List<Map.Entry<String, V>> entries = new ArrayList<>(users.size());
+        users.forEach((username, index) -> entries.add(new AbstractMap.SimpleImmutableEntry<>(username, index)));
+        return entries;
+    }
+
+    /**
+     *
+     * @param username - the user whose index is dropped
+     * @param index - the index expected to be loaded
+     * @return - true if the index was still the loaded one, and was dropped
+     */
+    public synchronized boolean remove(String username, V index) {
+        if (users.get(username) != index) {
+            return false;
+        }
+
+        totalBytes -= sizeOf.applyAsLong(users.remove(username));
+        return true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * enables or disables the cache - disabling it drops all the indexes
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+
+        if (!enabled) {
+            users.clear();
+            loading.clear();
+            tooLarge.invalidateAll();
+            totalBytes = 0;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * changes the memory budget - the users found too large for the previous budget are looked up again
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        tooLarge.invalidateAll();
+        evictOverBudget();
+    }
+
+    public synchronized int size() {
+        return users.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getHitCount() {
+        return hits.getCount();
+    }
+
+    public long getMissCount() {
+        return misses.getCount();
+    }
+
+    public long getEvictionCount() {
+        return evictions.getCount();
+    }
+
+    private void put(String username, V index) {
+        V previous = users.put(username, index);
+        totalBytes += sizeOf.applyAsLong(index) - (previous != null ? sizeOf.applyAsLong(previous) : 0);
+        evictOverBudget();
+    }
+
+    private void evictOverBudget() {
+        Iterator<V> eldest = users.values().iterator();
+
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= sizeOf.applyAsLong(eldest.next());
+            eldest.remove();
+            evictions.inc();
+        }
+    }
+
+    /**
+     * thrown by a loader to stop reading the data of a user whose index is too large
+     */
+    public static class TooLargeException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public TooLargeException() {
+            super(null, null, false, false);
+        }
+    }
+}
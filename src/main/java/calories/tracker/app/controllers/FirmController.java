@@ -1,23 +1,22 @@
 package calories.tracker.app.controllers;
 
+import calories.tracker.app.cache.SearchPageCache;
 import calories.tracker.app.dto.FirmDTO;
-import calories.tracker.app.dto.FirmsDTO;
-import calories.tracker.app.dto.FirmDTO;
+import calories.tracker.app.dto.FirmValidationDTO;
 import calories.tracker.app.dto.FirmsDTO;
 import calories.tracker.app.model.Firm;
+import calories.tracker.app.model.FirmCursor;
+import calories.tracker.app.model.FirmNameMatch;
 import calories.tracker.app.model.SearchResult;
 import calories.tracker.app.services.FirmService;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
-import java.sql.Time;
-import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -32,56 +31,92 @@ import java.util.stream.Collectors;
 public class FirmController {
 	Logger LOGGER = Logger.getLogger(FirmController.class);
 
-    private static final long DAY_IN_MS = 1000 * 60 * 60 * 24;
-
 
     @Autowired
     private FirmService firmService;
 
+    @Autowired
+    private SearchPageCache searchPageCache;
+
     /**
-     * search Firms for the current user by date and time ranges.
+     * search Firms for the current user by name, ico, dic and ic dph - the firms are sorted by name.
      *
+     * Pages can be requested either by number, or by passing the opaque cursor returned in a previous response -
+     * cursor based paging seeks directly to the page, so its cost does not depend on the page depth.
      *
      * @param principal  - the current logged in user
-     * @param fromDate - search from this date, including
-     * @param toDate - search until this date, including
-     * @param fromTime - search from this time, including
-     * @param toTime - search to this time, including
-     * @param pageNumber - the page number (each page has 10 entries)
-     * @return - @see FirmsDTO with the current page, total pages and the list of firms
+     * @param name - the name to search for, case insensitive
+     * @param nameMatch - prefix (the default) to find the names starting with the name, contains to find the names
+     *                  containing it - the latter needs at least 3 characters
+     * @param ico - the exact ico
+     * @param dic - the exact dic
+     * @param icDph - the exact ic dph
+     * @param pageNumber - the page number (each page has 10 entries), used as is for the currentPage of the reply
+     *                   when paging by cursor
+     * @param cursor - the nextCursor of a previous search with the same criteria
+     * @return - @see FirmsDTO with the current page, total pages, the list of firms and the next page cursor,
+     * possibly from @see SearchPageCache
      */
     @ResponseBody
     @ResponseStatus(HttpStatus.OK)
     @RequestMapping(method = RequestMethod.GET)
-    public FirmsDTO searchFirmsByDate(
+    public FirmsDTO searchFirms(
             Principal principal,
-            @RequestParam(value = "fromDate", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd") Date fromDate,
-            @RequestParam(value = "toDate", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd") Date toDate,
-            @RequestParam(value = "fromTime", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd HH:mm") Date fromTime,
-            @RequestParam(value = "toTime", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd HH:mm") Date toTime,
-            @RequestParam(value = "pageNumber") Integer pageNumber) {
-
-        if (fromDate == null && toDate == null) {
-            fromDate = new Date(System.currentTimeMillis() - (3 * DAY_IN_MS));
-            toDate = new Date();
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "nameMatch", required = false, defaultValue = "prefix") String nameMatch,
+            @RequestParam(value = "ico", required = false) String ico,
+            @RequestParam(value = "dic", required = false) String dic,
+            @RequestParam(value = "ic_dph", required = false) String icDph,
+            @RequestParam(value = "pageNumber", required = false, defaultValue = "1") Integer pageNumber,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+
+        FirmNameMatch match = FirmNameMatch.valueOf(nameMatch.toUpperCase());
+
+        SearchPageCache.PageKey key = SearchPageCache.PageKey.of(principal.getName(), name, match, ico, dic, icDph,
+                pageNumber, cursor);
+        long generation = searchPageCache.generation();
+        FirmsDTO cached = searchPageCache.getFirms(key);
+
+        if (cached != null) {
+            return cached;
         }
 
-        SearchResult<Firm> result = firmService.findFirms(
-                principal.getName(),
-                fromDate,
-                toDate,
-                fromTime != null ? new Time(fromTime.getTime()) : null,
-                toTime != null ? new Time(toTime.getTime()) : null,
-                pageNumber);
+        SearchResult<FirmDTO> result = firmService.findFirms(principal.getName(), name, match, ico, dic, icDph,
+                cursor != null ? FirmCursor.decode(cursor) : null, pageNumber);
 
         Long resultsCount = result.getResultsCount();
-        Long totalPages = resultsCount / 10;
+        Long totalPages = resultsCount / FirmService.PAGE_SIZE;
 
-        if (resultsCount % 10 > 0) {
+        if (resultsCount % FirmService.PAGE_SIZE > 0) {
             totalPages++;
         }
 
-        return new FirmsDTO(pageNumber, totalPages, FirmDTO.mapFromFirmsEntities(result.getResult()));
+        FirmsDTO page = new FirmsDTO(pageNumber, totalPages, result.getNextCursor(), result.getResult());
+
+        searchPageCache.putFirms(key, page, generation);
+
+        return page;
+    }
+
+    /**
+     *
+     * suggests the firms of the current user matching what is being typed in a firm name field - the names (and
+     * addresses) are matched fuzzily, ignoring diacritics and tolerating typos
+     *
+     * @param principal - the current logged in user
+     * @param query - the text typed so far, at least 2 letters to get suggestions
+     * @param limit - the maximum number of suggestions, at most 20
+     * @return - the suggested firms, best match first
+     */
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @RequestMapping(value = "/suggest", method = RequestMethod.GET)
+    public List<FirmDTO> suggestFirms(
+            Principal principal,
+            @RequestParam(value = "q") String query,
+            @RequestParam(value = "limit", required = false, defaultValue = "10") Integer limit) {
+
+        return firmService.suggestFirms(principal.getName(), query, limit);
     }
 
     /**
@@ -106,15 +141,32 @@ public class FirmController {
 
     /**
      *
-     * deletes a list of firms
+     * checks a batch of firms against the business register, without saving them - the missing fields of each
+     * firm are completed from the register, and its dic and ic dph are checked against it
      *
+     * @param firms - the firms to check, at most 10000
+     * @return - the outcome of the check of each firm, in the same order
+     */
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @RequestMapping(value = "/validate", method = RequestMethod.POST)
+    public List<FirmValidationDTO> validateFirms(@RequestBody List<FirmDTO> firms) {
+        return firmService.validateFirms(firms);
+    }
+
+    /**
+     *
+     * deletes a list of firms of the current user
+     *
+     * @param principal - the current logged in user
      * @param deletedFirmIds - the ids of the firms to be deleted
+     * @return - the number of firms deleted, ids of firms not owned by the user are ignored
      */
     @ResponseBody
     @ResponseStatus(HttpStatus.OK)
     @RequestMapping(method = RequestMethod.DELETE)
-    public void deleteFirms(@RequestBody List<Long> deletedFirmIds) {
-        firmService.deleteFirms(deletedFirmIds);
+    public int deleteFirms(Principal principal, @RequestBody List<Long> deletedFirmIds) {
+        return firmService.deleteFirms(principal.getName(), deletedFirmIds);
     }
 
     /**
@@ -1,11 +1,18 @@
 package calories.tracker.app.controllers;
 
 
+import calories.tracker.app.cache.SearchPageCache;
 import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.dto.MealImportDTO;
+import calories.tracker.app.dto.MealStatsDTO;
+import calories.tracker.app.dto.MealSuggestionDTO;
 import calories.tracker.app.dto.MealsDTO;
+import calories.tracker.app.dto.serialization.MealFileFormat;
 import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.MealCursor;
 import calories.tracker.app.model.SearchResult;
 import calories.tracker.app.services.MealService;
+import org.apache.commons.lang3.time.DateUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -14,8 +21,18 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.sql.Time;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -37,17 +54,30 @@ public class MealController {
     @Autowired
     private MealService mealService;
 
+    @Autowired
+    private SearchPageCache searchPageCache;
+
     /**
-     * search Meals for the current user by date and time ranges.
+     * search Meals for the current user by date and time ranges, and optionally by the words of their description.
      *
+     * Pages can be requested either by number, or by passing one of the opaque cursors returned in a previous
+     * response - cursor based paging seeks directly to the page, so its cost does not depend on the page depth.
+     * Searches by words are ranked by relevance, and are only paged by number.
      *
      * @param principal  - the current logged in user
      * @param fromDate - search from this date, including
      * @param toDate - search until this date, including
      * @param fromTime - search from this time, including
      * @param toTime - search to this time, including
-     * @param pageNumber - the page number (each page has 10 entries)
-     * @return - @see MealsDTO with the current page, total pages and the list of meals
+     * @param q - words that must all be in the description, in any grammatical form (salmon dishes matches
+     *          Glazed Salmon Dish) - the meals are then sorted by relevance
+     * @param pageNumber - the page number, used as is for the currentPage of the reply when paging by cursor
+     * @param pageSize - the number of entries per page, capped on the server side
+     * @param cursor - the previousCursor or nextCursor of a previous search with the same criteria
+     * @param approximateTotal - if true, the total is only counted up to a threshold - totalCapped is then set
+     *                         on the reply, and totalPages is a lower bound
+     * @return - @see MealsDTO with the current page, total pages, the list of meals and the neighbouring pages cursors,
+     * possibly from @see SearchPageCache
      */
     @ResponseBody
     @ResponseStatus(HttpStatus.OK)
@@ -58,29 +88,169 @@ public class MealController {
             @RequestParam(value = "toDate", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd") Date toDate,
             @RequestParam(value = "fromTime", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd HH:mm") Date fromTime,
             @RequestParam(value = "toTime", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd HH:mm") Date toTime,
-            @RequestParam(value = "pageNumber") Integer pageNumber) {
+            @RequestParam(value = "q", required = false) String q,
+            @RequestParam(value = "pageNumber", required = false, defaultValue = "1") Integer pageNumber,
+            @RequestParam(value = "pageSize", required = false, defaultValue = "10") Integer pageSize,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "approximateTotal", required = false, defaultValue = "false") boolean approximateTotal) {
 
         if (fromDate == null && toDate == null) {
-            fromDate = new Date(System.currentTimeMillis() - (3 * DAY_IN_MS));
-            toDate = new Date();
+            // to the minute, so that the default search of the same user can be answered from the page cache
+            toDate = DateUtils.truncate(new Date(), Calendar.MINUTE);
+            fromDate = new Date(toDate.getTime() - (3 * DAY_IN_MS));
+        }
+
+        boolean fullText = q != null && !q.trim().isEmpty();
+
+        if (fullText && cursor != null) {
+            throw new IllegalArgumentException("Searches by words are paged by page number, not by cursor.");
+        }
+
+        SearchPageCache.PageKey key = SearchPageCache.PageKey.of(principal.getName(), fromDate, toDate, fromTime, toTime,
+                fullText ? q.trim() : null, pageNumber, pageSize, cursor, approximateTotal);
+        long generation = searchPageCache.generation();
+        MealsDTO cached = searchPageCache.getMeals(key);
+
+        if (cached != null) {
+            return cached;
         }
 
-        SearchResult<Meal> result = mealService.findMeals(
-                principal.getName(),
-                fromDate,
-                toDate,
-                fromTime != null ? new Time(fromTime.getTime()) : null,
-                toTime != null ? new Time(toTime.getTime()) : null,
-                pageNumber);
+        Time fromTimeParam = fromTime != null ? new Time(fromTime.getTime()) : null;
+        Time toTimeParam = toTime != null ? new Time(toTime.getTime()) : null;
 
+        SearchResult<MealDTO> result;
+
+        if (fullText) {
+            result = mealService.searchMeals(principal.getName(), q, fromDate, toDate, fromTimeParam, toTimeParam,
+                    pageNumber, pageSize);
+        } else {
+            result = cursor != null ?
+                    mealService.findMeals(principal.getName(), fromDate, toDate, fromTimeParam, toTimeParam,
+                            MealCursor.decode(cursor), pageSize, approximateTotal) :
+                    mealService.findMeals(principal.getName(), fromDate, toDate, fromTimeParam, toTimeParam,
+                            pageNumber, pageSize, approximateTotal);
+        }
+
+        int effectivePageSize = Math.min(pageSize, MealService.MAX_PAGE_SIZE);
         Long resultsCount = result.getResultsCount();
-        Long totalPages = resultsCount / 10;
+        Long totalPages = resultsCount / effectivePageSize;
 
-        if (resultsCount % 10 > 0) {
+        if (resultsCount % effectivePageSize > 0) {
             totalPages++;
         }
 
-        return new MealsDTO(pageNumber, totalPages, MealDTO.mapFromMealsEntities(result.getResult()));
+        MealsDTO page = new MealsDTO(pageNumber, totalPages, result.isResultsCountCapped(),
+                result.getPreviousCursor(), result.getNextCursor(), result.getResult());
+
+        searchPageCache.putMeals(key, page, generation);
+
+        return page;
+    }
+
+    /**
+     *
+     * computes the calorie statistics of the current user over a date range - by default, the last year
+     *
+     * @param principal - the current logged in user
+     * @param fromDate - compute from this date, including
+     * @param toDate - compute until this date, including
+     * @param fromTime - only count the meals from this time, including
+     * @param toTime - only count the meals until this time, including
+     * @return - @see MealStatsDTO with the summary of the range, and the totals per day, week and month
+     */
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @RequestMapping(value = "/stats", method = RequestMethod.GET)
+    public MealStatsDTO findMealStats(
+            Principal principal,
+            @RequestParam(value = "fromDate", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd") Date fromDate,
+            @RequestParam(value = "toDate", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd") Date toDate,
+            @RequestParam(value = "fromTime", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd HH:mm") Date fromTime,
+            @RequestParam(value = "toTime", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd HH:mm") Date toTime) {
+
+        if (fromDate == null && toDate == null) {
+            fromDate = new Date(System.currentTimeMillis() - (365 * DAY_IN_MS));
+            toDate = new Date();
+        }
+
+        Time fromTimeParam = fromTime != null ? new Time(fromTime.getTime()) : null;
+        Time toTimeParam = toTime != null ? new Time(toTime.getTime()) : null;
+
+        return mealService.findMealStats(principal.getName(), fromDate, toDate, fromTimeParam, toTimeParam);
+    }
+
+    /**
+     *
+     * suggests the descriptions of the previous meals of the current user starting with what is being typed, with
+     * the calories of their latest meal
+     *
+     * @param principal - the current logged in user
+     * @param prefix - the beginning of the description, compared without case and diacritics
+     * @param limit - the maximum number of suggestions, at most 20
+     * @return - the suggestions, the most frequently and recently used descriptions first
+     */
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @RequestMapping(value = "/suggest", method = RequestMethod.GET)
+    public List<MealSuggestionDTO> suggestMeals(
+            Principal principal,
+            @RequestParam(value = "prefix") String prefix,
+            @RequestParam(value = "limit", required = false, defaultValue = "10") Integer limit) {
+
+        return mealService.suggestMeals(principal.getName(), prefix, limit);
+    }
+
+    /**
+     *
+     * exports all the meals of the current user in a date range, streamed as they are read from the database
+     *
+     * @param principal - the current logged in user
+     * @param fromDate - export from this date, including, or from the first meal if absent
+     * @param toDate - export until this date, including, or until the last meal if absent
+     * @param format - ndjson (one JSON meal per line) or csv
+     * @param response - the response the meals are written to
+     * @throws IOException - if the meals could not be written
+     */
+    @RequestMapping(value = "/export", method = RequestMethod.GET)
+    public void exportMeals(
+            Principal principal,
+            @RequestParam(value = "fromDate", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd") Date fromDate,
+            @RequestParam(value = "toDate", required = false) @DateTimeFormat(pattern = "yyyy/MM/dd") Date toDate,
+            @RequestParam(value = "format", required = false, defaultValue = "ndjson") String format,
+            HttpServletResponse response) throws IOException {
+
+        MealFileFormat exportFormat = MealFileFormat.valueOf(format.toUpperCase());
+
+        response.setContentType(exportFormat.getContentType() + ";charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"meals." + exportFormat.getFileExtension() + "\"");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        mealService.exportMeals(principal.getName(), fromDate, toDate, exportFormat, writer);
+    }
+
+    /**
+     *
+     * imports new meals for the current user from the request body, in the same formats as the export - the
+     * body is read as it arrives, and the meals are committed in chunks.
+     *
+     * @param principal - the current logged in user
+     * @param format - ndjson (one JSON meal per line) or csv (with a header, the id column is ignored)
+     * @param request - the request whose body is the file to import
+     * @return - the number of imported meals, and the line and reason of each rejected record
+     * @throws IOException - if the request body could not be read
+     */
+    @ResponseBody
+    @ResponseStatus(HttpStatus.OK)
+    @RequestMapping(value = "/import", method = RequestMethod.POST)
+    public MealImportDTO importMeals(
+            Principal principal,
+            @RequestParam(value = "format", required = false, defaultValue = "ndjson") String format,
+            HttpServletRequest request) throws IOException {
+
+        MealFileFormat importFormat = MealFileFormat.valueOf(format.toUpperCase());
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        return mealService.importMeals(principal.getName(), importFormat, reader);
     }
 
     /**
@@ -105,15 +275,17 @@ public class MealController {
 
     /**
      *
-     * deletes a list of meals
+     * deletes a list of meals of the current user
      *
+     * @param principal - the current logged in user
      * @param deletedMealIds - the ids of the meals to be deleted
+     * @return - the number of meals deleted, ids of meals not owned by the user are ignored
      */
     @ResponseBody
     @ResponseStatus(HttpStatus.OK)
     @RequestMapping(method = RequestMethod.DELETE)
-    public void deleteMeals(@RequestBody List<Long> deletedMealIds) {
-        mealService.deleteMeals(deletedMealIds);
+    public int deleteMeals(Principal principal, @RequestBody List<Long> deletedMealIds) {
+        return mealService.deleteMeals(principal.getName(), deletedMealIds);
     }
 
     /**
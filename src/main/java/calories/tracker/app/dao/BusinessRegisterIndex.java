@@ -0,0 +1,318 @@
+package calories.tracker.app.dao;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *
+ * Read-only index of the business register, memory-mapped from a file built by @see BusinessRegisterIndexBuilder.
+ *
+ * The file holds the register entries sorted by ICO, a table of (DIC, entry) sorted by DIC, and the pool of the
+ * texts of the entries. The lookups are binary searches on the mapped file: they only read primitives from it and
+ * allocate nothing, while the texts of an entry are only decoded when asked for, to complete a firm.
+ *
+ * Entries are identified by their number in the ICO order, valid for the lifetime of this index only.
+ *
+ */
+public final class BusinessRegisterIndex {
+
+    static final int MAGIC = 0x42524731;
+    static final int VERSION = 1;
+
+    // header - magic, version, entry count, dic count, dic table offset, strings offset, build time
+    static final int HEADER_SIZE = 32;
+
+    // entry - ico key, dic key, then the offsets of the dic, ic dph, name and address in the strings pool
+    static final int ENTRY_SIZE = 32;
+
+    // dic table - dic key, entry number
+    static final int DIC_ENTRY_SIZE = 12;
+
+    static final int MAX_ICO_DIGITS = 8;
+    static final int MAX_DIC_DIGITS = 10;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final int dicCount;
+    private final int dicTableOffset;
+    private final int stringsOffset;
+    private final long builtAt;
+
+    private BusinessRegisterIndex(Path file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.entryCount = buffer.getInt(8);
+        this.dicCount = buffer.getInt(12);
+        this.dicTableOffset = buffer.getInt(16);
+        this.stringsOffset = buffer.getInt(20);
+        this.builtAt = buffer.getLong(24);
+    }
+
+    /**
+     *
+     * maps an index file - the file can be replaced afterwards, this index keeps reading the mapped version
+     *
+     * @param file - the index file
+     * @return - the index
+     * @throws IOException - if the file could not be read, or is not an index file
+     */
+    public static BusinessRegisterIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a business register index: " + file);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a business register index, or of an older version: " + file);
+            }
+
+            return new BusinessRegisterIndex(file, buffer);
+        }
+    }
+
+    /**
+     *
+     * @param ico - an ICO, spaces are ignored
+     * @return - the number of the entry with this ICO, or -1 if there is none
+     */
+    public int findByIco(CharSequence ico) {
+        long key = icoKey(ico);
+
+        if (key < 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = entryCount - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = buffer.getLong(entryOffset(middle));
+
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     *
+     * @param dic - a DIC, with or without its country prefix, spaces are ignored
+     * @return - the number of an entry with this DIC, or -1 if there is none
+     */
+    public int findByDic(CharSequence dic) {
+        long key = dicKey(dic);
+
+        if (key < 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = dicCount - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = dicTableOffset + middle * DIC_ENTRY_SIZE;
+            long middleKey = buffer.getLong(offset);
+
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(offset + 8);
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean hasDic(int entry) {
+        return buffer.getInt(entryOffset(entry) + 16) >= 0;
+    }
+
+    public boolean hasIcDph(int entry) {
+        return buffer.getInt(entryOffset(entry) + 20) >= 0;
+    }
+
+    /**
+     * @return - true if the entry has the given DIC, compared without the country prefix and spaces
+     */
+    public boolean dicMatches(int entry, CharSequence dic) {
+        long key = dicKey(dic);
+        return key >= 0 && key == buffer.getLong(entryOffset(entry) + 8);
+    }
+
+    /**
+     * @return - true if the entry has the given IC DPH, compared ignoring the case and spaces
+     */
+    public boolean icDphMatches(int entry, CharSequence icDph) {
+        int offset = buffer.getInt(entryOffset(entry) + 20);
+        return offset >= 0 && textMatches(stringsOffset + offset, icDph);
+    }
+
+    public String getIco(int entry) {
+        String ico = Long.toString(buffer.getLong(entryOffset(entry)));
+
+        StringBuilder padded = new StringBuilder(MAX_ICO_DIGITS);
+        for (int i = ico.length(); i < MAX_ICO_DIGITS; i++) {
+            padded.append('0');
+        }
+
+        return padded.append(ico).toString();
+    }
+
+    public String getDic(int entry) {
+        return text(buffer.getInt(entryOffset(entry) + 16));
+    }
+
+    public String getIcDph(int entry) {
+        return text(buffer.getInt(entryOffset(entry) + 20));
+    }
+
+    public String getName(int entry) {
+        return text(buffer.getInt(entryOffset(entry) + 24));
+    }
+
+    public String getAddress(int entry) {
+        return text(buffer.getInt(entryOffset(entry) + 28));
+    }
+
+    /**
+     *
+     * @return - the number of entries, one per ICO
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     *
+     * @return - the time the index was built at, in milliseconds since the epoch
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     *
+     * @param ico - an ICO, spaces are ignored
+     * @return - the ICO as a number, or -1 if it is not made of 1 to MAX_ICO_DIGITS digits
+     */
+    static long icoKey(CharSequence ico) {
+        return numberKey(ico, 0, MAX_ICO_DIGITS);
+    }
+
+    /**
+     *
+     * @param dic - a DIC, with or without a two letters country prefix, spaces are ignored
+     * @return - the digits of the DIC as a number, or -1 if there are none or more than MAX_DIC_DIGITS
+     */
+    static long dicKey(CharSequence dic) {
+        if (dic == null) {
+            return -1;
+        }
+
+        int start = 0;
+        while (start < dic.length() && Character.isWhitespace(dic.charAt(start))) {
+            start++;
+        }
+
+        if (start + 1 < dic.length() && Character.isLetter(dic.charAt(start)) && Character.isLetter(dic.charAt(start + 1))) {
+            start += 2;
+        }
+
+        return numberKey(dic, start, MAX_DIC_DIGITS);
+    }
+
+    private static long numberKey(CharSequence value, int start, int maxDigits) {
+        if (value == null) {
+            return -1;
+        }
+
+        long key = 0;
+        int digits = 0;
+
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                if (++digits > maxDigits) {
+                    return -1;
+                }
+                key = key * 10 + (c - '0');
+            } else if (!Character.isWhitespace(c)) {
+                return -1;
+            }
+        }
+
+        return digits > 0 ? key : -1;
+    }
+
+    private int entryOffset(int entry) {
+        return HEADER_SIZE + entry * ENTRY_SIZE;
+    }
+
+    /**
+     * compares a text of the pool with a value, ignoring the case of ASCII letters and spaces
+     */
+    private boolean textMatches(int position, CharSequence value) {
+        int end = position + 2 + (buffer.getShort(position) & 0xFFFF);
+        int i = position + 2;
+        int j = 0;
+
+        while (true) {
+            while (i < end && buffer.get(i) == ' ') {
+                i++;
+            }
+            while (j < value.length() && Character.isWhitespace(value.charAt(j))) {
+                j++;
+            }
+
+            if (i == end || j == value.length()) {
+                return i == end && j == value.length();
+            }
+
+            int b = buffer.get(i++);
+            char c = value.charAt(j++);
+
+            if (b < 0 || Character.toUpperCase((char) b) != Character.toUpperCase(c)) {
+                return false;
+            }
+        }
+    }
+
+    private String text(int offset) {
+        if (offset < 0) {
+            return null;
+        }
+
+        int position = stringsOffset + offset;
+        byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+
+        ByteBuffer text = buffer.duplicate();
+        text.position(position + 2);
+        text.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
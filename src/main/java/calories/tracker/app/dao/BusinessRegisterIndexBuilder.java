@@ -0,0 +1,413 @@
+package calories.tracker.app.dao;
+
+
+import calories.tracker.app.dto.serialization.CsvRecordReader;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static calories.tracker.app.dao.BusinessRegisterIndex.DIC_ENTRY_SIZE;
+import static calories.tracker.app.dao.BusinessRegisterIndex.ENTRY_SIZE;
+import static calories.tracker.app.dao.BusinessRegisterIndex.HEADER_SIZE;
+
+/**
+ *
+ * Builds the index file of @see BusinessRegisterIndex from a dump of the business register open data - either a
+ * CSV file with a header, or a JSON file of objects (one per line, or in a top level array), with the fields
+ * ico, dic, ic_dph, name and address. Other columns or fields are ignored, and only the ico is mandatory.
+ *
+ * The dump is streamed: the entries and their texts are written to temporary files as they are read, and only the
+ * (ICO, entry) and (DIC, entry) keys are sorted on the heap, packed in a long each. The CSV records are limited
+ * in length, @see CsvRecordReader - longer ones are rejected, so an unbalanced quote does not load the rest of the
+ * dump on the heap. The index is written next to
+ * the target file, and moved over it atomically once complete - an index being read is never seen half written.
+ *
+ */
+public final class BusinessRegisterIndexBuilder {
+
+    private static final Logger LOGGER = Logger.getLogger(BusinessRegisterIndexBuilder.class);
+
+    private static final String[] COLUMNS = {"ico", "dic", "ic_dph", "name", "address"};
+
+    private static final int ICO = 0;
+    private static final int DIC = 1;
+    private static final int IC_DPH = 2;
+    private static final int NAME = 3;
+    private static final int ADDRESS = 4;
+
+    // the sorted keys hold the entry number in their low bits, the ICO or DIC above them
+    private static final int ENTRY_BITS = 29;
+    private static final long ENTRY_MASK = (1L << ENTRY_BITS) - 1;
+
+    private static final int MAX_TEXT_LENGTH = 20000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BusinessRegisterIndexBuilder() {
+    }
+
+    /**
+     *
+     * builds the index of a dump, and replaces the index file with it
+     *
+     * @param dump - the dump file, read as JSON if its name ends with .json or .ndjson, as CSV otherwise
+     * @param indexFile - the index file to create or replace
+     * @return - the number of entries of the index - when an ICO appears several times, its last entry is kept
+     * @throws IOException - if the dump could not be read or the index could not be written
+     * @throws IllegalArgumentException - if the dump is not a valid CSV or JSON file
+     */
+    public static int build(Path dump, Path indexFile) throws IOException {
+        Path directory = indexFile.toAbsolutePath().getParent();
+        String prefix = indexFile.getFileName().toString();
+
+        Path entries = Files.createTempFile(directory, prefix, ".entries");
+        Path strings = Files.createTempFile(directory, prefix, ".strings");
+        Path built = Files.createTempFile(directory, prefix, ".building");
+
+        try {
+            long[] icoKeys = new long[1024];
+            int count = 0;
+            int rejected = 0;
+
+            try (DumpReader reader = DumpReader.open(dump);
+                 DataOutputStream entriesOut = new DataOutputStream(new BufferedOutputStream(
+                         Files.newOutputStream(entries), BUFFER_SIZE));
+                 StringPool pool = new StringPool(Files.newOutputStream(strings))) {
+
+                String[] fields = new String[COLUMNS.length];
+
+                while (reader.next(fields)) {
+                    long ico = BusinessRegisterIndex.icoKey(fields[ICO]);
+
+                    if (ico < 0) {
+                        rejected++;
+                        continue;
+                    }
+
+                    if (count > ENTRY_MASK) {
+                        throw new IOException("Too many entries in the business register dump " + dump);
+                    }
+
+                    entriesOut.writeLong(ico);
+                    entriesOut.writeLong(BusinessRegisterIndex.dicKey(fields[DIC]));
+                    entriesOut.writeInt(pool.add(fields[DIC]));
+                    entriesOut.writeInt(pool.add(fields[IC_DPH]));
+                    entriesOut.writeInt(pool.add(fields[NAME]));
+                    entriesOut.writeInt(pool.add(fields[ADDRESS]));
+
+                    if (count == icoKeys.length) {
+                        icoKeys = Arrays.copyOf(icoKeys, count * 2);
+                    }
+                    icoKeys[count] = ico << ENTRY_BITS | count;
+                    count++;
+                }
+            }
+
+            // sorted by ICO, then by position in the dump - the last entry of each ICO is the latest one
+            Arrays.sort(icoKeys, 0, count);
+
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (i + 1 == count || icoKeys[i + 1] >>> ENTRY_BITS != icoKeys[i] >>> ENTRY_BITS) {
+                    icoKeys[unique++] = icoKeys[i];
+                }
+            }
+
+            long dicTableOffset = HEADER_SIZE + (long) unique * ENTRY_SIZE;
+
+            if (dicTableOffset + (long) unique * DIC_ENTRY_SIZE + Files.size(strings) > Integer.MAX_VALUE) {
+                throw new IOException("The business register index of " + dump + " would exceed 2GB.");
+            }
+
+            writeIndex(built, entries, strings, icoKeys, unique, (int) dicTableOffset);
+
+            Files.move(built, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            LOGGER.info("Indexed " + unique + " business register entries of " + dump + ", " + (count - unique) +
+                    " superseded and " + rejected + " rejected, without a valid ico or too long.");
+
+            return unique;
+        } finally {
+            Files.deleteIfExists(entries);
+            Files.deleteIfExists(strings);
+            Files.deleteIfExists(built);
+        }
+    }
+
+    /**
+     * writes the entries in ICO order, the DIC table and the strings pool, then the header
+     */
+    private static void writeIndex(Path built, Path entries, Path strings, long[] icoKeys, int count,
+                                   int dicTableOffset) throws IOException {
+
+        try (FileChannel entriesIn = FileChannel.open(entries, StandardOpenOption.READ);
+             FileChannel stringsIn = FileChannel.open(strings, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(built, StandardOpenOption.WRITE)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            long[] dicKeys = new long[count];
+            int dicCount = 0;
+
+            out.position(HEADER_SIZE);
+
+            for (int i = 0; i < count; i++) {
+                entry.clear();
+                readFully(entriesIn, entry, (icoKeys[i] & ENTRY_MASK) * ENTRY_SIZE);
+
+                long dic = entry.getLong(8);
+                if (dic >= 0) {
+                    dicKeys[dicCount++] = dic << ENTRY_BITS | i;
+                }
+
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    writeFully(out, buffer);
+                }
+                buffer.put(entry.array());
+            }
+
+            Arrays.sort(dicKeys, 0, dicCount);
+
+            for (int i = 0; i < dicCount; i++) {
+                if (buffer.remaining() < DIC_ENTRY_SIZE) {
+                    writeFully(out, buffer);
+                }
+                buffer.putLong(dicKeys[i] >>> ENTRY_BITS).putInt((int) (dicKeys[i] & ENTRY_MASK));
+            }
+
+            writeFully(out, buffer);
+
+            int stringsOffset = (int) out.position();
+            long stringsSize = stringsIn.size();
+
+            for (long transferred = 0; transferred < stringsSize; ) {
+                transferred += stringsIn.transferTo(transferred, stringsSize - transferred, out);
+            }
+
+            buffer.clear();
+            buffer.putInt(BusinessRegisterIndex.MAGIC)
+                    .putInt(BusinessRegisterIndex.VERSION)
+                    .putInt(count)
+                    .putInt(dicCount)
+                    .putInt(dicTableOffset)
+                    .putInt(stringsOffset)
+                    .putLong(System.currentTimeMillis());
+            buffer.flip();
+
+            for (long position = 0; buffer.hasRemaining(); ) {
+                position += out.write(buffer, position);
+            }
+
+            out.force(true);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+
+            if (read < 0) {
+                throw new IOException("Unexpected end of the business register entries.");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    /**
+     * appends the texts of the entries to the strings pool, each as its UTF-8 length on two bytes and its bytes
+     */
+    private static final class StringPool implements Closeable {
+
+        private final DataOutputStream out;
+        private long size;
+
+        private StringPool(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        }
+
+        /**
+         * @return - the offset of the text in the pool, or -1 for a blank text, that is not stored
+         */
+        private int add(String text) throws IOException {
+            if (text == null || text.trim().isEmpty()) {
+                return -1;
+            }
+
+            String trimmed = text.trim();
+            byte[] bytes = (trimmed.length() > MAX_TEXT_LENGTH ? trimmed.substring(0, MAX_TEXT_LENGTH) : trimmed)
+                    .getBytes(StandardCharsets.UTF_8);
+
+            if (size + 2 + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("The texts of the business register exceed 2GB.");
+            }
+
+            int offset = (int) size;
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            size += 2 + bytes.length;
+
+            return offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * reads the fields of the dump entries, one entry at a time
+     */
+    private interface DumpReader extends Closeable {
+
+        /**
+         *
+         * @param fields - receives the fields of the next entry, in the order of COLUMNS, null for the missing ones
+         * @return - false at the end of the dump
+         */
+        boolean next(String[] fields) throws IOException;
+
+        static DumpReader open(Path dump) throws IOException {
+            String name = dump.getFileName().toString().toLowerCase(Locale.ENGLISH);
+
+            return name.endsWith(".json") || name.endsWith(".ndjson") ? new JsonDumpReader(dump) : new CsvDumpReader(dump);
+        }
+    }
+
+    private static final class CsvDumpReader implements DumpReader {
+
+        private final BufferedReader in;
+        private final CsvRecordReader records;
+        private final int[] columnIndexes = new int[COLUMNS.length];
+
+        private CsvDumpReader(Path dump) throws IOException {
+            in = new BufferedReader(new InputStreamReader(Files.newInputStream(dump), StandardCharsets.UTF_8), BUFFER_SIZE);
+            records = new CsvRecordReader(in);
+
+            List<String> header = records.readRecord();
+
+            if (header == null || CsvRecordReader.indexOf(header, COLUMNS[ICO]) < 0) {
+                in.close();
+                throw new IllegalArgumentException("The business register dump " + dump + " has no ico column.");
+            }
+
+            for (int i = 0; i < COLUMNS.length; i++) {
+                columnIndexes[i] = CsvRecordReader.indexOf(header, COLUMNS[i]);
+            }
+        }
+
+        @Override
+        public boolean next(String[] fields) throws IOException {
+            List<String> record;
+
+            try {
+                record = records.readRecord();
+            } catch (IllegalArgumentException e) {
+                // a record too long or unterminated, left without fields to be rejected
+                LOGGER.warn("Skipped a business register entry: " + e.getMessage());
+                Arrays.fill(fields, null);
+                return true;
+            }
+
+            if (record == null) {
+                return false;
+            }
+
+            for (int i = 0; i < COLUMNS.length; i++) {
+                int index = columnIndexes[i];
+                fields[i] = index >= 0 && index < record.size() ? record.get(index) : null;
+            }
+
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class JsonDumpReader implements DumpReader {
+
+        private final JsonParser parser;
+
+        private JsonDumpReader(Path dump) throws IOException {
+            parser = new JsonFactory().createParser(Files.newInputStream(dump));
+        }
+
+        @Override
+        public boolean next(String[] fields) throws IOException {
+            JsonToken token = parser.nextToken();
+
+            // the entries are either root level values, or the elements of a root level array
+            while (token == JsonToken.START_ARRAY || token == JsonToken.END_ARRAY) {
+                token = parser.nextToken();
+            }
+
+            if (token == null) {
+                return false;
+            }
+
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Unexpected " + token + " in the business register dump, at " +
+                        parser.getCurrentLocation());
+            }
+
+            Arrays.fill(fields, null);
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int column = column(parser.getCurrentName());
+                JsonToken value = parser.nextToken();
+
+                if (column >= 0 && value.isScalarValue()) {
+                    fields[column] = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+
+        private static int column(String fieldName) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (COLUMNS[i].equals(fieldName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package calories.tracker.app.dao;
+
+
+import calories.tracker.app.model.DailyCalories;
+import calories.tracker.app.model.User;
+import org.hibernate.SQLQuery;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.util.Date;
+import java.util.List;
+
+/**
+ *
+ * Repository class for the DailyCalories entity
+ *
+ */
+@Repository
+public class DailyCaloriesRepository {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     *
+     * finds the total calories that a given user has consumed so far in ongoing day
+     *
+     * @param username - the currently logged in username
+     * @return the total number of calories for the user for today, or null if there are no meals today
+     */
+    public Long findTodaysCalories(String username) {
+        List<Long> calories = em.createNamedQuery(DailyCalories.FIND_TODAYS_CALORIES, Long.class)
+                .setParameter("username", username)
+                .getResultList();
+
+        return calories.isEmpty() ? null : calories.get(0);
+    }
+
+    /**
+     *
+     * @param user - the owner of the totals
+     * @return - all the daily totals of the user
+     */
+    public List<DailyCalories> findByUser(User user) {
+        return em.createNamedQuery(DailyCalories.FIND_BY_USER, DailyCalories.class)
+                .setParameter("user", user)
+                .getResultList();
+    }
+
+    /**
+     *
+     * adds to the existing total of a day, in place - concurrent changes of the same day do not overwrite
+     * each other.
+     *
+     * @param user - the owner of the total
+     * @param day - the day of the total
+     * @param calories - the calories to add, negative to subtract
+     * @param mealCount - the number of meals to add, negative to subtract
+     * @return - true if the total existed and was updated
+     */
+    public boolean addToTotal(User user, Date day, long calories, long mealCount) {
+        return em.createQuery("update DailyCalories d set d.calories = d.calories + :calories, " +
+                "d.mealCount = d.mealCount + :mealCount where d.user = :user and d.day = :day")
+                .setParameter("calories", calories)
+                .setParameter("mealCount", mealCount)
+                .setParameter("user", user)
+                .setParameter("day", day, TemporalType.DATE)
+                .executeUpdate() > 0;
+    }
+
+    /**
+     *
+     * locks the row of the user until the end of the transaction, so that the transactions inserting the first
+     * total of a day of the user run one after the other - the unique key on the user and the day would otherwise
+     * fail the second one.
+     *
+     * The lock is taken by an update that changes nothing rather than by a select for update, which HSQLDB ignores
+     * in its MVCC mode. The update is a native one synchronized with the totals only - after a bulk update of the
+     * users, Hibernate would evict all the users and their usernames from the second level cache.
+     *
+     * @param user - the owner of the totals
+     */
+    public void lockTotals(User user) {
+        Query lock = em.createNativeQuery("update USERS set version = version where id = :id")
+                .setParameter("id", user.getId());
+        lock.unwrap(SQLQuery.class).addSynchronizedEntityClass(DailyCalories.class);
+        lock.executeUpdate();
+    }
+
+    public void save(DailyCalories dailyCalories) {
+        em.persist(dailyCalories);
+    }
+
+    public void delete(DailyCalories dailyCalories) {
+        em.remove(dailyCalories);
+    }
+}
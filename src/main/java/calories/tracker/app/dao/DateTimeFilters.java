@@ -0,0 +1,133 @@
+package calories.tracker.app.dao;
+
+
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import java.sql.Time;
+import java.util.Date;
+import java.util.function.IntFunction;
+
+/**
+ *
+ * The date and time search criteria shared by the repositories - the user and the from date are always present,
+ * while the other criteria are optional.
+ *
+ * Each combination of the optional criteria is a different query, so the text of the queries is rendered once
+ * per combination, and the repositories only pick the text and bind the parameters on each call. Hibernate then
+ * finds the plan of the query in its query plan cache, instead of building and rendering a criteria tree.
+ *
+ */
+final class DateTimeFilters {
+
+    static final int TO_DATE = 1;
+    static final int FROM_TIME = 2;
+    static final int TO_TIME = 4;
+
+    /**
+     * the number of combinations of the optional criteria
+     */
+    static final int COMBINATIONS = 8;
+
+    private DateTimeFilters() {
+    }
+
+    /**
+     *
+     * @return - the combination of the given optional criteria, as a bitmask
+     */
+    static int of(Date toDate, Time fromTime, Time toTime) {
+        return (toDate != null ? TO_DATE : 0) | (fromTime != null ? FROM_TIME : 0) | (toTime != null ? TO_TIME : 0);
+    }
+
+    static boolean has(int filters, int filter) {
+        return (filters & filter) != 0;
+    }
+
+    /**
+     *
+     * @param template - renders the text of the query for a combination of the criteria
+     * @return - the text of the query for each combination, indexed by the combination
+     */
+    static String[] templates(IntFunction<String> template) {
+        String[] templates = new String[COMBINATIONS];
+
+        for (int filters = 0; filters < COMBINATIONS; filters++) {
+            templates[filters] = template.apply(filters);
+        }
+
+        return templates;
+    }
+
+    /**
+     *
+     * @param alias - the alias of an entity with a user, a date and a time
+     * @param filters - the combination of the optional criteria
+     * @return - the JPQL conditions of the criteria
+     */
+    static String whereClause(String alias, int filters) {
+        StringBuilder jpql = new StringBuilder(alias).append(".user.username = :username and ")
+                .append(alias).append(".date >= :fromDate");
+
+        if (has(filters, TO_DATE)) {
+            jpql.append(" and ").append(alias).append(".date <= :toDate");
+        }
+
+        if (has(filters, FROM_TIME)) {
+            jpql.append(" and ").append(alias).append(".time >= :fromTime");
+        }
+
+        if (has(filters, TO_TIME)) {
+            jpql.append(" and ").append(alias).append(".time <= :toTime");
+        }
+
+        return jpql.toString();
+    }
+
+    /**
+     *
+     * @param mealAlias - the alias of the MEALS table
+     * @param userAlias - the alias of the USERS table, joined on the user of the meals
+     * @param filters - the combination of the optional criteria
+     * @return - the SQL conditions of the criteria, for native queries
+     */
+    static String sqlWhereClause(String mealAlias, String userAlias, int filters) {
+        StringBuilder sql = new StringBuilder(userAlias).append(".username = :username and ")
+                .append(mealAlias).append(".date >= :fromDate");
+
+        if (has(filters, TO_DATE)) {
+            sql.append(" and ").append(mealAlias).append(".date <= :toDate");
+        }
+
+        if (has(filters, FROM_TIME)) {
+            sql.append(" and ").append(mealAlias).append(".time >= :fromTime");
+        }
+
+        if (has(filters, TO_TIME)) {
+            sql.append(" and ").append(mealAlias).append(".time <= :toTime");
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * binds the criteria present in a query rendered from a template
+     */
+    static <Q extends Query> Q bind(Q query, String username, Date fromDate, Date toDate, Time fromTime, Time toTime) {
+        query.setParameter("username", username);
+        query.setParameter("fromDate", fromDate, TemporalType.TIMESTAMP);
+
+        if (toDate != null) {
+            query.setParameter("toDate", toDate, TemporalType.TIMESTAMP);
+        }
+
+        if (fromTime != null) {
+            query.setParameter("fromTime", fromTime, TemporalType.TIME);
+        }
+
+        if (toTime != null) {
+            query.setParameter("toTime", toTime, TemporalType.TIME);
+        }
+
+        return query;
+    }
+}
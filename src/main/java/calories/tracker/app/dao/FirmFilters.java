@@ -0,0 +1,112 @@
+package calories.tracker.app.dao;
+
+
+import javax.persistence.Query;
+import java.util.function.IntFunction;
+
+/**
+ *
+ * The search criteria of the firms - the user is always present, while the name pattern and the exact ico, dic
+ * and ic dph are optional.
+ *
+ * As with @see DateTimeFilters, the text of the queries is rendered once per combination of the optional criteria.
+ * Each criterion is backed by an index of the firms of a user: the name by a trigram index of the lower cased names
+ * on PostgreSQL, and the identifiers by (user_id, ico), (user_id, dic) and (user_id, ic_dph).
+ *
+ */
+final class FirmFilters {
+
+    static final int NAME = 1;
+    static final int ICO = 2;
+    static final int DIC = 4;
+    static final int IC_DPH = 8;
+
+    /**
+     * the number of combinations of the optional criteria
+     */
+    static final int COMBINATIONS = 16;
+
+    private FirmFilters() {
+    }
+
+    /**
+     *
+     * @return - the combination of the given optional criteria, as a bitmask
+     */
+    static int of(String namePattern, String ico, String dic, String icDph) {
+        return (namePattern != null ? NAME : 0) | (ico != null ? ICO : 0) | (dic != null ? DIC : 0) |
+                (icDph != null ? IC_DPH : 0);
+    }
+
+    static boolean has(int filters, int filter) {
+        return (filters & filter) != 0;
+    }
+
+    /**
+     *
+     * @param template - renders the text of the query for a combination of the criteria
+     * @return - the text of the query for each combination, indexed by the combination
+     */
+    static String[] templates(IntFunction<String> template) {
+        String[] templates = new String[COMBINATIONS];
+
+        for (int filters = 0; filters < COMBINATIONS; filters++) {
+            templates[filters] = template.apply(filters);
+        }
+
+        return templates;
+    }
+
+    /**
+     *
+     * @param alias - the alias of a firm
+     * @param filters - the combination of the optional criteria
+     * @return - the JPQL conditions of the criteria
+     */
+    static String whereClause(String alias, int filters) {
+        StringBuilder jpql = new StringBuilder(alias).append(".user.username = :username");
+
+        if (has(filters, NAME)) {
+            jpql.append(" and lower(").append(alias).append(".name) like :namePattern").append(LikePatterns.ESCAPE);
+        }
+
+        if (has(filters, ICO)) {
+            jpql.append(" and ").append(alias).append(".ico = :ico");
+        }
+
+        if (has(filters, DIC)) {
+            jpql.append(" and ").append(alias).append(".dic = :dic");
+        }
+
+        if (has(filters, IC_DPH)) {
+            jpql.append(" and ").append(alias).append(".ic_dph = :icDph");
+        }
+
+        return jpql.toString();
+    }
+
+    /**
+     * binds the criteria present in a query rendered from a template
+     */
+    static <Q extends Query> Q bind(Q query, String username, String namePattern, String ico, String dic, String icDph) {
+        query.setParameter("username", username);
+
+        if (namePattern != null) {
+            query.setParameter("namePattern", namePattern);
+        }
+
+        if (ico != null) {
+            query.setParameter("ico", ico);
+        }
+
+        if (dic != null) {
+            query.setParameter("dic", dic);
+        }
+
+        if (icDph != null) {
+            query.setParameter("icDph", icDph);
+        }
+
+        return query;
+    }
+}
@@ -1,18 +1,28 @@
 package calories.tracker.app.dao;
 
+import calories.tracker.app.dto.FirmDTO;
 import calories.tracker.app.model.Firm;
-import calories.tracker.app.model.User;
+import calories.tracker.app.model.FirmCursor;
+import calories.tracker.app.model.SearchResult;
 import org.apache.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
-import javax.persistence.criteria.*;
-import java.sql.Time;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+
+import static calories.tracker.app.dao.FirmFilters.bind;
+import static calories.tracker.app.dao.FirmFilters.templates;
+import static calories.tracker.app.dao.FirmFilters.whereClause;
 
 /**
  *
@@ -24,6 +34,28 @@ public class FirmRepository {
 
     private static final Logger LOGGER = Logger.getLogger(FirmRepository.class);
 
+    private static final int PAGE_FETCH_SIZE = 100;
+    private static final int SCROLL_FETCH_SIZE = 500;
+
+    // the texts of the queries, rendered once for each combination of the search criteria, @see FirmFilters
+
+    private static final String[] COUNT_QUERIES = templates((filters) ->
+            "select count(f) from Firm f where " + whereClause("f", filters));
+
+    // the firms are sorted by lower cased name and id, the order of the (user_id, lower(name), id) index - the
+    // lower cased name is selected as well, as the position of the next page
+    private static final String SEARCH_COLUMNS = "f.id, f.name, f.address, f.account_num, f.ico, f.dic, f.ic_dph, lower(f.name)";
+
+    private static final String[] SEARCH_WITH_COUNT_QUERIES = templates((filters) ->
+            "select " + SEARCH_COLUMNS + ", (select count(c) from Firm c where " + whereClause("c", filters) + ") " +
+                    "from Firm f where " + whereClause("f", filters) + " order by lower(f.name) asc, f.id asc");
+
+    private static final String[] SEARCH_AFTER_CURSOR_WITH_COUNT_QUERIES = templates((filters) ->
+            "select " + SEARCH_COLUMNS + ", (select count(c) from Firm c where " + whereClause("c", filters) + ") " +
+                    "from Firm f where " + whereClause("f", filters) +
+                    " and (lower(f.name) > :cursorName or (lower(f.name) = :cursorName and f.id > :cursorId))" +
+                    " order by lower(f.name) asc, f.id asc");
+
     @PersistenceContext
     EntityManager em;
 
@@ -32,22 +64,17 @@ public class FirmRepository {
      * counts the matching firms, given the bellow criteria
      *
      * @param username - the currently logged in username
-     * @param fromDate - search from this date, including
-     * @param toDate - search until this date, including
-     * @param fromTime - search from this time, including
-     * @param toTime - search to this time, including
-     * @return -  a list of matching firms, or an empty collection if no match found
+     * @param namePattern - the like pattern of the lower cased names, @see FirmNameMatch, or null
+     * @param ico - the exact ico, or null
+     * @param dic - the exact dic, or null
+     * @param icDph - the exact ic dph, or null
+     * @return - the number of matching firms
      */
-    public Long countFirmsByDateTime(String username, Date fromDate, Date toDate, Time fromTime, Time toTime) {
+    public Long countFirms(String username, String namePattern, String ico, String dic, String icDph) {
 
-        CriteriaBuilder cb = em.getCriteriaBuilder();
-
-        // query for counting the total results
-        CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-        Root<Firm> countRoot = cq.from(Firm.class);
-        cq.select((cb.count(countRoot)));
-        cq.where(getCommonWhereCondition(cb, username, countRoot, fromDate, toDate, fromTime, toTime));
-        Long resultsCount = em.createQuery(cq).getSingleResult();
+        int filters = FirmFilters.of(namePattern, ico, dic, icDph);
+        TypedQuery<Long> countQuery = em.createQuery(COUNT_QUERIES[filters], Long.class);
+        Long resultsCount = bind(countQuery, username, namePattern, ico, dic, icDph).getSingleResult();
 
         LOGGER.info("Found " + resultsCount + " results.");
 
@@ -56,46 +83,143 @@ public class FirmRepository {
 
     /**
      *
-     * finds a list of firms, given the bellow criteria
+     * finds a page of firms together with the total number of matching firms, in a single database round-trip.
+     * The columns are selected straight into DTOs, no firm or user entity is loaded.
+     *
+     * The page is either read by number, or right after a cursor - seeking on the (lower(name), id) tuple instead
+     * of skipping rows, so that the cost of reading a page does not depend on how deep the page is.
      *
      * @param username - the currently logged in username
-     * @param fromDate - search from this date, including
-     * @param toDate - search until this date, including
-     * @param fromTime - search from this time, including
-     * @param toTime - search to this time, including
-     * @return -  a list of matching firms, or an empty collection if no match found
+     * @param namePattern - the like pattern of the lower cased names, @see FirmNameMatch, or null
+     * @param ico - the exact ico, or null
+     * @param dic - the exact dic, or null
+     * @param icDph - the exact ic dph, or null
+     * @param cursor - the position to seek from, or null to read the page by number
+     * @param pageNumber - the page number, starting at 1, ignored if a cursor is given
+     * @param pageSize - the number of firms per page
+     * @return - the page of matching firms, the total count and the cursor of the next page, if any
      */
-    public List<Firm> findFirmsByDateTime(String username, Date fromDate, Date toDate,
-                                          Time fromTime, Time toTime, int pageNumber) {
+    public SearchResult<FirmDTO> findFirmsWithCount(String username, String namePattern, String ico, String dic,
+                                                    String icDph, FirmCursor cursor, int pageNumber, int pageSize) {
+
+        int filters = FirmFilters.of(namePattern, ico, dic, icDph);
+        String[] templates = cursor != null ? SEARCH_AFTER_CURSOR_WITH_COUNT_QUERIES : SEARCH_WITH_COUNT_QUERIES;
+
+        TypedQuery<Object[]> query = em.createQuery(templates[filters], Object[].class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setHint(QueryHints.HINT_FETCH_SIZE, PAGE_FETCH_SIZE)
+                // one extra firm is read to know if there is a next page
+                .setMaxResults(pageSize + 1);
+        bind(query, username, namePattern, ico, dic, icDph);
+
+        if (cursor != null) {
+            query.setParameter("cursorName", cursor.getNameKey())
+                    .setParameter("cursorId", cursor.getId());
+        } else {
+            query.setFirstResult((pageNumber - 1) * pageSize);
+        }
+
+        List<Object[]> rows = query.getResultList();
+
+        if (rows.isEmpty()) {
+            return new SearchResult<>(cursor == null && pageNumber == 1 ? 0 :
+                    countFirms(username, namePattern, ico, dic, icDph), Collections.emptyList());
+        }
 
-        CriteriaBuilder cb = em.getCriteriaBuilder();
+        boolean hasNext = rows.size() > pageSize;
+        List<FirmDTO> firms = new ArrayList<>(pageSize);
 
-        // the actual search query that returns one page of results
-        CriteriaQuery<Firm> searchQuery = cb.createQuery(Firm.class);
-        Root<Firm> searchRoot = searchQuery.from(Firm.class);
-        searchQuery.select(searchRoot);
-        searchQuery.where(getCommonWhereCondition(cb, username, searchRoot, fromDate, toDate, fromTime, toTime));
+        for (Object[] row : rows.subList(0, hasNext ? pageSize : rows.size())) {
+            firms.add(new FirmDTO((Long) row[0], (String) row[1], (String) row[2], (String) row[3], (String) row[4],
+                    (String) row[5], (String) row[6]));
+        }
+
+        Long resultsCount = (Long) rows.get(0)[8];
+        Object[] last = rows.get(firms.size() - 1);
+        String nextCursor = hasNext ? FirmCursor.after((String) last[7], (Long) last[0]).encode() : null;
+
+        LOGGER.info("Found " + resultsCount + " results.");
+
+        return new SearchResult<>(resultsCount, false, firms, null, nextCursor);
+    }
+
+    /**
+     *
+     * finds firms of a user given their ids, selected straight into DTOs
+     *
+     * @param username - the currently logged in username
+     * @param ids - the ids of the firms, ids of other users' firms are ignored
+     * @return - the found firms, in no particular order
+     */
+    public List<FirmDTO> findFirmsByIds(String username, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-        List<Order> orderList = new ArrayList();
-        orderList.add(cb.desc(searchRoot.get("date")));
-        orderList.add(cb.asc(searchRoot.get("time")));
-        searchQuery.orderBy(orderList);
+        return em.createQuery("select new calories.tracker.app.dto.FirmDTO(f.id, f.name, f.address, f.account_num, " +
+                "f.ico, f.dic, f.ic_dph) from Firm f where f.id in :ids and f.user.username = :username", FirmDTO.class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setParameter("ids", ids)
+                .setParameter("username", username)
+                .getResultList();
+    }
 
-        TypedQuery<Firm> filterQuery = em.createQuery(searchQuery)
-                .setFirstResult((pageNumber - 1) * 10)
-                .setMaxResults(10);
+    /**
+     *
+     * reads the names and addresses of all the firms of a user through a forward only cursor, without loading
+     * them as entities, so that any number of firms can be read in constant memory.
+     *
+     * @param username - the currently logged in username
+     * @param consumer - receives each firm as a row of [id, name, address]
+     */
+    public void scrollFirmNames(String username, Consumer<Object[]> consumer) {
+
+        org.hibernate.Query query = em.unwrap(Session.class)
+                .createQuery("select f.id, f.name, f.address from Firm f where f.user.username = :username")
+                .setParameter("username", username)
+                .setFetchSize(SCROLL_FETCH_SIZE)
+                .setReadOnly(true);
+
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+
+        try {
+            while (results.next()) {
+                consumer.accept(results.get());
+            }
+        } finally {
+            results.close();
+        }
+    }
 
-        return filterQuery.getResultList();
+    /**
+     *
+     * @param maxResults - the maximum number of usernames to return
+     * @return - the usernames of the users owning firms, the users who created a firm most recently first
+     */
+    public List<String> findUsernamesByLatestFirm(int maxResults) {
+        return em.createQuery("select f.user.username from Firm f group by f.user.username order by max(f.id) desc",
+                String.class)
+                .setMaxResults(maxResults)
+                .getResultList();
     }
 
     /**
-     * Delete a firm, given its identifier
+     * Deletes the firms of a user with the given identifiers, in a single statement
      *
-     * @param deletedFirmId - the id of the firm to be deleted
+     * @param username - the currently logged in username
+     * @param deletedIds - the ids of the firms to be deleted
+     * @return - the number of firms actually deleted, ids of other users' firms are ignored
      */
-    public void delete(Long deletedFirmId) {
-    	Firm delete = em.find(Firm.class, deletedFirmId);
-        em.remove(delete);
+    public int delete(String username, Collection<Long> deletedIds) {
+        if (deletedIds.isEmpty()) {
+            return 0;
+        }
+
+        return em.createQuery("delete from Firm f where f.id in :ids and " +
+                "f.user in (select u from User u where u.username = :username)")
+                .setParameter("ids", deletedIds)
+                .setParameter("username", username)
+                .executeUpdate();
     }
 
     /**
@@ -116,29 +240,4 @@ public class FirmRepository {
         return em.merge(firm);
     }
 
-
-    private Predicate[] getCommonWhereCondition(CriteriaBuilder cb, String username, Root<Firm> searchRoot, Date fromDate, Date toDate,
-                                                Time fromTime, Time toTime) {
-
-        List<Predicate> predicates = new ArrayList<>();
-        Join<Firm, User> user = searchRoot.join("user");
-
-        predicates.add(cb.equal(user.<String>get("username"), username));
-        predicates.add(cb.greaterThanOrEqualTo(searchRoot.<Date>get("date"), fromDate));
-
-        if (toDate != null) {
-            predicates.add(cb.lessThanOrEqualTo(searchRoot.<Date>get("date"), toDate));
-        }
-
-        if (fromTime != null) {
-            predicates.add(cb.greaterThanOrEqualTo(searchRoot.<Date>get("time"), fromTime));
-        }
-
-        if (toTime != null) {
-            predicates.add(cb.lessThanOrEqualTo(searchRoot.<Date>get("time"), toTime));
-        }
-
-        return predicates.toArray(new Predicate[]{});
-    }
-
 }
@@ -0,0 +1,52 @@
+package calories.tracker.app.dao;
+
+
+import java.util.Locale;
+
+/**
+ *
+ * The like patterns built from the text entered by the users - the text is lower cased, and its wildcards are
+ * escaped by a backslash, so that the queries must match the lower cased column with the ESCAPE clause.
+ *
+ */
+public final class LikePatterns {
+
+    /**
+     * to append to the like conditions on the patterns
+     */
+    public static final String ESCAPE = " escape '\\'";
+
+    private static final char ESCAPE_CHAR = '\\';
+
+    private LikePatterns() {
+    }
+
+    /**
+     *
+     * @param text - the text to search for, as entered by the user
+     * @return - the pattern matching the lower cased values starting with the text
+     */
+    public static String startingWith(String text) {
+        return escape(new StringBuilder(text.length() + 1), text).append('%').toString();
+    }
+
+    /**
+     *
+     * @param text - the text to search for, as entered by the user
+     * @return - the pattern matching the lower cased values containing the text anywhere
+     */
+    public static String containing(String text) {
+        return escape(new StringBuilder(text.length() + 2).append('%'), text).append('%').toString();
+    }
+
+    private static StringBuilder escape(StringBuilder pattern, String text) {
+        for (char c : text.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (c == '%' || c == '_' || c == ESCAPE_CHAR) {
+                pattern.append(ESCAPE_CHAR);
+            }
+            pattern.append(c);
+        }
+
+        return pattern;
+    }
+}
@@ -1,19 +1,45 @@
 package calories.tracker.app.dao;
 
 
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.AbstractEntity;
 import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.MealCursor;
+import calories.tracker.app.model.SearchResult;
 import calories.tracker.app.model.User;
 import org.apache.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
+import org.postgresql.PGConnection;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
-import javax.persistence.criteria.*;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Time;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import static calories.tracker.app.dao.DateTimeFilters.bind;
+import static calories.tracker.app.dao.DateTimeFilters.sqlWhereClause;
+import static calories.tracker.app.dao.DateTimeFilters.templates;
+import static calories.tracker.app.dao.DateTimeFilters.whereClause;
 
 /**
  *
@@ -25,6 +51,42 @@ public class MealRepository {
 
     private static final Logger LOGGER = Logger.getLogger(MealRepository.class);
 
+    private static final int SCROLL_FETCH_SIZE = 500;
+
+    /**
+     * rows fetched per round-trip by the page queries - a page is rarely bigger, see MealService.MAX_PAGE_SIZE
+     */
+    private static final int PAGE_FETCH_SIZE = 100;
+
+    /**
+     * where a search starts - from the first meal (or an offset), after a cursor, or before a cursor
+     */
+    private static final int FROM_START = 0;
+    private static final int AFTER_CURSOR = 1;
+    private static final int BEFORE_CURSOR = 2;
+
+    // the texts of the queries, rendered once for each combination of the search criteria, @see DateTimeFilters
+
+    private static final String SEARCH_COLUMNS = "m.id, m.date, m.time, m.description, m.calories";
+
+    private static final String[] COUNT_QUERIES = templates((filters) ->
+            "select count(m) from Meal m where " + whereClause("m", filters));
+
+    private static final String[] CAPPED_COUNT_QUERIES = templates((filters) ->
+            "select count(*) from (select 1 from MEALS m inner join USERS u on m.user_id = u.id " +
+                    "where " + sqlWhereClause("m", "u", filters) + " limit :limit) capped");
+
+    private static final String[] DAILY_TOTALS_QUERIES = templates((filters) ->
+            "select m.date, sum(m.calories), count(m) from Meal m where " + whereClause("m", filters) +
+                    " group by m.date order by m.date asc");
+
+    // indexed by where the search starts, then by the filter combination
+    private static final String[][] SEARCH_QUERIES = searchTemplates((filters) -> SEARCH_COLUMNS);
+
+    // the total comes from an uncorrelated subquery, that the database evaluates only once for the whole statement
+    private static final String[][] SEARCH_WITH_COUNT_QUERIES = searchTemplates((filters) ->
+            SEARCH_COLUMNS + ", (select count(c) from Meal c where " + whereClause("c", filters) + ")");
+
     @PersistenceContext
     EntityManager em;
 
@@ -41,14 +103,9 @@ public class MealRepository {
      */
     public Long countMealsByDateTime(String username, Date fromDate, Date toDate, Time fromTime, Time toTime) {
 
-        CriteriaBuilder cb = em.getCriteriaBuilder();
-
-        // query for counting the total results
-        CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-        Root<Meal> countRoot = cq.from(Meal.class);
-        cq.select((cb.count(countRoot)));
-        cq.where(getCommonWhereCondition(cb, username, countRoot, fromDate, toDate, fromTime, toTime));
-        Long resultsCount = em.createQuery(cq).getSingleResult();
+        int filters = DateTimeFilters.of(toDate, fromTime, toTime);
+        TypedQuery<Long> countQuery = em.createQuery(COUNT_QUERIES[filters], Long.class);
+        Long resultsCount = bind(countQuery, username, fromDate, toDate, fromTime, toTime).getSingleResult();
 
         LOGGER.info("Found " + resultsCount + " results.");
 
@@ -57,46 +114,250 @@ public class MealRepository {
 
     /**
      *
-     * finds a list of meals, given the bellow criteria
+     * counts the matching meals, but stops counting once the given limit is reached - this keeps the cost of
+     * the count bounded on very large date ranges, when an approximate total is enough.
      *
      * @param username - the currently logged in username
      * @param fromDate - search from this date, including
      * @param toDate - search until this date, including
      * @param fromTime - search from this time, including
      * @param toTime - search to this time, including
+     * @param limit - the maximum number of matching meals to count
+     * @return - the number of matching meals, or the limit if there are at least that many
+     */
+    public Long countMealsByDateTime(String username, Date fromDate, Date toDate, Time fromTime, Time toTime, long limit) {
+
+        int filters = DateTimeFilters.of(toDate, fromTime, toTime);
+        Query countQuery = em.createNativeQuery(CAPPED_COUNT_QUERIES[filters])
+                .setParameter("limit", limit);
+
+        Long resultsCount = ((Number) bind(countQuery, username, fromDate, toDate, fromTime, toTime)
+                .getSingleResult()).longValue();
+
+        LOGGER.info("Found " + resultsCount + " results, counting up to " + limit + ".");
+
+        return resultsCount;
+    }
+
+    /**
+     *
+     * finds a page of meals together with the total number of matching meals, in a single database round-trip.
+     * The columns are selected straight into DTOs, no meal or user entity is loaded.
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param pageNumber - the page number, starting at 1
+     * @param pageSize - the number of meals per page
+     * @return - the page of matching meals and the total count
+     */
+    public SearchResult<MealDTO> findMealsWithCount(String username, Date fromDate, Date toDate,
+                                                    Time fromTime, Time toTime, int pageNumber, int pageSize) {
+
+        List<Object[]> rows = createSearchQuery(SEARCH_WITH_COUNT_QUERIES, username, fromDate, toDate,
+                fromTime, toTime, null)
+                .setFirstResult((pageNumber - 1) * pageSize)
+                .setMaxResults(pageSize)
+                .getResultList();
+
+        if (rows.isEmpty()) {
+            return new SearchResult<>(pageNumber == 1 ? 0 :
+                    countMealsByDateTime(username, fromDate, toDate, fromTime, toTime), Collections.emptyList());
+        }
+
+        return toSearchResult(rows, false);
+    }
+
+    /**
+     *
+     * finds the meals right after (or before) a given cursor together with the total number of matching meals,
+     * in a single database round-trip. The columns are selected straight into DTOs, no meal or user entity is loaded.
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param cursor - the position to seek from
+     * @param maxResults - the maximum number of meals to return
+     * @return - the matching meals in search order (date desc, time asc) and the total count
+     */
+    public SearchResult<MealDTO> findMealsByCursorWithCount(String username, Date fromDate, Date toDate,
+                                                            Time fromTime, Time toTime, MealCursor cursor, int maxResults) {
+
+        List<Object[]> rows = createSearchQuery(SEARCH_WITH_COUNT_QUERIES, username, fromDate, toDate,
+                fromTime, toTime, cursor)
+                .setMaxResults(maxResults)
+                .getResultList();
+
+        if (rows.isEmpty()) {
+            return new SearchResult<>(countMealsByDateTime(username, fromDate, toDate, fromTime, toTime),
+                    Collections.emptyList());
+        }
+
+        return toSearchResult(rows, cursor.getDirection() == MealCursor.Direction.PREVIOUS);
+    }
+
+    /**
+     *
+     * finds a page of meals, given the bellow criteria - only the columns of the DTOs are selected, the meals
+     * and their users are not loaded as entities
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param pageNumber - the page number, starting at 1
+     * @param pageSize - the number of meals per page
      * @return -  a list of matching meals, or an empty collection if no match found
      */
-    public List<Meal> findMealsByDateTime(String username, Date fromDate, Date toDate,
-                                          Time fromTime, Time toTime, int pageNumber) {
+    public List<MealDTO> findMealsByDateTime(String username, Date fromDate, Date toDate,
+                                             Time fromTime, Time toTime, int pageNumber, int pageSize) {
+
+        TypedQuery<Object[]> filterQuery = createSearchQuery(SEARCH_QUERIES, username, fromDate, toDate,
+                fromTime, toTime, null)
+                .setFirstResult((pageNumber - 1) * pageSize)
+                .setMaxResults(pageSize);
 
-        CriteriaBuilder cb = em.getCriteriaBuilder();
+        return toMealDTOs(filterQuery.getResultList());
+    }
+
+    /**
+     *
+     * finds the meals right after (or before) a given cursor, seeking on the (date, time, id) tuple instead of
+     * skipping rows, so that the cost of reading a page does not depend on how deep the page is. The meals are
+     * selected straight into DTOs.
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param cursor - the position to seek from
+     * @param maxResults - the maximum number of meals to return
+     * @return -  the matching meals in search order (date desc, time asc), or an empty collection if no match found
+     */
+    public List<MealDTO> findMealsByCursor(String username, Date fromDate, Date toDate,
+                                           Time fromTime, Time toTime, MealCursor cursor, int maxResults) {
 
-        // the actual search query that returns one page of results
-        CriteriaQuery<Meal> searchQuery = cb.createQuery(Meal.class);
-        Root<Meal> searchRoot = searchQuery.from(Meal.class);
-        searchQuery.select(searchRoot);
-        searchQuery.where(getCommonWhereCondition(cb, username, searchRoot, fromDate, toDate, fromTime, toTime));
+        List<MealDTO> meals = toMealDTOs(createSearchQuery(SEARCH_QUERIES, username, fromDate, toDate,
+                fromTime, toTime, cursor)
+                .setMaxResults(maxResults)
+                .getResultList());
 
-        List<Order> orderList = new ArrayList();
-        orderList.add(cb.desc(searchRoot.get("date")));
-        orderList.add(cb.asc(searchRoot.get("time")));
-        searchQuery.orderBy(orderList);
+        if (cursor.getDirection() == MealCursor.Direction.PREVIOUS) {
+            Collections.reverse(meals);
+        }
 
-        TypedQuery<Meal> filterQuery = em.createQuery(searchQuery)
-                .setFirstResult((pageNumber - 1) * 10)
-                .setMaxResults(10);
+        return meals;
+    }
 
-        return filterQuery.getResultList();
+    /**
+     *
+     * counts all the meals of a user, but stops counting once the given limit is reached
+     *
+     * @param username - the currently logged in username
+     * @param limit - the maximum number of meals to count
+     * @return - the number of meals of the user, or the limit if there are at least that many
+     */
+    public long countMeals(String username, long limit) {
+        return ((Number) em.createNativeQuery("select count(*) from (select 1 from MEALS m inner join USERS u " +
+                "on m.user_id = u.id where u.username = :username limit :limit) capped")
+                .setParameter("username", username)
+                .setParameter("limit", limit)
+                .getSingleResult()).longValue();
     }
 
     /**
-     * Delete a meal, given its identifier
      *
-     * @param deletedMealId - the id of the meal to be deleted
+     * reads all the meals of a user in a date range through a forward only cursor, without loading them as
+     * entities, so that any number of meals can be read in constant memory.
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - read from this date, including, or from the first meal if null
+     * @param toDate - read until this date, including, or until the last meal if null
+     * @param consumer - receives each meal as a row of [id, date, time, description, calories]
      */
-    public void delete(Long deletedMealId) {
-        Meal delete = em.find(Meal.class, deletedMealId);
-        em.remove(delete);
+    public void scrollMeals(String username, Date fromDate, Date toDate, Consumer<Object[]> consumer) {
+
+        StringBuilder hql = new StringBuilder("select m.id, m.date, m.time, m.description, m.calories from Meal m " +
+                "where m.user.username = :username");
+
+        if (fromDate != null) {
+            hql.append(" and m.date >= :fromDate");
+        }
+
+        if (toDate != null) {
+            hql.append(" and m.date <= :toDate");
+        }
+
+        hql.append(" order by m.date desc, m.time asc, m.id asc");
+
+        org.hibernate.Query query = em.unwrap(Session.class).createQuery(hql.toString())
+                .setParameter("username", username)
+                .setFetchSize(SCROLL_FETCH_SIZE)
+                .setReadOnly(true);
+
+        if (fromDate != null) {
+            query.setTimestamp("fromDate", fromDate);
+        }
+
+        if (toDate != null) {
+            query.setTimestamp("toDate", toDate);
+        }
+
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+
+        try {
+            while (results.next()) {
+                consumer.accept(results.get());
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     *
+     * finds the latest meals of a user whose description starts with a prefix
+     *
+     * @param username - the currently logged in username
+     * @param descriptionPattern - a like pattern of the lower case description, @see LikePatterns
+     * @param maxResults - the maximum number of meals to return
+     * @return - rows of [description, calories], the latest meals first
+     */
+    public List<Object[]> findLatestMealsByDescription(String username, String descriptionPattern, int maxResults) {
+        return em.createQuery("select m.description, m.calories from Meal m where m.user.username = :username " +
+                "and lower(m.description) like :descriptionPattern" + LikePatterns.ESCAPE +
+                " order by m.date desc, m.time desc",
+                Object[].class)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .setParameter("username", username)
+                .setParameter("descriptionPattern", descriptionPattern)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    /**
+     * Deletes the meals of a user with the given identifiers, in a single statement
+     *
+     * @param username - the currently logged in username
+     * @param deletedIds - the ids of the meals to be deleted
+     * @return - the number of meals actually deleted, ids of other users' meals are ignored
+     */
+    public int delete(String username, Collection<Long> deletedIds) {
+        if (deletedIds.isEmpty()) {
+            return 0;
+        }
+
+        return em.createQuery("delete from Meal m where m.id in :ids and " +
+                "m.user in (select u from User u where u.username = :username)")
+                .setParameter("ids", deletedIds)
+                .setParameter("username", username)
+                .executeUpdate();
     }
 
     /**
@@ -108,6 +369,79 @@ public class MealRepository {
         return em.find(Meal.class, id);
     }
 
+    /**
+     *
+     * finds the meals of a user with the given ids, in a single query
+     *
+     * @param username - the currently logged in username
+     * @param ids - the ids of the meals
+     * @return - the matching meals, meals of other users are not returned
+     */
+    public List<Meal> findMealsByIds(String username, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return em.createQuery("select m from Meal m where m.user.username = :username and m.id in :ids", Meal.class)
+                .setParameter("username", username)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
+    /**
+     *
+     * sums up the calories and number of meals of a user, per meal date
+     *
+     * @param user - the owner of the meals
+     * @return - rows of [date, calories, number of meals]
+     */
+    public List<Object[]> findDailyTotals(User user) {
+        return em.createQuery("select m.date, sum(m.calories), count(m) from Meal m where m.user = :user " +
+                "group by m.date", Object[].class)
+                .setParameter("user", user)
+                .getResultList();
+    }
+
+    /**
+     *
+     * sums up the calories and number of meals of the given meals of a user, per meal date
+     *
+     * @param username - the currently logged in username
+     * @param ids - the ids of the meals
+     * @return - rows of [date, calories, number of meals]
+     */
+    public List<Object[]> findDailyTotals(String username, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return em.createQuery("select m.date, sum(m.calories), count(m) from Meal m " +
+                "where m.user.username = :username and m.id in :ids group by m.date", Object[].class)
+                .setParameter("username", username)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
+    /**
+     *
+     * sums up the calories and number of meals per meal date, for the meals matching the search criteria - the
+     * sums are computed by the database, with a GROUP BY on the date.
+     *
+     * @param username - the currently logged in username
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @return - rows of [date, calories, number of meals], by ascending date
+     */
+    public List<Object[]> findDailyTotals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime) {
+
+        int filters = DateTimeFilters.of(toDate, fromTime, toTime);
+        TypedQuery<Object[]> totalsQuery = em.createQuery(DAILY_TOTALS_QUERIES[filters], Object[].class);
+
+        return bind(totalsQuery, username, fromDate, toDate, fromTime, toTime).getResultList();
+    }
+
     /**
      *
      * save changes made to a meal, or create the meal if its a new meal.
@@ -117,29 +451,183 @@ public class MealRepository {
         return em.merge(meal);
     }
 
+    /**
+     *
+     * makes a new meal persistent - unlike save, no copy is made, and the insert is deferred to the flush,
+     * so that inserts of several meals can be batched.
+     *
+     */
+    public void persist(Meal meal) {
+        em.persist(meal);
+    }
+
+    /**
+     *
+     * inserts many new meals at once, by the fastest way the database offers - a COPY on PostgreSQL, and
+     * JDBC batches of persisted meals otherwise. The persistence context is cleared afterwards, so that the
+     * inserted meals do not pile up in it.
+     *
+     * @param meals - the new meals, with their user set
+     */
+    public void insertMeals(List<Meal> meals) {
+        if (meals.isEmpty()) {
+            return;
+        }
 
-    private Predicate[] getCommonWhereCondition(CriteriaBuilder cb, String username, Root<Meal> searchRoot, Date fromDate, Date toDate,
-                                                Time fromTime, Time toTime) {
+        Session session = em.unwrap(Session.class);
+        boolean copied = session.doReturningWork((connection) -> {
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                return false;
+            }
+            copyMeals(connection, meals);
+            return true;
+        });
 
-        List<Predicate> predicates = new ArrayList<>();
-        Join<Meal, User> user = searchRoot.join("user");
+        if (!copied) {
+            meals.forEach(em::persist);
+            em.flush();
+        }
 
-        predicates.add(cb.equal(user.<String>get("username"), username));
-        predicates.add(cb.greaterThanOrEqualTo(searchRoot.<Date>get("date"), fromDate));
+        em.clear();
+    }
 
-        if (toDate != null) {
-            predicates.add(cb.lessThanOrEqualTo(searchRoot.<Date>get("date"), toDate));
+    /**
+     * streams the meals to a COPY statement - the ids are taken from Meal_SEQ by blocks, exactly like the
+     * pooled optimizer of the entities does, so that they never collide with the ids that Hibernate hands out.
+     */
+    private void copyMeals(Connection connection, List<Meal> meals) throws SQLException {
+        List<Long> ids = allocateMealIds(connection, meals.size());
+        StringBuilder csv = new StringBuilder();
+
+        for (int i = 0; i < meals.size(); i++) {
+            Meal meal = meals.get(i);
+            csv.append(ids.get(i)).append(',')
+                    .append(UUID.randomUUID()).append(",0,")
+                    .append(meal.getCalories()).append(',')
+                    .append(new Timestamp(meal.getDate().getTime())).append(',')
+                    .append('"').append(meal.getDescription().replace("\"", "\"\"")).append("\",")
+                    .append(meal.getTime()).append(',')
+                    .append(meal.getUser().getId()).append('\n');
+        }
+
+        try {
+            long copied = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                    "COPY MEALS (id, UUID, version, calories, date, description, time, user_id) FROM STDIN WITH (FORMAT csv)",
+                    new StringReader(csv.toString()));
+            LOGGER.info("Copied " + copied + " meals.");
+        } catch (IOException e) {
+            throw new SQLException("Could not copy the meals.", e);
+        }
+    }
+
+    private List<Long> allocateMealIds(Connection connection, int count) throws SQLException {
+        List<Long> ids = new ArrayList<>(count);
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select nextval('Meal_SEQ') from generate_series(1, ?)")) {
+
+            while (ids.size() < count) {
+                int blocks = (count - ids.size() - 1) / AbstractEntity.ID_BLOCK_SIZE + 1;
+                statement.setInt(1, blocks);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next() && ids.size() < count) {
+                        long hi = resultSet.getLong(1);
+                        for (long id = Math.max(1, hi - AbstractEntity.ID_BLOCK_SIZE + 1); id <= hi && ids.size() < count; id++) {
+                            ids.add(id);
+                        }
+                    }
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * the text of a search query for each start of the search and filter combination - the id is added to
+     * the order as a tie breaker, so that every meal has a unique position that a cursor can point to.
+     */
+    private static String[][] searchTemplates(IntFunction<String> columns) {
+        String[][] templates = new String[BEFORE_CURSOR + 1][];
+
+        for (int start = FROM_START; start <= BEFORE_CURSOR; start++) {
+            int searchStart = start;
+            templates[start] = templates((filters) -> {
+                StringBuilder jpql = new StringBuilder("select ").append(columns.apply(filters))
+                        .append(" from Meal m where ").append(whereClause("m", filters));
+
+                if (searchStart == AFTER_CURSOR) {
+                    jpql.append(" and (m.date < :cursorDate or (m.date = :cursorDate and (m.time > :cursorTime or (m.time = :cursorTime and m.id > :cursorId))))");
+                } else if (searchStart == BEFORE_CURSOR) {
+                    jpql.append(" and (m.date > :cursorDate or (m.date = :cursorDate and (m.time < :cursorTime or (m.time = :cursorTime and m.id < :cursorId))))");
+                }
+
+                jpql.append(searchStart == BEFORE_CURSOR ?
+                        " order by m.date asc, m.time desc, m.id desc" : " order by m.date desc, m.time asc, m.id asc");
+
+                return jpql.toString();
+            });
         }
 
-        if (fromTime != null) {
-            predicates.add(cb.greaterThanOrEqualTo(searchRoot.<Date>get("time"), fromTime));
+        return templates;
+    }
+
+    /**
+     * creates a search query from one of the search templates, with its criteria and cursor bound
+     */
+    private TypedQuery<Object[]> createSearchQuery(String[][] templates, String username, Date fromDate, Date toDate,
+                                                   Time fromTime, Time toTime, MealCursor cursor) {
+        int start = cursor == null ? FROM_START :
+                cursor.getDirection() == MealCursor.Direction.NEXT ? AFTER_CURSOR : BEFORE_CURSOR;
+
+        TypedQuery<Object[]> query = readOnly(em.createQuery(
+                templates[start][DateTimeFilters.of(toDate, fromTime, toTime)], Object[].class));
+        bind(query, username, fromDate, toDate, fromTime, toTime);
+
+        if (cursor != null) {
+            query.setParameter("cursorDate", cursor.getDate())
+                    .setParameter("cursorTime", cursor.getTime())
+                    .setParameter("cursorId", cursor.getId());
+        }
+
+        return query;
+    }
+
+    private SearchResult<MealDTO> toSearchResult(List<Object[]> rows, boolean reversed) {
+        List<MealDTO> meals = toMealDTOs(rows);
+
+        if (reversed) {
+            Collections.reverse(meals);
         }
 
-        if (toTime != null) {
-            predicates.add(cb.lessThanOrEqualTo(searchRoot.<Date>get("time"), toTime));
+        Long resultsCount = (Long) rows.get(0)[5];
+
+        LOGGER.info("Found " + resultsCount + " results.");
+
+        return new SearchResult<>(resultsCount, meals);
+    }
+
+    /**
+     * maps rows starting with the SEARCH_COLUMNS
+     */
+    private List<MealDTO> toMealDTOs(List<Object[]> rows) {
+        List<MealDTO> meals = new ArrayList<>(rows.size());
+
+        for (Object[] row : rows) {
+            meals.add(new MealDTO((Long) row[0], (Date) row[1], (Time) row[2], (String) row[3], (Long) row[4]));
         }
 
-        return predicates.toArray(new Predicate[]{});
+        return meals;
+    }
+
+    /**
+     * the search queries only read values, so Hibernate is told not to keep snapshots for dirty checking, and to
+     * fetch a page in a single round-trip
+     */
+    private <T> TypedQuery<T> readOnly(TypedQuery<T> query) {
+        return query.setHint(QueryHints.HINT_READONLY, true)
+                .setHint(QueryHints.HINT_FETCH_SIZE, PAGE_FETCH_SIZE);
     }
 
 }
@@ -0,0 +1,40 @@
+package calories.tracker.app.dao;
+
+
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.SearchResult;
+
+import java.sql.Time;
+import java.util.Date;
+
+/**
+ *
+ * Full-text search of the meal descriptions, combined with the date and time criteria of the meal searches.
+ *
+ * The descriptions and the queries are cut in words, and the words reduced to their stem, so that "salmon dish"
+ * matches "Glazed Salmon Dishes". Each database has its own implementation, picked by the active profile:
+ *
+ * - on PostgreSQL, the english tsvector of the descriptions is matched through a GIN index, @see PostgresMealTextSearch
+ * - the in-memory HSQLDB of the test profile has no full-text index, so the descriptions are indexed in memory,
+ *   @see calories.tracker.app.cache.InMemoryMealTextSearch
+ *
+ */
+public interface MealTextSearch {
+
+    /**
+     *
+     * finds a page of the meals whose description contains all the words of a query, the most relevant first
+     *
+     * @param username - the currently logged in username
+     * @param query - the words to match, in any order
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including, or null
+     * @param toTime - search to this time, including, or null
+     * @param pageNumber - the page number, starting at 1
+     * @param pageSize - the number of meals per page
+     * @return - the page of matching meals, and the total count
+     */
+    SearchResult<MealDTO> findMeals(String username, String query, Date fromDate, Date toDate, Time fromTime,
+                                    Time toTime, int pageNumber, int pageSize);
+}
@@ -0,0 +1,92 @@
+package calories.tracker.app.dao;
+
+
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.SearchResult;
+import org.apache.log4j.Logger;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static calories.tracker.app.dao.DateTimeFilters.bind;
+import static calories.tracker.app.dao.DateTimeFilters.sqlWhereClause;
+import static calories.tracker.app.dao.DateTimeFilters.templates;
+
+/**
+ *
+ * Full-text search of the meal descriptions on PostgreSQL - the descriptions are matched as english tsvectors
+ * against the plainto_tsquery of the query, which the GIN expression index IDX_MEALS_DESCRIPTION_FTS serves, and
+ * ranked by ts_rank. The index is maintained by the database on each insert, update and delete.
+ *
+ */
+@Repository
+@Profile("!test")
+public class PostgresMealTextSearch implements MealTextSearch {
+
+    private static final Logger LOGGER = Logger.getLogger(PostgresMealTextSearch.class);
+
+    // the expression must be the one of the index, for the index to be used
+    private static final String DESCRIPTION_VECTOR = "to_tsvector('english', m.description)";
+
+    private static final String FROM_MATCHING_MEALS = " from MEALS m inner join USERS u on m.user_id = u.id, " +
+            "plainto_tsquery('english', :query) q where ";
+
+    // the texts of the queries, rendered once for each combination of the search criteria, @see DateTimeFilters
+
+    private static final String[] COUNT_QUERIES = templates((filters) ->
+            "select count(*)" + FROM_MATCHING_MEALS + sqlWhereClause("m", "u", filters) +
+                    " and " + DESCRIPTION_VECTOR + " @@ q");
+
+    // the total is computed by a window over all the matching meals, before the page is cut
+    private static final String[] SEARCH_WITH_COUNT_QUERIES = templates((filters) ->
+            "select m.id, m.date, m.time, m.description, m.calories, count(*) over ()" + FROM_MATCHING_MEALS +
+                    sqlWhereClause("m", "u", filters) + " and " + DESCRIPTION_VECTOR + " @@ q" +
+                    " order by ts_rank(" + DESCRIPTION_VECTOR + ", q) desc, m.date desc, m.time asc, m.id asc" +
+                    " limit :limit offset :offset");
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public SearchResult<MealDTO> findMeals(String username, String query, Date fromDate, Date toDate, Time fromTime,
+                                           Time toTime, int pageNumber, int pageSize) {
+
+        int filters = DateTimeFilters.of(toDate, fromTime, toTime);
+
+        List<Object[]> rows = bind(em.createNativeQuery(SEARCH_WITH_COUNT_QUERIES[filters]), username, fromDate,
+                toDate, fromTime, toTime)
+                .setParameter("query", query)
+                .setParameter("limit", pageSize)
+                .setParameter("offset", (long) (pageNumber - 1) * pageSize)
+                .getResultList();
+
+        if (rows.isEmpty()) {
+            long resultsCount = pageNumber == 1 ? 0 : ((Number) bind(em.createNativeQuery(COUNT_QUERIES[filters]),
+                    username, fromDate, toDate, fromTime, toTime)
+                    .setParameter("query", query)
+                    .getSingleResult()).longValue();
+
+            return new SearchResult<>(resultsCount, new ArrayList<>());
+        }
+
+        List<MealDTO> meals = new ArrayList<>(rows.size());
+
+        for (Object[] row : rows) {
+            meals.add(new MealDTO(((Number) row[0]).longValue(), (Date) row[1], (Time) row[2], (String) row[3],
+                    ((Number) row[4]).longValue()));
+        }
+
+        long resultsCount = ((Number) rows.get(0)[5]).longValue();
+
+        LOGGER.info("Found " + resultsCount + " meals matching the full-text query.");
+
+        return new SearchResult<>(resultsCount, meals);
+    }
+}
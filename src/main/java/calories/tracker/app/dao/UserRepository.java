@@ -2,11 +2,23 @@ package calories.tracker.app.dao;
 
 
 import calories.tracker.app.model.User;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  *
@@ -19,30 +31,51 @@ public class UserRepository {
     @PersistenceContext
     private EntityManager em;
 
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    /**
+     * publishes the hit and miss counts of the user caches, under cache.users.* and cache.users-by-username.*
+     */
+    @PostConstruct
+    public void registerCacheMetrics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        registerCacheMetrics(User.CACHE_REGION,
+                () -> statistics.getSecondLevelCacheStatistics(User.CACHE_REGION).getHitCount(),
+                () -> statistics.getSecondLevelCacheStatistics(User.CACHE_REGION).getMissCount());
+
+        registerCacheMetrics(User.NATURAL_ID_CACHE_REGION,
+                () -> statistics.getNaturalIdCacheStatistics(User.NATURAL_ID_CACHE_REGION).getHitCount(),
+                () -> statistics.getNaturalIdCacheStatistics(User.NATURAL_ID_CACHE_REGION).getMissCount());
+    }
+
     /**
-     * finds a user given its username
+     * finds a user given its username - the username is resolved to the user id, and the user loaded by id,
+     * both through the second level cache.
+     *
+     * Both caches are read-write, so Hibernate keeps them up to date when a user is saved through the entity manager.
+     *
+     * The lookup needs a session, so it joins the current transaction, or runs in its own when called from
+     * outside of the services (on login).
      *
      * @param username - the username of the searched user
      * @return  a matching user, or null if no user found.
      */
+    @Transactional(readOnly = true)
     public User findUserByUsername(String username) {
-
-        List<User> users = em.createNamedQuery(User.FIND_BY_USERNAME, User.class)
-                .setParameter("username", username)
-                .getResultList();
-
-        return users.size() == 1 ? users.get(0) : null;
+        return (User) em.unwrap(Session.class).bySimpleNaturalId(User.class).load(username);
     }
 
     /**
      *
-     * find the total calories that a given user has consumed so far in ongoing day
-     *
-     * @param username
-     * @return the total number of calories for the user for today
+     * @return the usernames of all users
      */
-    public Long findTodaysCaloriesForUser(String username) {
-        return (Long) em.createNamedQuery(User.COUNT_TODAYS_CALORIES).setParameter("username", username).getSingleResult();
+    public List<String> findAllUsernames() {
+        return em.createNamedQuery(User.FIND_ALL_USERNAMES, String.class).getResultList();
     }
 
     /**
@@ -50,9 +83,10 @@ public class UserRepository {
      * save changes made to a user, or insert it if its new
      *
      * @param user
+     * @return the saved version of the user
      */
-    public void save(User user) {
-        em.merge(user);
+    public User save(User user) {
+        return em.merge(user);
     }
 
     /**
@@ -69,4 +103,20 @@ public class UserRepository {
 
         return users.isEmpty();
     }
+
+    private void registerCacheMetrics(String region, Supplier<Long> hits, Supplier<Long> misses) {
+        metricRegistry.remove(MetricRegistry.name("cache", region, "hits"));
+        metricRegistry.register(MetricRegistry.name("cache", region, "hits"), (Gauge<Long>) hits::get);
+
+        metricRegistry.remove(MetricRegistry.name("cache", region, "misses"));
+        metricRegistry.register(MetricRegistry.name("cache", region, "misses"), (Gauge<Long>) misses::get);
+
+        metricRegistry.remove(MetricRegistry.name("cache", region, "hitRatio"));
+        metricRegistry.register(MetricRegistry.name("cache", region, "hitRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.get(), hits.get() + misses.get());
+            }
+        });
+    }
 }
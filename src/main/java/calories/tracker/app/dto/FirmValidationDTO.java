@@ -0,0 +1,73 @@
+package calories.tracker.app.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * JSON serializable DTO containing the outcome of checking a firm against the business register - the firm
+ * completed with the register data, and the fields that contradict the register.
+ *
+ */
+public class FirmValidationDTO {
+
+    public enum Status {
+        /**
+         * the firm matches its register entry
+         */
+        VALID,
+        /**
+         * the firm matches its register entry, and some of its missing fields were filled from it
+         */
+        COMPLETED,
+        /**
+         * the dic or ic dph of the firm differ from its register entry
+         */
+        MISMATCH,
+        /**
+         * the register has no entry with the ico of the firm (or its dic, if the ico is missing)
+         */
+        NOT_FOUND,
+        /**
+         * no business register index is loaded
+         */
+        UNAVAILABLE
+    }
+
+    private Status status;
+    private FirmDTO firm;
+    private List<String> mismatches = new ArrayList<>();
+
+    public FirmValidationDTO() {
+    }
+
+    public FirmValidationDTO(Status status, FirmDTO firm, List<String> mismatches) {
+        this.status = status;
+        this.firm = firm;
+        this.mismatches = mismatches;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public FirmDTO getFirm() {
+        return firm;
+    }
+
+    public void setFirm(FirmDTO firm) {
+        this.firm = firm;
+    }
+
+    public List<String> getMismatches() {
+        return mismatches;
+    }
+
+    public void setMismatches(List<String> mismatches) {
+        this.mismatches = mismatches;
+    }
+}
@@ -10,6 +10,7 @@ import java.util.List;
 public class FirmsDTO {
     private long currentPage;
     private long totalPages;
+    private String nextCursor;
     List<FirmDTO> firms;
 
     public FirmsDTO(long currentPage, long totalPages, List<FirmDTO> firms) {
@@ -18,6 +19,11 @@ public class FirmsDTO {
         this.firms = firms;
     }
 
+    public FirmsDTO(long currentPage, long totalPages, String nextCursor, List<FirmDTO> firms) {
+        this(currentPage, totalPages, firms);
+        this.nextCursor = nextCursor;
+    }
+
     public long getCurrentPage() {
         return currentPage;
     }
@@ -34,6 +40,14 @@ public class FirmsDTO {
         this.totalPages = totalPages;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public List<FirmDTO> getFirms() {
         return firms;
     }
@@ -1,10 +1,11 @@
 package calories.tracker.app.dto;
 
 
+import calories.tracker.app.dto.serialization.CustomDateDeserializer;
+import calories.tracker.app.dto.serialization.CustomDateSerializer;
 import calories.tracker.app.dto.serialization.CustomTimeDeserializer;
 import calories.tracker.app.dto.serialization.CustomTimeSerializer;
 import calories.tracker.app.model.Meal;
-import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
@@ -22,7 +23,8 @@ public class MealDTO {
 
     private Long id;
 
-    @JsonFormat(pattern = "yyyy/MM/dd", timezone = "CET")
+    @JsonSerialize(using = CustomDateSerializer.class)
+    @JsonDeserialize(using = CustomDateDeserializer.class)
     private Date date;
 
     @JsonSerialize(using = CustomTimeSerializer.class)
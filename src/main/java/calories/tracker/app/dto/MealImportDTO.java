@@ -0,0 +1,100 @@
+package calories.tracker.app.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * JSON serializable DTO containing the report of a meals import - how many meals were imported, and why the
+ * other records were rejected.
+ *
+ */
+public class MealImportDTO {
+
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private long importedCount;
+    private long rejectedCount;
+    private List<RowError> errors = new ArrayList<>();
+
+    /**
+     * a rejected record of the imported file
+     */
+    public static class RowError {
+
+        private int line;
+        private String message;
+
+        public RowError() {
+        }
+
+        public RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public void setLine(int line) {
+            this.line = line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     *
+     * counts a rejected record - only the first MAX_REPORTED_ERRORS errors are kept, so that the size of the
+     * report does not grow with the size of the file.
+     *
+     * @param line - the line where the record starts
+     * @param message - why the record was rejected
+     */
+    public void rejected(int line, String message) {
+        rejectedCount++;
+
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    public void imported(int count) {
+        importedCount += count;
+    }
+
+    public long getImportedCount() {
+        return importedCount;
+    }
+
+    public void setImportedCount(long importedCount) {
+        this.importedCount = importedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public void setRejectedCount(long rejectedCount) {
+        this.rejectedCount = rejectedCount;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RowError> errors) {
+        this.errors = errors;
+    }
+
+    public boolean isErrorsTruncated() {
+        return rejectedCount > errors.size();
+    }
+}
@@ -0,0 +1,181 @@
+package calories.tracker.app.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ *
+ * JSON serializable DTO containing the calorie statistics of a date range - the summary of the range, and the
+ * totals per day, week and month as parallel arrays, so that a whole year fits in a small reply.
+ *
+ */
+public class MealStatsDTO {
+
+    private Long dailyLimit;
+    private long totalCalories;
+    private long mealCount;
+    private long dayCount;
+    private double averageDailyCalories;
+    private double averageMealCalories;
+    private Long lowestDailyCalories;
+    private Long highestDailyCalories;
+    private long daysOverLimit;
+
+    private Series days;
+    private Series weeks;
+    private Series months;
+
+    /**
+     * totals per period - the i-th element of each array belongs to the period starting at periods[i]
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Series {
+
+        private List<String> periods;
+        private long[] calories;
+        private long[] mealCounts;
+        private long[] dayCounts;
+
+        public Series() {
+        }
+
+        public Series(List<String> periods, long[] calories, long[] mealCounts, long[] dayCounts) {
+            this.periods = periods;
+            this.calories = calories;
+            this.mealCounts = mealCounts;
+            this.dayCounts = dayCounts;
+        }
+
+        public List<String> getPeriods() {
+            return periods;
+        }
+
+        public void setPeriods(List<String> periods) {
+            this.periods = periods;
+        }
+
+        public long[] getCalories() {
+            return calories;
+        }
+
+        public void setCalories(long[] calories) {
+            this.calories = calories;
+        }
+
+        public long[] getMealCounts() {
+            return mealCounts;
+        }
+
+        public void setMealCounts(long[] mealCounts) {
+            this.mealCounts = mealCounts;
+        }
+
+        /**
+         * the number of days with meals in each period, not sent for the daily series
+         */
+        public long[] getDayCounts() {
+            return dayCounts;
+        }
+
+        public void setDayCounts(long[] dayCounts) {
+            this.dayCounts = dayCounts;
+        }
+    }
+
+    public Long getDailyLimit() {
+        return dailyLimit;
+    }
+
+    public void setDailyLimit(Long dailyLimit) {
+        this.dailyLimit = dailyLimit;
+    }
+
+    public long getTotalCalories() {
+        return totalCalories;
+    }
+
+    public void setTotalCalories(long totalCalories) {
+        this.totalCalories = totalCalories;
+    }
+
+    public long getMealCount() {
+        return mealCount;
+    }
+
+    public void setMealCount(long mealCount) {
+        this.mealCount = mealCount;
+    }
+
+    public long getDayCount() {
+        return dayCount;
+    }
+
+    public void setDayCount(long dayCount) {
+        this.dayCount = dayCount;
+    }
+
+    public double getAverageDailyCalories() {
+        return averageDailyCalories;
+    }
+
+    public void setAverageDailyCalories(double averageDailyCalories) {
+        this.averageDailyCalories = averageDailyCalories;
+    }
+
+    public double getAverageMealCalories() {
+        return averageMealCalories;
+    }
+
+    public void setAverageMealCalories(double averageMealCalories) {
+        this.averageMealCalories = averageMealCalories;
+    }
+
+    public Long getLowestDailyCalories() {
+        return lowestDailyCalories;
+    }
+
+    public void setLowestDailyCalories(Long lowestDailyCalories) {
+        this.lowestDailyCalories = lowestDailyCalories;
+    }
+
+    public Long getHighestDailyCalories() {
+        return highestDailyCalories;
+    }
+
+    public void setHighestDailyCalories(Long highestDailyCalories) {
+        this.highestDailyCalories = highestDailyCalories;
+    }
+
+    public long getDaysOverLimit() {
+        return daysOverLimit;
+    }
+
+    public void setDaysOverLimit(long daysOverLimit) {
+        this.daysOverLimit = daysOverLimit;
+    }
+
+    public Series getDays() {
+        return days;
+    }
+
+    public void setDays(Series days) {
+        this.days = days;
+    }
+
+    public Series getWeeks() {
+        return weeks;
+    }
+
+    public void setWeeks(Series weeks) {
+        this.weeks = weeks;
+    }
+
+    public Series getMonths() {
+        return months;
+    }
+
+    public void setMonths(Series months) {
+        this.months = months;
+    }
+}
@@ -0,0 +1,47 @@
+package calories.tracker.app.dto;
+
+/**
+ *
+ * JSON serializable DTO containing a meal description the user logged before, with the calories of its latest
+ * meal so that the client can fill them in.
+ *
+ */
+public class MealSuggestionDTO {
+
+    private String description;
+    private Long calories;
+    private int timesUsed;
+
+    public MealSuggestionDTO() {
+    }
+
+    public MealSuggestionDTO(String description, Long calories, int timesUsed) {
+        this.description = description;
+        this.calories = calories;
+        this.timesUsed = timesUsed;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public Long getCalories() {
+        return calories;
+    }
+
+    public void setCalories(Long calories) {
+        this.calories = calories;
+    }
+
+    public int getTimesUsed() {
+        return timesUsed;
+    }
+
+    public void setTimesUsed(int timesUsed) {
+        this.timesUsed = timesUsed;
+    }
+}
@@ -11,6 +11,9 @@ public class MealsDTO {
 
     private long currentPage;
     private long totalPages;
+    private boolean totalCapped;
+    private String previousCursor;
+    private String nextCursor;
     List<MealDTO> meals;
 
     public MealsDTO(long currentPage, long totalPages, List<MealDTO> meals) {
@@ -19,6 +22,14 @@ public class MealsDTO {
         this.meals = meals;
     }
 
+    public MealsDTO(long currentPage, long totalPages, boolean totalCapped, String previousCursor, String nextCursor,
+                    List<MealDTO> meals) {
+        this(currentPage, totalPages, meals);
+        this.totalCapped = totalCapped;
+        this.previousCursor = previousCursor;
+        this.nextCursor = nextCursor;
+    }
+
     public long getCurrentPage() {
         return currentPage;
     }
@@ -35,6 +46,30 @@ public class MealsDTO {
         this.totalPages = totalPages;
     }
 
+    public boolean isTotalCapped() {
+        return totalCapped;
+    }
+
+    public void setTotalCapped(boolean totalCapped) {
+        this.totalCapped = totalCapped;
+    }
+
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+
+    public void setPreviousCursor(String previousCursor) {
+        this.previousCursor = previousCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public List<MealDTO> getMeals() {
         return meals;
     }
@@ -0,0 +1,155 @@
+package calories.tracker.app.dto.serialization;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ *
+ * Reads the records of a CSV file one at a time - fields are separated by commas, and may be quoted with double
+ * quotes, in which case they can contain commas, line breaks and doubled double quotes.
+ *
+ * The fields and the records are limited in length, so that a stray opening quote does not buffer the rest of the
+ * file in memory - a record that is too long is read to its end without being kept, and rejected.
+ *
+ */
+public final class CsvRecordReader {
+
+    public static final int DEFAULT_MAX_FIELD_LENGTH = 64 * 1024;
+    public static final int DEFAULT_MAX_RECORD_LENGTH = 256 * 1024;
+
+    private final BufferedReader in;
+    private final int maxFieldLength;
+    private final int maxRecordLength;
+
+    private int nextLineNumber = 1;
+    private int lineNumber;
+
+    public CsvRecordReader(BufferedReader in) {
+        this(in, DEFAULT_MAX_FIELD_LENGTH, DEFAULT_MAX_RECORD_LENGTH);
+    }
+
+    /**
+     *
+     * @param in - the CSV file
+     * @param maxFieldLength - the maximum number of characters of a field
+     * @param maxRecordLength - the maximum number of characters of the fields of a record, all together
+     */
+    public CsvRecordReader(BufferedReader in, int maxFieldLength, int maxRecordLength) {
+        this.in = in;
+        this.maxFieldLength = maxFieldLength;
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    /**
+     *
+     * @param header - the fields of the header record
+     * @param column - the name of a column, in lower case
+     * @return - the index of the column in the header, ignoring the case and the surrounding spaces, or -1 if absent
+     */
+    public static int indexOf(List<String> header, String column) {
+        int index = -1;
+
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().toLowerCase(Locale.ENGLISH).equals(column)) {
+                index = i;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * reads the fields of the next record, that spans several lines when a quoted field contains line breaks
+     *
+     * @return - the fields of the record, or null at the end of the file
+     * @throws IOException - if the file could not be read
+     * @throws IllegalArgumentException - if a field or the record is too long, in which case the next record can still
+     * be read, or if the last field of the file is an unterminated quoted field
+     */
+    public List<String> readRecord() throws IOException {
+        int c = in.read();
+
+        if (c < 0) {
+            return null;
+        }
+
+        lineNumber = nextLineNumber;
+
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int fieldLength = 0;
+        int recordLength = 0;
+        // once too long, the rest of the record is only parsed to find its end, and nothing more is kept
+        boolean tooLong = false;
+
+        for (; c >= 0; c = in.read()) {
+            if (quoted && c == '"') {
+                in.mark(1);
+                if (in.read() != '"') {
+                    in.reset();
+                    quoted = false;
+                    continue;
+                }
+            } else if (quoted) {
+                if (c == '\n') {
+                    nextLineNumber++;
+                }
+            } else if (c == '"' && fieldLength == 0) {
+                quoted = true;
+                continue;
+            } else if (c == ',') {
+                recordLength++;
+                tooLong |= recordLength > maxRecordLength;
+                if (!tooLong) {
+                    record.add(field.toString());
+                }
+                field.setLength(0);
+                fieldLength = 0;
+                continue;
+            } else if (c == '\r') {
+                in.mark(1);
+                if (in.read() != '\n') {
+                    in.reset();
+                }
+                break;
+            } else if (c == '\n') {
+                break;
+            }
+
+            fieldLength++;
+            recordLength++;
+            tooLong |= fieldLength > maxFieldLength || recordLength > maxRecordLength;
+            if (!tooLong) {
+                field.append((char) c);
+            }
+        }
+
+        nextLineNumber++;
+
+        if (tooLong) {
+            throw new IllegalArgumentException("The record at line " + lineNumber + " is longer than " +
+                    maxRecordLength + " characters, or has a field longer than " + maxFieldLength + " characters.");
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field at line " + lineNumber + ".");
+        }
+
+        record.add(field.toString());
+
+        return record;
+    }
+
+    /**
+     *
+     * @return - the line number where the last record read starts, starting at 1
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
@@ -0,0 +1,27 @@
+package calories.tracker.app.dto.serialization;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ *
+ * custom JSON deserializer for the meal dates, read from yyyy/MM/dd in CET
+ *
+ */
+public class CustomDateDeserializer extends JsonDeserializer<Date> {
+
+    @Override
+    public Date deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+        try {
+            return MealDateTimeFormat.parseDate(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+        } catch (IllegalArgumentException e) {
+            throw ctxt.weirdStringException(jp.getText(), Date.class, e.getMessage());
+        }
+    }
+
+}
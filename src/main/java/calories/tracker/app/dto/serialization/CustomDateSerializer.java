@@ -0,0 +1,29 @@
+package calories.tracker.app.dto.serialization;
+
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ *
+ * custom JSON serializer for the meal dates, written as yyyy/MM/dd in CET
+ *
+ */
+public class CustomDateSerializer extends JsonSerializer<Date> {
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MealDateTimeFormat.DATE_LENGTH]);
+
+    @Override
+    public void serialize(Date value, JsonGenerator jgen, SerializerProvider provider)
+            throws IOException, JsonProcessingException {
+
+        char[] buffer = BUFFER.get();
+        jgen.writeString(buffer, 0, MealDateTimeFormat.formatDate(value, buffer));
+    }
+
+}
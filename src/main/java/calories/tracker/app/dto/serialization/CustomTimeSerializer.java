@@ -8,21 +8,22 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 
 import java.io.IOException;
 import java.sql.Time;
-import java.text.SimpleDateFormat;
 
 /**
  *
- * custom JSON deserializer for java.sql.Time type
+ * custom JSON serializer for java.sql.Time type, written as HH:mm
  *
  */
 public class CustomTimeSerializer extends JsonSerializer<Time> {
 
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MealDateTimeFormat.TIME_LENGTH]);
+
     @Override
     public void serialize(Time value, JsonGenerator jgen, SerializerProvider provider)
             throws IOException, JsonProcessingException {
 
-        SimpleDateFormat formatter = new SimpleDateFormat("HH:mm");
-        jgen.writeString(formatter.format(value));
+        char[] buffer = BUFFER.get();
+        jgen.writeString(buffer, 0, MealDateTimeFormat.formatTime(value, buffer));
     }
 
 }
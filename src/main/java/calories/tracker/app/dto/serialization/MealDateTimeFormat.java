@@ -0,0 +1,193 @@
+package calories.tracker.app.dto.serialization;
+
+
+import java.sql.Time;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ *
+ * The formats of the meal dates (yyyy/MM/dd, in the CET time zone) and times (HH:mm) in the JSON replies and the
+ * exported files.
+ *
+ * The fixed formats are written and parsed by hand through java.time, instead of creating a SimpleDateFormat for
+ * each value - no formatter is created or shared, and the dates and times are written to a caller provided buffer.
+ *
+ */
+public final class MealDateTimeFormat {
+
+    /**
+     * the time zone in which the meal dates are written and read
+     */
+    public static final ZoneId DATE_ZONE = ZoneId.of("CET");
+
+    public static final int DATE_LENGTH = 10;
+    public static final int TIME_LENGTH = 5;
+
+    private MealDateTimeFormat() {
+    }
+
+    /**
+     *
+     * @param date - a meal date
+     * @param buffer - receives the date as yyyy/MM/dd, must have room for DATE_LENGTH characters
+     * @return - the number of characters written
+     */
+    public static int formatDate(Date date, char[] buffer) {
+        LocalDate localDate = Instant.ofEpochMilli(date.getTime()).atZone(DATE_ZONE).toLocalDate();
+        int year = localDate.getYear();
+
+        buffer[0] = digit(year / 1000 % 10);
+        buffer[1] = digit(year / 100 % 10);
+        buffer[2] = digit(year / 10 % 10);
+        buffer[3] = digit(year % 10);
+        buffer[4] = '/';
+        writeTwoDigits(localDate.getMonthValue(), buffer, 5);
+        buffer[7] = '/';
+        writeTwoDigits(localDate.getDayOfMonth(), buffer, 8);
+
+        return DATE_LENGTH;
+    }
+
+    public static String formatDate(Date date) {
+        char[] buffer = new char[DATE_LENGTH];
+        return new String(buffer, 0, formatDate(date, buffer));
+    }
+
+    /**
+     *
+     * @param time - a meal time
+     * @param buffer - receives the time as HH:mm, must have room for TIME_LENGTH characters
+     * @return - the number of characters written
+     */
+    public static int formatTime(Time time, char[] buffer) {
+        LocalTime localTime = time.toLocalTime();
+
+        writeTwoDigits(localTime.getHour(), buffer, 0);
+        buffer[2] = ':';
+        writeTwoDigits(localTime.getMinute(), buffer, 3);
+
+        return TIME_LENGTH;
+    }
+
+    public static String formatTime(Time time) {
+        char[] buffer = new char[TIME_LENGTH];
+        return new String(buffer, 0, formatTime(time, buffer));
+    }
+
+    /**
+     *
+     * @param text - the characters of a date as yyyy/MM/dd, month and day may have a single digit
+     * @param offset - the index of the first character of the date
+     * @param length - the number of characters of the date
+     * @return - the start of the day in CET
+     * @throws IllegalArgumentException - if the text is not a valid date
+     */
+    public static Date parseDate(char[] text, int offset, int length) {
+        int end = offset + length;
+        int yearEnd = indexOf(text, offset, end, '/');
+        int monthEnd = yearEnd < 0 ? -1 : indexOf(text, yearEnd + 1, end, '/');
+
+        if (monthEnd < 0 || yearEnd - offset != 4) {
+            throw invalid("date", text, offset, length);
+        }
+
+        int year = parseNumber(text, offset, yearEnd, 4);
+        int month = parseNumber(text, yearEnd + 1, monthEnd, 2);
+        int day = parseNumber(text, monthEnd + 1, end, 2);
+
+        if (year < 0 || month < 0 || day < 0) {
+            throw invalid("date", text, offset, length);
+        }
+
+        try {
+            return new Date(LocalDate.of(year, month, day).atStartOfDay(DATE_ZONE).toInstant().toEpochMilli());
+        } catch (DateTimeException e) {
+            throw invalid("date", text, offset, length);
+        }
+    }
+
+    public static Date parseDate(String text) {
+        return parseDate(text.toCharArray(), 0, text.length());
+    }
+
+    /**
+     *
+     * @param text - the characters of a time as HH:mm, hours may have a single digit
+     * @param offset - the index of the first character of the time
+     * @param length - the number of characters of the time
+     * @return - the time of the day
+     * @throws IllegalArgumentException - if the text is not a valid time
+     */
+    public static Time parseTime(char[] text, int offset, int length) {
+        int end = offset + length;
+        int hourEnd = indexOf(text, offset, end, ':');
+
+        if (hourEnd < 0 || end - hourEnd != 3) {
+            throw invalid("time", text, offset, length);
+        }
+
+        int hour = parseNumber(text, offset, hourEnd, 2);
+        int minute = parseNumber(text, hourEnd + 1, end, 2);
+
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            throw invalid("time", text, offset, length);
+        }
+
+        return Time.valueOf(LocalTime.of(hour, minute));
+    }
+
+    public static Time parseTime(String text) {
+        return parseTime(text.toCharArray(), 0, text.length());
+    }
+
+    private static char digit(int value) {
+        return (char) ('0' + value);
+    }
+
+    private static void writeTwoDigits(int value, char[] buffer, int offset) {
+        buffer[offset] = digit(value / 10);
+        buffer[offset + 1] = digit(value % 10);
+    }
+
+    private static int indexOf(char[] text, int from, int end, char c) {
+        for (int i = from; i < end; i++) {
+            if (text[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return - the number made of the digits between from and end, or -1 if there are none, more than
+     * maxDigits or something else than digits
+     */
+    private static int parseNumber(char[] text, int from, int end, int maxDigits) {
+        if (end <= from || end - from > maxDigits) {
+            return -1;
+        }
+
+        int value = 0;
+
+        for (int i = from; i < end; i++) {
+            char c = text[i];
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    private static IllegalArgumentException invalid(String field, char[] text, int offset, int length) {
+        return new IllegalArgumentException("Invalid " + field + ": " + new String(text, offset, length));
+    }
+}
@@ -0,0 +1,237 @@
+package calories.tracker.app.dto.serialization;
+
+
+import calories.tracker.app.dto.MealDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ *
+ * The formats of the meals export and import - one meal per line, either as a JSON object (same fields and
+ * formats as the search replies) or as a CSV record.
+ *
+ * Imported files are read one record at a time, so that files of any size can be read in constant memory.
+ *
+ */
+public enum MealFileFormat {
+
+    NDJSON("application/x-ndjson", "ndjson") {
+
+        private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new AfterburnerModule());
+        private final ObjectWriter jsonWriter = objectMapper.writerWithType(MealDTO.class);
+        private final ObjectReader jsonReader = objectMapper.reader(MealDTO.class);
+
+        @Override
+        public void writeHeader(Writer writer) {
+        }
+
+        @Override
+        public void write(Writer writer, MealDTO meal) throws IOException {
+            writer.write(jsonWriter.writeValueAsString(meal));
+            writer.write('\n');
+        }
+
+        @Override
+        public MealReader reader(BufferedReader in) {
+            return new MealReader() {
+
+                private int lineNumber;
+
+                @Override
+                public MealDTO next() throws IOException {
+                    String line;
+
+                    do {
+                        line = in.readLine();
+                        lineNumber++;
+                    } while (line != null && line.trim().isEmpty());
+
+                    if (line == null) {
+                        return null;
+                    }
+
+                    try {
+                        return jsonReader.readValue(line);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+                    }
+                }
+
+                @Override
+                public int getLineNumber() {
+                    return lineNumber;
+                }
+            };
+        }
+    },
+
+    CSV("text/csv", "csv") {
+
+        @Override
+        public void writeHeader(Writer writer) throws IOException {
+            writer.write("id,date,time,description,calories\r\n");
+        }
+
+        @Override
+        public void write(Writer writer, MealDTO meal) throws IOException {
+            writer.write(String.valueOf(meal.getId()));
+            writer.write(',');
+            writer.write(MealDateTimeFormat.formatDate(meal.getDate()));
+            writer.write(',');
+            writer.write(MealDateTimeFormat.formatTime(meal.getTime()));
+            writer.write(',');
+            writer.write(escape(meal.getDescription()));
+            writer.write(',');
+            writer.write(String.valueOf(meal.getCalories()));
+            writer.write("\r\n");
+        }
+
+        private String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        @Override
+        public MealReader reader(BufferedReader in) throws IOException {
+            return new CsvMealReader(in);
+        }
+    };
+
+    private final String contentType;
+    private final String fileExtension;
+
+    MealFileFormat(String contentType, String fileExtension) {
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public abstract void writeHeader(Writer writer) throws IOException;
+
+    public abstract void write(Writer writer, MealDTO meal) throws IOException;
+
+    /**
+     *
+     * @param in - the file to read, positioned at its beginning
+     * @return - a reader of the meals of the file
+     * @throws IOException - if the file could not be read
+     * @throws IllegalArgumentException - if the file cannot be read at all in this format, e.g. a bad CSV header
+     */
+    public abstract MealReader reader(BufferedReader in) throws IOException;
+
+    /**
+     *
+     * Reads the meals of a file one at a time. A record that cannot be read is reported with an
+     * IllegalArgumentException, and the reader can still be used to read the following records.
+     *
+     */
+    public interface MealReader {
+
+        /**
+         *
+         * @return - the next meal of the file, or null at the end of the file - the id of the meal is not read
+         * @throws IOException - if the file could not be read
+         * @throws IllegalArgumentException - if the record is not a valid meal
+         */
+        MealDTO next() throws IOException;
+
+        /**
+         *
+         * @return - the line number where the last record read starts, starting at 1
+         */
+        int getLineNumber();
+    }
+
+    /**
+     * reads CSV files with the header of the export - the columns can be in any order, and the id column is
+     * optional, as the imported meals are always new meals.
+     */
+    private static class CsvMealReader implements MealReader {
+
+        private static final String[] COLUMNS = {"date", "time", "description", "calories"};
+
+        private final CsvRecordReader in;
+        private final int[] columnIndexes = new int[COLUMNS.length];
+
+        private CsvMealReader(BufferedReader in) throws IOException {
+            this.in = new CsvRecordReader(in);
+
+            List<String> header = this.in.readRecord();
+
+            if (header == null) {
+                throw new IllegalArgumentException("The CSV file is empty, a header is needed.");
+            }
+
+            for (int i = 0; i < COLUMNS.length; i++) {
+                columnIndexes[i] = CsvRecordReader.indexOf(header, COLUMNS[i]);
+
+                if (columnIndexes[i] < 0) {
+                    throw new IllegalArgumentException("The CSV header has no " + COLUMNS[i] + " column.");
+                }
+            }
+        }
+
+        @Override
+        public MealDTO next() throws IOException {
+            List<String> record;
+
+            do {
+                record = in.readRecord();
+            } while (record != null && record.size() == 1 && record.get(0).trim().isEmpty());
+
+            if (record == null) {
+                return null;
+            }
+
+            String date = column(record, 0);
+            String time = column(record, 1);
+            String calories = column(record, 3);
+
+            MealDTO meal = new MealDTO();
+            meal.setDate(MealDateTimeFormat.parseDate(date));
+            meal.setTime(MealDateTimeFormat.parseTime(time));
+
+            try {
+                meal.setCalories(Long.valueOf(calories.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid calories: " + calories);
+            }
+
+            meal.setDescription(column(record, 2));
+
+            return meal;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return in.getLineNumber();
+        }
+
+        private String column(List<String> record, int column) {
+            int index = columnIndexes[column];
+
+            if (index >= record.size()) {
+                throw new IllegalArgumentException("Missing " + COLUMNS[column] + " column.");
+            }
+
+            return record.get(index);
+        }
+    }
+}
@@ -11,7 +11,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 public class TimeDeserializationException extends JsonProcessingException {
 
     protected TimeDeserializationException(Throwable rootCause) {
-        super(rootCause);
+        super(rootCause.getMessage(), rootCause);
     }
 
 }
@@ -1,8 +1,10 @@
 package calories.tracker.app.init;
 
 
+import calories.tracker.app.model.Firm;
 import calories.tracker.app.model.Meal;
 import calories.tracker.app.model.User;
+import calories.tracker.app.services.DailyCaloriesService;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
@@ -26,6 +28,9 @@ public class TestDataInitializer {
     @Autowired
     private EntityManagerFactory entityManagerFactory;
 
+    @Autowired
+    private DailyCaloriesService dailyCaloriesService;
+
 
     public void init() throws Exception {
 
@@ -55,6 +60,16 @@ public class TestDataInitializer {
         session.persist(new Meal(user, new Date(115, 0, 8), new Time(12, 0, 0), "8 -  Broccoli Rabe", 2000L));
         session.persist(new Meal(user, new Date(115, 0, 8), new Time(19, 0, 0), "8 -  Moules Frites", 1000L));
 
+        session.persist(new Firm(user, "Alfa Stav s.r.o.", "Hlavna 1, Bratislava", "SK3111000000001234567890", "35700001", "2020000001", "SK2020000001"));
+        session.persist(new Firm(user, "alfa potraviny a.s.", "Dlha 12, Kosice", "SK3111000000001234567891", "35700002", "2020000002", "SK2020000002"));
+        session.persist(new Firm(user, "Alfanet s.r.o.", "Kratka 3, Zilina", "SK3111000000001234567892", "35700003", "2020000003", "SK2020000003"));
+        session.persist(new Firm(user, "Beta Trans s.r.o.", "Nova 7, Nitra", "SK3111000000001234567893", "35700004", "2020000004", "SK2020000004"));
+        session.persist(new Firm(user, "Gama 100% Bio s.r.o.", "Stara 9, Trnava", "SK3111000000001234567894", "35700005", "2020000005", "SK2020000005"));
+        session.persist(new Firm(user, "Pekaren Gama v.o.s.", "Polna 4, Presov", "SK3111000000001234567895", "35700006", "2020000006", "SK2020000006"));
+
         transaction.commit();
+
+        // the meals above are inserted directly, so their daily totals are computed afterwards
+        dailyCaloriesService.rebuildAll();
     }
 }
@@ -1,6 +1,10 @@
 package calories.tracker.app.model;
 
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
 import javax.persistence.*;
 import java.util.UUID;
 
@@ -12,8 +16,19 @@ import java.util.UUID;
 @MappedSuperclass
 public class AbstractEntity {
 
+    public static final int ID_BLOCK_SIZE = 50;
+
+    /**
+     * each entity has its own sequence (User_SEQ, Meal_SEQ, ...), and ids are allocated in blocks, so that
+     * inserting many entities costs one sequence call per block instead of one per entity.
+     */
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "pooled")
+    @GenericGenerator(name = "pooled", strategy = "enhanced-sequence", parameters = {
+            @Parameter(name = SequenceStyleGenerator.CONFIG_PREFER_SEQUENCE_PER_ENTITY, value = "true"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "" + AbstractEntity.ID_BLOCK_SIZE),
+            @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled")
+    })
     private Long id;
 
     @Version
@@ -0,0 +1,93 @@
+package calories.tracker.app.model;
+
+
+import org.apache.commons.lang3.time.DateUtils;
+
+import javax.persistence.Entity;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ *
+ * The DailyCalories JPA entity - the total calories and number of meals of a user on a given day.
+ *
+ * The totals are maintained along with the meals, so that reading them does not need to sum up the meals.
+ *
+ */
+@Entity
+@Table(name = "DAILY_CALORIES", uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "day"}))
+@NamedQueries({
+        @NamedQuery(
+                name = DailyCalories.FIND_TODAYS_CALORIES,
+                query = "select d.calories from DailyCalories d where d.user.username = :username and d.day = CURRENT_DATE"
+        ),
+        @NamedQuery(
+                name = DailyCalories.FIND_BY_USER,
+                query = "select d from DailyCalories d where d.user = :user"
+        )
+})
+public class DailyCalories extends AbstractEntity {
+
+    public static final String FIND_TODAYS_CALORIES = "dailyCalories.todaysCalories";
+    public static final String FIND_BY_USER = "dailyCalories.findByUser";
+
+    @ManyToOne
+    private User user;
+
+    @Temporal(TemporalType.DATE)
+    private Date day;
+
+    private Long calories;
+    private Long mealCount;
+
+    public DailyCalories() {
+
+    }
+
+    public DailyCalories(User user, Date day, Long calories, Long mealCount) {
+        this.user = user;
+        this.day = day;
+        this.calories = calories;
+        this.mealCount = mealCount;
+    }
+
+    /**
+     *
+     * @param date - the date of a meal
+     * @return - the day the meal counts for, as stored in the totals
+     */
+    public static Date dayOf(Date date) {
+        return DateUtils.truncate(date, Calendar.DATE);
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public Date getDay() {
+        return day;
+    }
+
+    public Long getCalories() {
+        return calories;
+    }
+
+    public void setCalories(Long calories) {
+        this.calories = calories;
+    }
+
+    public Long getMealCount() {
+        return mealCount;
+    }
+
+    public void setMealCount(Long mealCount) {
+        this.mealCount = mealCount;
+    }
+}
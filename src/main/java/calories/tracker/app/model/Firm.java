@@ -1,6 +1,7 @@
 package calories.tracker.app.model;
 
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import java.sql.Time;
@@ -15,7 +16,7 @@ import java.util.Date;
 @Table(name = "FIRMS")
 public class Firm extends AbstractEntity {
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User user;
     
     private String name;
@@ -0,0 +1,77 @@
+package calories.tracker.app.model;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ *
+ * Opaque position inside a firm search, used for keyset (seek) pagination.
+ *
+ * It encodes the lower cased name and the id of the last firm seen, in the same lower(name) asc, id asc order used
+ * by the firm search - the next page is read right after it.
+ *
+ */
+public class FirmCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final String nameKey;
+    private final Long id;
+
+    public FirmCursor(String nameKey, Long id) {
+        this.nameKey = nameKey;
+        this.id = id;
+    }
+
+    /**
+     * cursor pointing to the page right after the firm at the given position
+     *
+     * @param nameKey - the lower cased name of the firm, as computed by the database
+     * @param id - the id of the firm
+     */
+    public static FirmCursor after(String nameKey, Long id) {
+        return new FirmCursor(nameKey, id);
+    }
+
+    /**
+     *
+     * @return - the cursor as an url-safe string, to be sent to the client
+     */
+    public String encode() {
+        // the name goes last, as it may contain the separator
+        String value = id + SEPARATOR + (nameKey != null ? nameKey : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     *
+     * parses a cursor previously produced by {@link #encode()}
+     *
+     * @param encoded - the cursor as received from the client
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static FirmCursor decode(String encoded) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            String[] parts = value.split(SEPARATOR, 2);
+
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor: " + encoded);
+            }
+
+            return new FirmCursor(parts[1], Long.valueOf(parts[0]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+        }
+    }
+
+    public String getNameKey() {
+        return nameKey;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -0,0 +1,34 @@
+package calories.tracker.app.model;
+
+
+import calories.tracker.app.dao.LikePatterns;
+
+/**
+ *
+ * How the name given to a firm search is matched against the firm names - the match is case insensitive.
+ *
+ */
+public enum FirmNameMatch {
+
+    /**
+     * the firm name starts with the given name
+     */
+    PREFIX,
+
+    /**
+     * the firm name contains the given name anywhere - served by the trigram index of the names, so the given
+     * name must have at least MIN_CONTAINS_LENGTH characters
+     */
+    CONTAINS;
+
+    public static final int MIN_CONTAINS_LENGTH = 3;
+
+    /**
+     *
+     * @param name - the name to search for, as entered by the user
+     * @return - the pattern matching the lower cased firm names, @see LikePatterns
+     */
+    public String pattern(String name) {
+        return this == CONTAINS ? LikePatterns.containing(name) : LikePatterns.startingWith(name);
+    }
+}
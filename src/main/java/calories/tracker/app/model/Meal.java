@@ -2,6 +2,7 @@ package calories.tracker.app.model;
 
 
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import java.sql.Time;
@@ -16,7 +17,7 @@ import java.util.Date;
 @Table(name = "MEALS")
 public class Meal extends AbstractEntity {
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User user;
 
     private Date date;
@@ -0,0 +1,115 @@
+package calories.tracker.app.model;
+
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ *
+ * Opaque position inside a meal search, used for keyset (seek) pagination.
+ *
+ * It encodes the (date, time, id) of the last (or first) meal seen, plus the direction in which the next page
+ * should be read, in the same date desc, time asc, id asc order used by the meal search.
+ *
+ */
+public class MealCursor {
+
+    public enum Direction {
+        NEXT, PREVIOUS
+    }
+
+    private static final String SEPARATOR = ":";
+
+    private final Direction direction;
+    private final Date date;
+    private final Time time;
+    private final Long id;
+
+    public MealCursor(Direction direction, Date date, Time time, Long id) {
+        this.direction = direction;
+        this.date = date;
+        this.time = time;
+        this.id = id;
+    }
+
+    /**
+     * cursor pointing to the page right after the given meal
+     */
+    public static MealCursor after(Meal meal) {
+        return after(meal.getDate(), meal.getTime(), meal.getId());
+    }
+
+    /**
+     * cursor pointing to the page right after the meal at the given position
+     */
+    public static MealCursor after(Date date, Time time, Long id) {
+        return new MealCursor(Direction.NEXT, date, time, id);
+    }
+
+    /**
+     * cursor pointing to the page right before the given meal
+     */
+    public static MealCursor before(Meal meal) {
+        return before(meal.getDate(), meal.getTime(), meal.getId());
+    }
+
+    /**
+     * cursor pointing to the page right before the meal at the given position
+     */
+    public static MealCursor before(Date date, Time time, Long id) {
+        return new MealCursor(Direction.PREVIOUS, date, time, id);
+    }
+
+    /**
+     *
+     * @return - the cursor as an url-safe string, to be sent to the client
+     */
+    public String encode() {
+        String value = direction.name().charAt(0) + SEPARATOR + date.getTime() + SEPARATOR + time.getTime() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     *
+     * parses a cursor previously produced by {@link #encode()}
+     *
+     * @param encoded - the cursor as received from the client
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is not valid
+     */
+    public static MealCursor decode(String encoded) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.US_ASCII);
+            String[] parts = value.split(SEPARATOR);
+
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid cursor: " + encoded);
+            }
+
+            Direction direction = "P".equals(parts[0]) ? Direction.PREVIOUS : Direction.NEXT;
+
+            return new MealCursor(direction, new Date(Long.parseLong(parts[1])), new Time(Long.parseLong(parts[2])),
+                    Long.valueOf(parts[3]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded, e);
+        }
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Time getTime() {
+        return time;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
@@ -7,23 +7,51 @@ import java.util.List;
  * Search result of a search method, meant to be used as return type in the service layer for search methods,
  * when both the result and the total results count are needed.
  *
+ * The results count can be capped, in which case it is only a lower bound of the real count.
+ *
+ * Searches that support keyset pagination also return the encoded cursors of the previous and next pages,
+ * or null if there is no such page.
+ *
  * @param <T>
  */
 public class SearchResult<T> {
 
     private long resultsCount;
+    private boolean resultsCountCapped;
     private List<T> result;
+    private String previousCursor;
+    private String nextCursor;
 
     public SearchResult(long resultsCount, List<T> result) {
         this.resultsCount = resultsCount;
         this.result = result;
     }
 
+    public SearchResult(long resultsCount, boolean resultsCountCapped, List<T> result,
+                        String previousCursor, String nextCursor) {
+        this(resultsCount, result);
+        this.resultsCountCapped = resultsCountCapped;
+        this.previousCursor = previousCursor;
+        this.nextCursor = nextCursor;
+    }
+
     public long getResultsCount() {
         return resultsCount;
     }
 
+    public boolean isResultsCountCapped() {
+        return resultsCountCapped;
+    }
+
     public List<T> getResult() {
         return result;
     }
+
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
@@ -1,6 +1,12 @@
 package calories.tracker.app.model;
 
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
@@ -10,24 +16,34 @@ import javax.persistence.Table;
  *
  * The User JPA entity.
  *
+ * Users are kept in the second level cache, along with the resolution of their username (the natural id) to
+ * their id - see ehcache.xml for the cache sizes.
+ *
  */
 @Entity
 @Table(name = "USERS")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = User.CACHE_REGION)
+@NaturalIdCache(region = User.NATURAL_ID_CACHE_REGION)
 @NamedQueries({
         @NamedQuery(
                 name = User.FIND_BY_USERNAME,
                 query = "select u from User u where username = :username"
         ),
         @NamedQuery(
-                name = User.COUNT_TODAYS_CALORIES,
-                query = "select sum(m.calories) from Meal m where m.user.username = :username and m.date = CURRENT_DATE"
+                name = User.FIND_ALL_USERNAMES,
+                query = "select u.username from User u order by u.username"
         )
 })
 public class User extends AbstractEntity {
 
     public static final String FIND_BY_USERNAME = "user.findByUserName";
-    public static final String COUNT_TODAYS_CALORIES = "user.todaysCalories";
+    public static final String FIND_ALL_USERNAMES = "user.findAllUsernames";
+
+    public static final String CACHE_REGION = "users";
+    public static final String NATURAL_ID_CACHE_REGION = "users-by-username";
 
+    @NaturalId
     private String username;
     private String passwordDigest;
     private String email;
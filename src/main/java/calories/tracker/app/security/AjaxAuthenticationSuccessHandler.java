@@ -4,6 +4,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -16,20 +17,34 @@ import java.io.IOException;
  * Detects if its a ajax login request, and if so sends a customized response in the body, otherwise defaults
  * to the existing behaviour for none-ajax login attempts.
  *
+ * In the stateless authentication mode, a signed token is also issued on success - it is set in the AUTH-TOKEN
+ * cookie for the browser, and in the X-Auth-Token header for other clients.
+ *
  */
 public class AjaxAuthenticationSuccessHandler implements AuthenticationSuccessHandler {
 
     private AuthenticationSuccessHandler defaultHandler;
 
+    private AuthTokenService authTokenService;
+
     public AjaxAuthenticationSuccessHandler(AuthenticationSuccessHandler defaultHandler) {
         this.defaultHandler = defaultHandler;
     }
 
+    public AjaxAuthenticationSuccessHandler(AuthenticationSuccessHandler defaultHandler, AuthTokenService authTokenService) {
+        this(defaultHandler);
+        this.authTokenService = authTokenService;
+    }
+
     @Override
     public void onAuthenticationSuccess(HttpServletRequest request,
                                         HttpServletResponse response,
                                         Authentication authentication) throws IOException, ServletException {
 
+        if (authTokenService != null) {
+            issueToken(request, response, authentication);
+        }
+
         if ("true".equals(request.getHeader("X-Login-Ajax-call"))) {
             response.getWriter().print("ok");
             response.getWriter().flush();
@@ -39,4 +54,17 @@ public class AjaxAuthenticationSuccessHandler implements AuthenticationSuccessHa
         }
 
     }
+
+    private void issueToken(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        String token = authTokenService.issueToken(authentication.getName(), authentication.getAuthorities());
+
+        response.setHeader(TokenAuthenticationFilter.TOKEN_HEADER, token);
+
+        Cookie cookie = new Cookie(TokenAuthenticationFilter.TOKEN_COOKIE, token);
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setMaxAge((int) authTokenService.getTimeToLiveSeconds());
+        response.addCookie(cookie);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+package calories.tracker.app.security;
+
+
+import org.apache.log4j.Logger;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Issues and validates the signed authentication tokens used in the stateless authentication mode.
+ *
+ * A token is [base64 username].[base64 authorities].[issue epoch millis].[expiry epoch seconds].[base64 HMAC-SHA256
+ * of the first four parts], so it can be validated on any node sharing the same secret, without a session, a
+ * password match or a database lookup.
+ *
+ * When the password of a user changes, revokeTokens must be called on every node: the tokens of the user issued
+ * until then are rejected by this node from then on. The revocations are only kept for the token lifetime, after
+ * which the revoked tokens have expired anyway.
+ *
+ * The secret is set with -DauthToken.secret and must be the same on all nodes - if absent, a random secret is
+ * generated, and tokens are only valid on this node until it restarts. The token lifetime is set in minutes with
+ * -DauthToken.ttlMinutes.
+ *
+ */
+@Component
+public class AuthTokenService {
+
+    private static final Logger LOGGER = Logger.getLogger(AuthTokenService.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String SEPARATOR = ".";
+    private static final int PARTS = 5;
+
+    private final SecretKeySpec key;
+    private final long timeToLiveSeconds;
+
+    /**
+     * the time of the last revocation of each user, in epoch millis
+     */
+    private final Map<String, Long> revocations = new ConcurrentHashMap<>();
+
+    public AuthTokenService() {
+        this(System.getProperty("authToken.secret"), TimeUnit.MINUTES.toSeconds(Long.getLong("authToken.ttlMinutes", 480L)));
+    }
+
+    public AuthTokenService(String secret, long timeToLiveSeconds) {
+        byte[] secretBytes;
+
+        if (secret != null) {
+            secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            LOGGER.warn("No authToken.secret set, authentication tokens will only be valid on this node.");
+            secretBytes = new byte[32];
+            new SecureRandom().nextBytes(secretBytes);
+        }
+
+        this.key = new SecretKeySpec(secretBytes, HMAC_ALGORITHM);
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    /**
+     *
+     * @param username - the authenticated username
+     * @param authorities - the authorities granted to the user at login
+     * @return a new signed token for the user
+     */
+    public String issueToken(String username, Collection<? extends GrantedAuthority> authorities) {
+        long issuedAt = System.currentTimeMillis();
+        String payload = encode(username) + SEPARATOR
+                + encode(String.join(",", AuthorityUtils.authorityListToSet(authorities))) + SEPARATOR
+                + issuedAt + SEPARATOR + (issuedAt / 1000 + timeToLiveSeconds);
+        return payload + SEPARATOR + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+    }
+
+    /**
+     *
+     * @param token - a token sent by a client
+     * @return the authentication of the user the token was issued to, with the authorities signed in the token, or
+     * null if the token is malformed, tampered with, expired or revoked
+     */
+    public Authentication authenticate(String token) {
+        String[] parts = token.split("\\.", -1);
+
+        if (parts.length != PARTS) {
+            return null;
+        }
+
+        try {
+            String payload = token.substring(0, token.lastIndexOf(SEPARATOR));
+            byte[] signature = Base64.getUrlDecoder().decode(parts[4]);
+
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                return null;
+            }
+
+            String username = decode(parts[0]);
+            long issuedAt = Long.parseLong(parts[2]);
+            long expiresAt = Long.parseLong(parts[3]);
+            Long revokedAt = revocations.get(username);
+
+            if (expiresAt < System.currentTimeMillis() / 1000 || (revokedAt != null && issuedAt <= revokedAt)) {
+                return null;
+            }
+
+            List<GrantedAuthority> authorities = AuthorityUtils.commaSeparatedStringToAuthorityList(decode(parts[1]));
+
+            return new UsernamePasswordAuthenticationToken(username, null, authorities);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     *
+     * rejects on this node all the tokens issued to a user so far, to be called when its password changes
+     *
+     * @param username - the user whose tokens are revoked
+     */
+    public void revokeTokens(String username) {
+        long now = System.currentTimeMillis();
+        long expired = now - TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+
+        // the tokens issued before a revocation older than the lifetime have expired anyway
+        revocations.values().removeIf((revokedAt) -> revokedAt < expired);
+        revocations.put(username, now);
+    }
+
+    public long getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign the authentication token", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package calories.tracker.app.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ *
+ * Database authentication provider that skips the password encoder match for credentials that were successfully
+ * verified recently, @see VerifiedCredentialCache.
+ *
+ * Failed matches are never cached, so wrong passwords always go through the password encoder.
+ *
+ */
+public class CachingDaoAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final VerifiedCredentialCache credentialCache;
+
+    public CachingDaoAuthenticationProvider(VerifiedCredentialCache credentialCache) {
+        this.credentialCache = credentialCache;
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                  UsernamePasswordAuthenticationToken authentication)
+            throws AuthenticationException {
+
+        Object credentials = authentication.getCredentials();
+
+        if (credentials != null && credentialCache.isVerified(userDetails.getUsername(), userDetails.getPassword(),
+                credentials.toString())) {
+            return;
+        }
+
+        super.additionalAuthenticationChecks(userDetails, authentication);
+
+        credentialCache.verified(userDetails.getUsername(), userDetails.getPassword(), credentials.toString());
+    }
+}
@@ -0,0 +1,61 @@
+package calories.tracker.app.security;
+
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.UUID;
+
+/**
+ *
+ * CSRF token repository that keeps the token in a cookie instead of the HTTP session, for the stateless
+ * authentication mode.
+ *
+ * The token is still sent to the frontend in the X-CSRF-TOKEN response header, and must be sent back in the same
+ * request header - a cross-site request carries the cookie but cannot read the header, so it does not match.
+ *
+ */
+public class CookieCsrfTokenRepository implements CsrfTokenRepository {
+
+    private static final String CSRF_COOKIE = "CSRF-TOKEN";
+    private static final String CSRF_HEADER = "X-CSRF-TOKEN";
+    private static final String CSRF_PARAMETER = "_csrf";
+
+    @Override
+    public CsrfToken generateToken(HttpServletRequest request) {
+        return new DefaultCsrfToken(CSRF_HEADER, CSRF_PARAMETER, UUID.randomUUID().toString());
+    }
+
+    @Override
+    public void saveToken(CsrfToken token, HttpServletRequest request, HttpServletResponse response) {
+        Cookie cookie = new Cookie(CSRF_COOKIE, token != null ? token.getToken() : "");
+        cookie.setPath(cookiePath(request));
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setMaxAge(token != null ? -1 : 0);
+        response.addCookie(cookie);
+    }
+
+    @Override
+    public CsrfToken loadToken(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return null;
+        }
+
+        for (Cookie cookie : request.getCookies()) {
+            if (CSRF_COOKIE.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return new DefaultCsrfToken(CSRF_HEADER, CSRF_PARAMETER, cookie.getValue());
+            }
+        }
+
+        return null;
+    }
+
+    private String cookiePath(HttpServletRequest request) {
+        String contextPath = request.getContextPath();
+        return contextPath.isEmpty() ? "/" : contextPath;
+    }
+}
@@ -40,7 +40,7 @@ public class SecurityUserDetailsService implements UserDetailsService {
         List<GrantedAuthority> authorities = new ArrayList<>();
         authorities.add(new SimpleGrantedAuthority("ROLE_USER"));
 
-        LOGGER.info("Found user in database: " + user);
+        LOGGER.debug("Found user: " + user);
 
         return new org.springframework.security.core.userdetails.User(username, user.getPasswordDigest(), authorities);
     }
@@ -0,0 +1,67 @@
+package calories.tracker.app.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ *
+ * Authenticates requests carrying a signed token, @see AuthTokenService.
+ *
+ * Browsers send the token back in the AUTH-TOKEN cookie set at login, other clients can send it in the
+ * X-Auth-Token header instead. Requests without a valid token continue unauthenticated.
+ *
+ * The user and its authorities are read from the signed token, so no user is loaded on each request.
+ *
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    public static final String TOKEN_HEADER = "X-Auth-Token";
+    public static final String TOKEN_COOKIE = "AUTH-TOKEN";
+
+    private final AuthTokenService authTokenService;
+
+    public TokenAuthenticationFilter(AuthTokenService authTokenService) {
+        this.authTokenService = authTokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String token = readToken(request);
+
+        if (token != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            Authentication authentication = authTokenService.authenticate(token);
+
+            if (authentication != null) {
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private String readToken(HttpServletRequest request) {
+        String token = request.getHeader(TOKEN_HEADER);
+
+        if (token != null || request.getCookies() == null) {
+            return token;
+        }
+
+        for (Cookie cookie : request.getCookies()) {
+            if (TOKEN_COOKIE.equals(cookie.getName())) {
+                return cookie.getValue();
+            }
+        }
+
+        return null;
+    }
+}
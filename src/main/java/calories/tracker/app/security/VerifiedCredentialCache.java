@@ -0,0 +1,101 @@
+package calories.tracker.app.security;
+
+
+import calories.tracker.app.cache.BoundedCache;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Remembers the credentials that were recently verified against a password digest, so that clients that send
+ * their credentials on every request (HTTP Basic) do not pay for a BCrypt match each time.
+ *
+ * Only a keyed fingerprint of the username, password digest and plain text password is kept, never the password
+ * itself. As the digest is part of the fingerprint, a changed password digest no longer matches the cached entry.
+ *
+ * The cache size and time to live can be set with -DcredentialCache.maxSize and -DcredentialCache.ttlSeconds.
+ *
+ */
+@Component
+public class VerifiedCredentialCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final int MAX_SIZE = Integer.getInteger("credentialCache.maxSize", 10000);
+    private static final long TTL_SECONDS = Long.getLong("credentialCache.ttlSeconds", 300L);
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private BoundedCache<String, byte[]> fingerprints;
+
+    private ThreadLocal<Mac> mac;
+
+    @PostConstruct
+    public void init() {
+        fingerprints = new BoundedCache<>("credentials", MAX_SIZE, TimeUnit.SECONDS.toMillis(TTL_SECONDS), metricRegistry);
+
+        // the fingerprint key only lives in this process, so cached fingerprints are useless outside of it
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+        mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(HMAC_ALGORITHM);
+                instance.init(keySpec);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not initialize the credential fingerprint", e);
+            }
+        });
+    }
+
+    /**
+     *
+     * @param username - the username being authenticated
+     * @param passwordDigest - the current password digest of the user
+     * @param presentedPassword - the plain text password sent by the client
+     * @return true if the same credentials were successfully verified recently
+     */
+    public boolean isVerified(String username, String passwordDigest, String presentedPassword) {
+        byte[] cached = fingerprints.get(username);
+
+        // a wrong password leaves the entry of the user alone, or anyone could flush it with failed attempts
+        return cached != null && MessageDigest.isEqual(cached, fingerprint(username, passwordDigest, presentedPassword));
+    }
+
+    /**
+     * remembers credentials that were just successfully verified, in place of the ones of the user cached so far
+     */
+    public void verified(String username, String passwordDigest, String presentedPassword) {
+        fingerprints.put(username, fingerprint(username, passwordDigest, presentedPassword));
+    }
+
+    public long getHitCount() {
+        return fingerprints.getHitCount();
+    }
+
+    public long getMissCount() {
+        return fingerprints.getMissCount();
+    }
+
+    private byte[] fingerprint(String username, String passwordDigest, String presentedPassword) {
+        Mac instance = mac.get();
+        instance.update(username.getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        instance.update(passwordDigest.getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        return instance.doFinal(presentedPassword.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,43 @@
+package calories.tracker.app.services;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *
+ * Publishes application events once the current transaction has committed, so that the listeners never see
+ * changes that are later rolled back, and can read the changes from the database.
+ *
+ */
+@Component
+public class AfterCommitEventPublisher {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     *
+     * publishes the event once the current transaction has committed, or right away outside of a transaction -
+     * the event is dropped if the transaction rolls back.
+     *
+     * @param event - the event to publish
+     */
+    public void publish(ApplicationEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventPublisher.publishEvent(event);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                eventPublisher.publishEvent(event);
+            }
+        });
+    }
+}
@@ -0,0 +1,199 @@
+package calories.tracker.app.services;
+
+import calories.tracker.app.dao.BusinessRegisterIndex;
+import calories.tracker.app.dao.BusinessRegisterIndexBuilder;
+import calories.tracker.app.dto.FirmDTO;
+import calories.tracker.app.dto.FirmValidationDTO;
+import org.apache.log4j.Logger;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ *
+ * Checks and completes the ico, dic and ic dph of the firms against an offline index of the business register.
+ *
+ * The index file is set with -DbusinessRegister.indexFile, and is rebuilt from the open data dump set with
+ * -DbusinessRegister.dumpFile whenever the dump is newer than the index. A rebuild writes a new file and swaps it
+ * in once complete, so the lookups go on against the previous index meanwhile. Without an index, the firms are
+ * not checked.
+ *
+ */
+@Service
+public class BusinessRegisterService {
+
+    private static final Logger LOGGER = Logger.getLogger(BusinessRegisterService.class);
+
+    public static final int MAX_VALIDATION_BATCH = 10000;
+
+    private volatile Path indexFile = path(System.getProperty("businessRegister.indexFile"));
+    private volatile Path dumpFile = path(System.getProperty("businessRegister.dumpFile"));
+
+    private volatile BusinessRegisterIndex index;
+
+    @PostConstruct
+    public void init() {
+        try {
+            setIndexFile(indexFile);
+        } catch (IOException e) {
+            LOGGER.error("The business register index " + indexFile + " could not be opened, it will be rebuilt.", e);
+        }
+    }
+
+    /**
+     * rebuilds the index when the dump was replaced by a newer one
+     */
+    @Scheduled(fixedDelay = 15 * 60 * 1000)
+    public void scheduledRebuild() {
+        Path dump = dumpFile;
+
+        if (dump == null || indexFile == null || !Files.exists(dump)) {
+            return;
+        }
+
+        try {
+            BusinessRegisterIndex current = index;
+
+            if (current == null || Files.getLastModifiedTime(dump).toMillis() > current.getBuiltAt()) {
+                rebuild(dump);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.error("The business register index could not be rebuilt from " + dump, e);
+        }
+    }
+
+    /**
+     *
+     * rebuilds the index file from a dump, and starts using it
+     *
+     * @param dump - the business register dump, @see BusinessRegisterIndexBuilder for its formats
+     * @return - the number of entries of the new index
+     * @throws IOException - if the dump could not be read or the index could not be written
+     */
+    public synchronized int rebuild(Path dump) throws IOException {
+        if (indexFile == null) {
+            throw new IllegalStateException("No business register index file is configured.");
+        }
+
+        int entries = BusinessRegisterIndexBuilder.build(dump, indexFile);
+        index = BusinessRegisterIndex.open(indexFile);
+
+        return entries;
+    }
+
+    /**
+     *
+     * @param indexFile - the index file to use from now on, opened if it exists - null to stop checking the firms
+     * @throws IOException - if the index file exists but could not be opened
+     */
+    public synchronized void setIndexFile(Path indexFile) throws IOException {
+        this.indexFile = indexFile;
+        this.index = null;
+
+        if (indexFile != null && Files.exists(indexFile)) {
+            index = BusinessRegisterIndex.open(indexFile);
+            LOGGER.info("Opened the business register index " + indexFile + " with " + index.size() + " entries.");
+        }
+    }
+
+    public void setDumpFile(Path dumpFile) {
+        this.dumpFile = dumpFile;
+    }
+
+    /**
+     *
+     * checks a firm against its register entry, found by ico - or by dic if the firm has no ico. The blank fields
+     * of the firm are filled from the entry, while a dic or ic dph differing from the entry is a mismatch.
+     *
+     * @param firm - the firm to check, left unchanged
+     * @return - the outcome of the check, with a completed copy of the firm
+     */
+    public FirmValidationDTO validate(FirmDTO firm) {
+        BusinessRegisterIndex register = index;
+
+        if (register == null) {
+            return new FirmValidationDTO(FirmValidationDTO.Status.UNAVAILABLE, firm, Collections.emptyList());
+        }
+
+        int entry = !isBlank(firm.getIco()) ? register.findByIco(firm.getIco()) :
+                !isBlank(firm.getDic()) ? register.findByDic(firm.getDic()) : -1;
+
+        if (entry < 0) {
+            return new FirmValidationDTO(FirmValidationDTO.Status.NOT_FOUND, firm, Collections.emptyList());
+        }
+
+        FirmDTO completed = new FirmDTO(firm.getId(), firm.getName(), firm.getAddress(), firm.getAccount_num(),
+                firm.getIco(), firm.getDic(), firm.getIc_dph());
+        List<String> mismatches = new ArrayList<>(2);
+        boolean filled = false;
+
+        if (isBlank(firm.getIco())) {
+            completed.setIco(register.getIco(entry));
+            filled = true;
+        }
+
+        if (isBlank(firm.getDic())) {
+            filled |= register.hasDic(entry);
+            completed.setDic(register.getDic(entry));
+        } else if (register.hasDic(entry) && !register.dicMatches(entry, firm.getDic())) {
+            mismatches.add("dic");
+        }
+
+        if (isBlank(firm.getIc_dph())) {
+            filled |= register.hasIcDph(entry);
+            completed.setIc_dph(register.getIcDph(entry));
+        } else if (register.hasIcDph(entry) && !register.icDphMatches(entry, firm.getIc_dph())) {
+            mismatches.add("ic_dph");
+        }
+
+        // the name and address are free texts, only filled in when missing
+        String name = isBlank(firm.getName()) ? register.getName(entry) : null;
+        if (name != null) {
+            completed.setName(name);
+            filled = true;
+        }
+
+        String address = isBlank(firm.getAddress()) ? register.getAddress(entry) : null;
+        if (address != null) {
+            completed.setAddress(address);
+            filled = true;
+        }
+
+        FirmValidationDTO.Status status = !mismatches.isEmpty() ? FirmValidationDTO.Status.MISMATCH :
+                filled ? FirmValidationDTO.Status.COMPLETED : FirmValidationDTO.Status.VALID;
+
+        return new FirmValidationDTO(status, completed, mismatches);
+    }
+
+    /**
+     *
+     * checks a batch of firms, @see #validate(FirmDTO)
+     *
+     * @param firms - at most MAX_VALIDATION_BATCH firms
+     * @return - the outcome of the check of each firm, in the same order
+     */
+    public List<FirmValidationDTO> validate(List<FirmDTO> firms) {
+        if (firms.size() > MAX_VALIDATION_BATCH) {
+            throw new IllegalArgumentException("At most " + MAX_VALIDATION_BATCH + " firms can be checked at once.");
+        }
+
+        return firms.stream()
+                .map(this::validate)
+                .collect(Collectors.toList());
+    }
+
+    private static Path path(String path) {
+        return path != null && !path.trim().isEmpty() ? Paths.get(path.trim()) : null;
+    }
+}
@@ -0,0 +1,198 @@
+package calories.tracker.app.services;
+
+
+import calories.tracker.app.dao.DailyCaloriesRepository;
+import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.dao.UserRepository;
+import calories.tracker.app.model.DailyCalories;
+import calories.tracker.app.model.User;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static calories.tracker.app.services.ValidationUtils.assertNotBlank;
+
+/**
+ *
+ * Business service for the per day calorie totals of the users.
+ *
+ * The totals are changed in the same transaction as the meals, @see MealService. As a safety net, they are
+ * recomputed from the meals every night, and any drift found is repaired and logged.
+ *
+ */
+@Service
+public class DailyCaloriesService {
+
+    private static final Logger LOGGER = Logger.getLogger(DailyCaloriesService.class);
+
+    @Autowired
+    private DailyCaloriesRepository dailyCaloriesRepository;
+
+    @Autowired
+    private MealRepository mealRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     *
+     * Changes to the daily totals of a user, collected while meals are saved or deleted, and then applied with
+     * one statement per day.
+     *
+     */
+    public static class Changes {
+
+        private final Map<Date, long[]> totals = new HashMap<>();
+
+        public void mealAdded(Date date, long calories) {
+            add(date, calories, 1);
+        }
+
+        public void mealsRemoved(Date date, long calories, long mealCount) {
+            add(date, -calories, -mealCount);
+        }
+
+        private void add(Date date, long calories, long mealCount) {
+            long[] total = totals.computeIfAbsent(DailyCalories.dayOf(date), (day) -> new long[2]);
+            total[0] += calories;
+            total[1] += mealCount;
+        }
+    }
+
+    /**
+     *
+     * applies changes to the daily totals of a user
+     *
+     * @param user - the owner of the meals that were changed
+     * @param changes - the changes to apply
+     */
+    @Transactional
+    public void apply(User user, Changes changes) {
+        changes.totals.forEach((day, total) -> {
+            if (total[0] == 0 && total[1] == 0) {
+                return;
+            }
+
+            if (dailyCaloriesRepository.addToTotal(user, day, total[0], total[1])) {
+                return;
+            }
+
+            // the first meal of the day - a concurrent first meal may have inserted the total while waiting for the lock
+            dailyCaloriesRepository.lockTotals(user);
+
+            if (dailyCaloriesRepository.addToTotal(user, day, total[0], total[1])) {
+                return;
+            }
+
+            if (total[1] > 0) {
+                dailyCaloriesRepository.save(new DailyCalories(user, day, total[0], total[1]));
+            } else {
+                LOGGER.warn("Missing daily total of user " + user.getUsername() + " on " + day + ", left for the rebuild.");
+            }
+        });
+    }
+
+    /**
+     *
+     * finds the total calories that a given user has consumed so far in ongoing day
+     *
+     * @param username - the currently logged in user
+     * @return the total number of calories for the user for today, or null if there are no meals today
+     */
+    @Transactional(readOnly = true)
+    public Long findTodaysCalories(String username) {
+        return dailyCaloriesRepository.findTodaysCalories(username);
+    }
+
+    /**
+     *
+     * recomputes the daily totals of a user from its meals, and repairs the totals that differ
+     *
+     * @param username - the user whose totals are verified
+     * @return - the number of daily totals that had to be repaired
+     */
+    @Transactional
+    public int rebuild(String username) {
+        assertNotBlank(username, "username cannot be blank");
+
+        User user = userRepository.findUserByUsername(username);
+
+        if (user == null) {
+            throw new IllegalArgumentException("User not found: " + username);
+        }
+
+        return rebuild(user);
+    }
+
+    /**
+     *
+     * recomputes the daily totals of all users, one transaction per user
+     *
+     * @return - the number of daily totals that had to be repaired
+     */
+    public int rebuildAll() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int repaired = 0;
+
+        for (String username : userRepository.findAllUsernames()) {
+            repaired += transactionTemplate.execute((status) -> rebuild(userRepository.findUserByUsername(username)));
+        }
+
+        if (repaired > 0) {
+            LOGGER.warn("Repaired " + repaired + " daily calorie totals.");
+        } else {
+            LOGGER.info("All daily calorie totals verified.");
+        }
+
+        return repaired;
+    }
+
+    @Scheduled(cron = "0 30 3 * * *")
+    public void nightlyRebuild() {
+        rebuildAll();
+    }
+
+    private int rebuild(User user) {
+        Changes actual = new Changes();
+
+        for (Object[] row : mealRepository.findDailyTotals(user)) {
+            actual.add((Date) row[0], ((Number) row[1]).longValue(), ((Number) row[2]).longValue());
+        }
+
+        int repaired = 0;
+        List<DailyCalories> stored = dailyCaloriesRepository.findByUser(user);
+
+        for (DailyCalories dailyCalories : stored) {
+            long[] total = actual.totals.remove(new Date(dailyCalories.getDay().getTime()));
+
+            if (total == null) {
+                // days whose meals were all deleted are left with empty totals, which are not drift
+                dailyCaloriesRepository.delete(dailyCalories);
+                repaired += dailyCalories.getMealCount() != 0 || dailyCalories.getCalories() != 0 ? 1 : 0;
+            } else if (total[0] != dailyCalories.getCalories() || total[1] != dailyCalories.getMealCount()) {
+                dailyCalories.setCalories(total[0]);
+                dailyCalories.setMealCount(total[1]);
+                repaired++;
+            }
+        }
+
+        for (Map.Entry<Date, long[]> total : actual.totals.entrySet()) {
+            dailyCaloriesRepository.save(new DailyCalories(user, total.getKey(), total.getValue()[0], total.getValue()[1]));
+            repaired++;
+        }
+
+        return repaired;
+    }
+}
@@ -1,9 +1,13 @@
 package calories.tracker.app.services;
 
+import calories.tracker.app.cache.FirmNameIndex;
 import calories.tracker.app.dao.FirmRepository;
 import calories.tracker.app.dao.UserRepository;
 import calories.tracker.app.dto.FirmDTO;
+import calories.tracker.app.dto.FirmValidationDTO;
 import calories.tracker.app.model.Firm;
+import calories.tracker.app.model.FirmCursor;
+import calories.tracker.app.model.FirmNameMatch;
 import calories.tracker.app.model.SearchResult;
 import calories.tracker.app.model.User;
 import org.apache.log4j.Logger;
@@ -11,12 +15,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.Time;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static calories.tracker.app.services.ValidationUtils.assertNotBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
 import static org.springframework.util.Assert.notNull;
 
 /**
@@ -29,61 +39,148 @@ public class FirmService {
 
     private static final Logger LOGGER = Logger.getLogger(FirmService.class);
 
+    public static final int PAGE_SIZE = 10;
+    public static final int MAX_SUGGESTIONS = 20;
+
     @Autowired
     FirmRepository firmRepository;
 
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    AfterCommitEventPublisher eventPublisher;
+
+    @Autowired
+    BusinessRegisterService businessRegisterService;
+
+    @Autowired
+    FirmNameIndex firmNameIndex;
+
     /**
      *
-     * searches firms by date/time
+     * searches the firms of a user by name, ico, dic and ic dph, sorted by name - all the criteria are optional,
+     * and the given ones must all match. The ico, dic and ic dph must match exactly, and are point lookups on their
+     * indexes.
      *
      * @param username - the currently logged in user
-     * @param fromDate - search from this date, including
-     * @param toDate - search until this date, including
-     * @param fromTime - search from this time, including
-     * @param toTime - search to this time, including
-     * @param pageNumber - the page number (each page has 10 entries)
-     * @return - the found results
+     * @param name - the name to match, case insensitive, or null
+     * @param nameMatch - how the name is matched, by prefix if null
+     * @param ico - the exact ico, or null
+     * @param dic - the exact dic, or null
+     * @param icDph - the exact ic dph, or null
+     * @param cursor - the nextCursor of a previous search with the same criteria, or null to read the page by number
+     * @param pageNumber - the page number (each page has PAGE_SIZE entries), ignored if a cursor is given
+     * @return - the found results, along with the cursor of the next page
      */
     @Transactional(readOnly = true)
-    public SearchResult<Firm> findFirms(String username, Date fromDate, Date toDate, Time fromTime, Time toTime, int pageNumber) {
+    public SearchResult<FirmDTO> findFirms(String username, String name, FirmNameMatch nameMatch, String ico,
+                                           String dic, String icDph, FirmCursor cursor, int pageNumber) {
+
+        assertNotBlank(username, "username cannot be blank");
 
-        if (fromDate == null || toDate == null) {
-            throw new IllegalArgumentException("Both the from and to date are needed.");
+        if (pageNumber < 1) {
+            throw new IllegalArgumentException("The page number must be at least 1.");
         }
 
-        if (fromDate.after(toDate)) {
-            throw new IllegalArgumentException("From date cannot be after to date.");
+        String namePattern = null;
+
+        if (isNotBlank(name)) {
+            FirmNameMatch match = nameMatch != null ? nameMatch : FirmNameMatch.PREFIX;
+            String trimmedName = name.trim();
+
+            if (match == FirmNameMatch.CONTAINS && trimmedName.length() < FirmNameMatch.MIN_CONTAINS_LENGTH) {
+                throw new IllegalArgumentException("Searches of a part of the name need at least " +
+                        FirmNameMatch.MIN_CONTAINS_LENGTH + " characters.");
+            }
+
+            namePattern = match.pattern(trimmedName);
         }
 
-        if (fromDate.equals(toDate) && fromTime != null && toTime != null && fromTime.after(toTime)) {
-            throw new IllegalArgumentException("On searches on the same day, from time cannot be after to time.");
+        return firmRepository.findFirmsWithCount(username, namePattern, trimToNull(ico), trimToNull(dic),
+                trimToNull(icDph), cursor, pageNumber, PAGE_SIZE);
+    }
+
+    /**
+     *
+     * suggests the firms of a user whose name (or address) best matches what the user is typing, tolerating typos
+     * and missing diacritics, @see FirmNameIndex - if the firms of the user are not indexed, the names containing
+     * the query are suggested instead.
+     *
+     * @param username - the currently logged in user
+     * @param query - the beginning of a firm name
+     * @param limit - the maximum number of suggestions, at most MAX_SUGGESTIONS
+     * @return - the suggested firms, best first
+     */
+    @Transactional(readOnly = true)
+    public List<FirmDTO> suggestFirms(String username, String query, int limit) {
+        assertNotBlank(username, "username cannot be blank");
+
+        int size = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+
+        if (query == null || query.trim().isEmpty()) {
+            return Collections.emptyList();
         }
 
-        Long resultsCount = firmRepository.countFirmsByDateTime(username, fromDate, toDate, fromTime, toTime);
+        List<Long> ids = firmNameIndex.suggest(username, query, size);
 
-        List<Firm> firms = firmRepository.findFirmsByDateTime(username, fromDate, toDate, fromTime, toTime, pageNumber);
+        if (ids == null) {
+            String trimmedQuery = query.trim();
+            FirmNameMatch match = trimmedQuery.length() >= FirmNameMatch.MIN_CONTAINS_LENGTH ?
+                    FirmNameMatch.CONTAINS : FirmNameMatch.PREFIX;
 
-        return new SearchResult<>(resultsCount, firms);
+            return firmRepository.findFirmsWithCount(username, match.pattern(trimmedQuery), null, null, null,
+                    null, 1, size).getResult();
+        }
+
+        Map<Long, FirmDTO> firms = firmRepository.findFirmsByIds(username, ids).stream()
+                .collect(Collectors.toMap(FirmDTO::getId, Function.identity()));
+
+        return ids.stream()
+                .map(firms::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     /**
      *
-     * deletes a list of firms, given their Ids
+     * deletes a list of firms of the given user, given their Ids
      *
+     * @param username - the currently logged in user
      * @param deletedFirmIds - the list of firms to delete
+     * @return - the number of firms deleted
      */
     @Transactional
-    public void deleteFirms(List<Long> deletedFirmIds) {
+    public int deleteFirms(String username, List<Long> deletedFirmIds) {
+        assertNotBlank(username, "username cannot be blank");
         notNull(deletedFirmIds, "deletedFirmsId is mandatory");
-        deletedFirmIds.stream().forEach((deletedFirmId) -> firmRepository.delete(deletedFirmId));
+
+        Set<Long> deletedIds = new HashSet<>(deletedFirmIds);
+        int deleted = firmRepository.delete(username, deletedIds);
+
+        if (deleted > 0) {
+            eventPublisher.publish(FirmsChangedEvent.of(this, username, Collections.emptyList(), deletedIds));
+        }
+
+        return deleted;
     }
 
     /**
      *
-     * saves a firm (new or not) into the database.
+     * checks a batch of firms against the business register, without saving them
+     *
+     * @param firms - the firms to check, at most BusinessRegisterService.MAX_VALIDATION_BATCH
+     * @return - the outcome of the check of each firm, with the firm completed from the register
+     */
+    public List<FirmValidationDTO> validateFirms(List<FirmDTO> firms) {
+        notNull(firms, "firms is mandatory");
+        return businessRegisterService.validate(firms);
+    }
+
+    /**
+     *
+     * saves a firm (new or not) into the database - its missing fields are first filled from the business
+     * register, which must agree with its dic and ic dph.
      *
      * @param username - - the currently logged in user
      * @param id - the database id of the firm
@@ -100,6 +197,22 @@ public class FirmService {
     public Firm saveFirm(String username, Long id, String name, String address, String account_num, String ico, String dic, String ic_dph) {
 
         assertNotBlank(username, "username cannot be blank");
+
+        FirmValidationDTO validation = businessRegisterService.validate(
+                new FirmDTO(id, name, address, account_num, ico, dic, ic_dph));
+
+        if (validation.getStatus() == FirmValidationDTO.Status.MISMATCH) {
+            throw new IllegalArgumentException("The " + String.join(", ", validation.getMismatches()) +
+                    " of the firm " + ico + " do not match the business register.");
+        }
+
+        FirmDTO registered = validation.getFirm();
+        name = registered.getName();
+        address = registered.getAddress();
+        ico = registered.getIco();
+        dic = registered.getDic();
+        ic_dph = registered.getIc_dph();
+
         notNull(name, "name is mandatory");
         notNull(address, "address is mandatory");
         notNull(account_num, "account number is mandatory");
@@ -127,6 +240,11 @@ public class FirmService {
             }
         }
 
+        if (firm != null) {
+            eventPublisher.publish(FirmsChangedEvent.of(this, firm.getUser().getUsername(),
+                    Collections.singletonList(FirmDTO.mapFromFirmEntity(firm)), Collections.emptyList()));
+        }
+
         return firm;
     }
 
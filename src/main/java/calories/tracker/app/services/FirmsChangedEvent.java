@@ -0,0 +1,54 @@
+package calories.tracker.app.services;
+
+
+import calories.tracker.app.dto.FirmDTO;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ *
+ * Published by FirmService once a transaction that saved or deleted firms of a user has committed, with the saved
+ * firms and the deleted ids.
+ *
+ */
+public class FirmsChangedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String username;
+    private final List<FirmDTO> savedFirms;
+    private final Collection<Long> deletedIds;
+
+    private FirmsChangedEvent(Object source, String username, List<FirmDTO> savedFirms, Collection<Long> deletedIds) {
+        super(source);
+        this.username = username;
+        this.savedFirms = savedFirms;
+        this.deletedIds = deletedIds;
+    }
+
+    /**
+     *
+     * @param source - the service that changed the firms
+     * @param username - the owner of the firms
+     * @param savedFirms - the new or updated firms, with their ids
+     * @param deletedIds - the ids of the deleted firms
+     */
+    public static FirmsChangedEvent of(Object source, String username, List<FirmDTO> savedFirms,
+                                       Collection<Long> deletedIds) {
+        return new FirmsChangedEvent(source, username, savedFirms, deletedIds);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<FirmDTO> getSavedFirms() {
+        return savedFirms;
+    }
+
+    public Collection<Long> getDeletedIds() {
+        return deletedIds;
+    }
+}
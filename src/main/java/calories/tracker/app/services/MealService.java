@@ -1,20 +1,54 @@
 package calories.tracker.app.services;
 
 
+import calories.tracker.app.cache.MealSuggestions;
+import calories.tracker.app.cache.MealWorkingSet;
+import calories.tracker.app.dao.LikePatterns;
 import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.dao.MealTextSearch;
 import calories.tracker.app.dao.UserRepository;
 import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.dto.MealImportDTO;
+import calories.tracker.app.dto.MealStatsDTO;
+import calories.tracker.app.dto.MealSuggestionDTO;
+import calories.tracker.app.dto.serialization.MealFileFormat;
 import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.MealCursor;
 import calories.tracker.app.model.SearchResult;
 import calories.tracker.app.model.User;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.PersistenceException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.sql.Time;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static calories.tracker.app.services.ValidationUtils.assertNotBlank;
@@ -30,15 +64,42 @@ public class MealService {
 
     private static final Logger LOGGER = Logger.getLogger(MealService.class);
 
+    public static final int DEFAULT_PAGE_SIZE = 10;
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final int TOTAL_COUNT_CAP = 1000;
+    public static final int DEFAULT_IMPORT_CHUNK_SIZE = 1000;
+    public static final int MAX_SUGGESTIONS = 20;
+
+    private static final ZoneId MEAL_DATE_ZONE = ZoneId.of("CET");
+    private static final DateTimeFormatter PERIOD_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
     @Autowired
     MealRepository mealRepository;
 
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    DailyCaloriesService dailyCaloriesService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MealWorkingSet mealWorkingSet;
+
+    @Autowired
+    MealSuggestions mealSuggestions;
+
+    @Autowired
+    MealTextSearch mealTextSearch;
+
+    @Autowired
+    AfterCommitEventPublisher eventPublisher;
+
     /**
      *
-     * searches meals by date/time
+     * searches meals by date/time, using the default page size
      *
      * @param username - the currently logged in user
      * @param fromDate - search from this date, including
@@ -49,8 +110,387 @@ public class MealService {
      * @return - the found results
      */
     @Transactional(readOnly = true)
-    public SearchResult<Meal> findMeals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime, int pageNumber) {
+    public SearchResult<MealDTO> findMeals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime, int pageNumber) {
+        return findMeals(username, fromDate, toDate, fromTime, toTime, pageNumber, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     *
+     * searches meals by date/time, returning the page with the given number and the exact total
+     *
+     * @param username - the currently logged in user
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param pageNumber - the page number, starting at 1
+     * @param pageSize - the number of entries per page, capped at MAX_PAGE_SIZE
+     * @return - the found results, along with the cursors of the neighbouring pages
+     */
+    @Transactional(readOnly = true)
+    public SearchResult<MealDTO> findMeals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime,
+                                           int pageNumber, int pageSize) {
+        return findMeals(username, fromDate, toDate, fromTime, toTime, pageNumber, pageSize, false);
+    }
+
+    /**
+     *
+     * searches meals by date/time, returning the page with the given number
+     *
+     * The exact total is read in the same statement as the page. The approximate total stops counting past
+     * TOTAL_COUNT_CAP matches (or past the current page, if deeper), and is not counted at all when the page
+     * turns out to be the last one.
+     *
+     * @param username - the currently logged in user
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param pageNumber - the page number, starting at 1
+     * @param pageSize - the number of entries per page, capped at MAX_PAGE_SIZE
+     * @param approximateTotal - true if a capped total is enough
+     * @return - the found results, along with the cursors of the neighbouring pages
+     */
+    @Transactional(readOnly = true)
+    public SearchResult<MealDTO> findMeals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime,
+                                           int pageNumber, int pageSize, boolean approximateTotal) {
+
+        validateSearchCriteria(fromDate, toDate, fromTime, toTime);
+
+        if (pageNumber < 1) {
+            throw new IllegalArgumentException("The page number must be at least 1.");
+        }
+
+        int size = capPageSize(pageSize);
+        long offset = (long) (pageNumber - 1) * size;
+
+        // the working set always knows the exact total, at no extra cost
+        SearchResult<MealDTO> loaded = mealWorkingSet.findMeals(username, fromDate, toDate, fromTime, toTime, offset, size);
+
+        if (loaded != null) {
+            boolean hasNext = offset + loaded.getResult().size() < loaded.getResultsCount();
+            return toSearchResult(loaded.getResultsCount(), false, loaded.getResult(), pageNumber > 1, hasNext);
+        }
+
+        if (!approximateTotal) {
+            SearchResult<MealDTO> page = mealRepository.findMealsWithCount(username, fromDate, toDate, fromTime, toTime,
+                    pageNumber, size);
+            boolean hasNext = offset + page.getResult().size() < page.getResultsCount();
+            return toSearchResult(page.getResultsCount(), false, page.getResult(), pageNumber > 1, hasNext);
+        }
+
+        // one extra meal is read to know if this is the last page, in which case the total is already known
+        List<MealDTO> meals = mealRepository.findMealsByDateTime(username, fromDate, toDate, fromTime, toTime, pageNumber, size + 1);
+        boolean hasNext = meals.size() > size;
+        meals = hasNext ? meals.subList(0, size) : meals;
+
+        if (!hasNext && (!meals.isEmpty() || pageNumber == 1)) {
+            return toSearchResult(offset + meals.size(), false, meals, pageNumber > 1, false);
+        }
+
+        long limit = Math.max(TOTAL_COUNT_CAP, offset + size) + 1;
+        Long resultsCount = mealRepository.countMealsByDateTime(username, fromDate, toDate, fromTime, toTime, limit);
+
+        return toSearchResult(resultsCount, resultsCount >= limit, meals, pageNumber > 1, hasNext);
+    }
+
+    /**
+     *
+     * searches meals by date/time, returning the page right after (or before) the given cursor and the exact total
+     *
+     * @param username - the currently logged in user
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param cursor - the cursor returned by a previous search with the same criteria
+     * @param pageSize - the number of entries per page, capped at MAX_PAGE_SIZE
+     * @return - the found results, along with the cursors of the neighbouring pages
+     */
+    @Transactional(readOnly = true)
+    public SearchResult<MealDTO> findMeals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime,
+                                           MealCursor cursor, int pageSize) {
+        return findMeals(username, fromDate, toDate, fromTime, toTime, cursor, pageSize, false);
+    }
+
+    /**
+     *
+     * searches meals by date/time, returning the page right after (or before) the given cursor
+     *
+     * @param username - the currently logged in user
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param cursor - the cursor returned by a previous search with the same criteria
+     * @param pageSize - the number of entries per page, capped at MAX_PAGE_SIZE
+     * @param approximateTotal - true if a total capped at TOTAL_COUNT_CAP is enough
+     * @return - the found results, along with the cursors of the neighbouring pages
+     */
+    @Transactional(readOnly = true)
+    public SearchResult<MealDTO> findMeals(String username, Date fromDate, Date toDate, Time fromTime, Time toTime,
+                                           MealCursor cursor, int pageSize, boolean approximateTotal) {
+
+        validateSearchCriteria(fromDate, toDate, fromTime, toTime);
+        notNull(cursor, "cursor is mandatory");
+
+        int size = capPageSize(pageSize);
+        long resultsCount;
+        boolean resultsCountCapped = false;
+        List<MealDTO> meals;
+
+        // one extra meal is read to know if there is yet another page in the cursor direction
+        SearchResult<MealDTO> loaded = mealWorkingSet.findMealsByCursor(username, fromDate, toDate, fromTime, toTime,
+                cursor, size + 1);
+
+        if (loaded != null) {
+            resultsCount = loaded.getResultsCount();
+            meals = loaded.getResult();
+        } else if (!approximateTotal) {
+            SearchResult<MealDTO> page = mealRepository.findMealsByCursorWithCount(username, fromDate, toDate,
+                    fromTime, toTime, cursor, size + 1);
+            resultsCount = page.getResultsCount();
+            meals = page.getResult();
+        } else {
+            meals = mealRepository.findMealsByCursor(username, fromDate, toDate, fromTime, toTime, cursor, size + 1);
+            resultsCount = mealRepository.countMealsByDateTime(username, fromDate, toDate, fromTime, toTime,
+                    TOTAL_COUNT_CAP + 1);
+            resultsCountCapped = resultsCount > TOTAL_COUNT_CAP;
+        }
+
+        boolean hasMore = meals.size() > size;
+
+        if (cursor.getDirection() == MealCursor.Direction.NEXT) {
+            meals = hasMore ? meals.subList(0, size) : meals;
+            return toSearchResult(resultsCount, resultsCountCapped, meals, true, hasMore);
+        }
+
+        meals = hasMore ? meals.subList(meals.size() - size, meals.size()) : meals;
+        return toSearchResult(resultsCount, resultsCountCapped, meals, hasMore, true);
+    }
+
+    /**
+     *
+     * searches meals by the words of their description and by date/time, the most relevant first - each word of
+     * the query must be in the description, in any grammatical form, @see MealTextSearch
+     *
+     * @param username - the currently logged in user
+     * @param query - the words to search for
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @param pageNumber - the page number, starting at 1
+     * @param pageSize - the number of entries per page, capped at MAX_PAGE_SIZE
+     * @return - the found results and the exact total - ranked results have no cursors, they are paged by number
+     */
+    @Transactional(readOnly = true)
+    public SearchResult<MealDTO> searchMeals(String username, String query, Date fromDate, Date toDate, Time fromTime,
+                                             Time toTime, int pageNumber, int pageSize) {
+
+        assertNotBlank(query, "query cannot be blank");
+        validateSearchCriteria(fromDate, toDate, fromTime, toTime);
+
+        if (pageNumber < 1) {
+            throw new IllegalArgumentException("The page number must be at least 1.");
+        }
+
+        SearchResult<MealDTO> page = mealTextSearch.findMeals(username, query.trim(), fromDate, toDate, fromTime,
+                toTime, pageNumber, capPageSize(pageSize));
+
+        return new SearchResult<>(page.getResultsCount(), false, page.getResult(), null, null);
+    }
+
+    /**
+     *
+     * computes the calorie statistics of the meals matching the search criteria
+     *
+     * The totals per day are summed up by the database, the weeks (starting on Monday) and months are then
+     * rolled up from the days - a year of statistics costs a single query of at most 366 rows.
+     *
+     * @param username - the currently logged in user
+     * @param fromDate - search from this date, including
+     * @param toDate - search until this date, including
+     * @param fromTime - search from this time, including
+     * @param toTime - search to this time, including
+     * @return - the summary of the range, and the totals per day, week and month
+     */
+    @Transactional(readOnly = true)
+    public MealStatsDTO findMealStats(String username, Date fromDate, Date toDate, Time fromTime, Time toTime) {
+
+        assertNotBlank(username, "username cannot be blank");
+        validateSearchCriteria(fromDate, toDate, fromTime, toTime);
+
+        User user = userRepository.findUserByUsername(username);
+
+        if (user == null) {
+            throw new IllegalArgumentException("User not found: " + username);
+        }
+
+        // several dates of the database can fall on the same day, if meals were saved from other time zones
+        SortedMap<LocalDate, long[]> days = new TreeMap<>();
+
+        for (Object[] row : mealRepository.findDailyTotals(username, fromDate, toDate, fromTime, toTime)) {
+            LocalDate day = ((Date) row[0]).toInstant().atZone(MEAL_DATE_ZONE).toLocalDate();
+            addToPeriod(days, day, ((Number) row[1]).longValue(), ((Number) row[2]).longValue(), 0);
+        }
+
+        MealStatsDTO stats = new MealStatsDTO();
+        stats.setDailyLimit(user.getMaxCaloriesPerDay());
+
+        SortedMap<LocalDate, long[]> weeks = new TreeMap<>();
+        SortedMap<LocalDate, long[]> months = new TreeMap<>();
+
+        days.forEach((day, total) -> {
+            long calories = total[0];
+
+            stats.setTotalCalories(stats.getTotalCalories() + calories);
+            stats.setMealCount(stats.getMealCount() + total[1]);
+            stats.setDayCount(stats.getDayCount() + 1);
+
+            if (stats.getLowestDailyCalories() == null || calories < stats.getLowestDailyCalories()) {
+                stats.setLowestDailyCalories(calories);
+            }
+
+            if (stats.getHighestDailyCalories() == null || calories > stats.getHighestDailyCalories()) {
+                stats.setHighestDailyCalories(calories);
+            }
 
+            if (user.getMaxCaloriesPerDay() != null && calories > user.getMaxCaloriesPerDay()) {
+                stats.setDaysOverLimit(stats.getDaysOverLimit() + 1);
+            }
+
+            addToPeriod(weeks, day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), calories, total[1], 1);
+            addToPeriod(months, day.withDayOfMonth(1), calories, total[1], 1);
+        });
+
+        if (stats.getDayCount() > 0) {
+            stats.setAverageDailyCalories((double) stats.getTotalCalories() / stats.getDayCount());
+            stats.setAverageMealCalories((double) stats.getTotalCalories() / stats.getMealCount());
+        }
+
+        stats.setDays(toSeries(days, false));
+        stats.setWeeks(toSeries(weeks, true));
+        stats.setMonths(toSeries(months, true));
+
+        return stats;
+    }
+
+    /**
+     *
+     * suggests the descriptions of the previous meals of a user starting with a prefix, with the calories of their
+     * latest meal, @see MealSuggestions - if the descriptions of the user are not in memory, the descriptions of the
+     * latest matching meals are suggested instead.
+     *
+     * @param username - the currently logged in user
+     * @param prefix - the beginning of a description
+     * @param limit - the maximum number of suggestions, at most MAX_SUGGESTIONS
+     * @return - the suggestions, most frequently and recently used first
+     */
+    @Transactional(readOnly = true)
+    public List<MealSuggestionDTO> suggestMeals(String username, String prefix, int limit) {
+        assertNotBlank(username, "username cannot be blank");
+
+        int size = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+
+        if (prefix == null || prefix.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<MealSuggestionDTO> suggestions = mealSuggestions.suggest(username, prefix, size);
+
+        if (suggestions != null) {
+            return suggestions;
+        }
+
+        Map<String, MealSuggestionDTO> latest = new LinkedHashMap<>();
+
+        for (Object[] row : mealRepository.findLatestMealsByDescription(username,
+                LikePatterns.startingWith(prefix.trim()), size * 10)) {
+            String description = (String) row[0];
+            MealSuggestionDTO suggestion = latest.computeIfAbsent(description.trim().toLowerCase(Locale.ROOT),
+                    (key) -> new MealSuggestionDTO(description, (Long) row[1], 0));
+            suggestion.setTimesUsed(suggestion.getTimesUsed() + 1);
+        }
+
+        return latest.values().stream()
+                .limit(size)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     *
+     * writes all the meals of a user in a date range, as they are read from the database - the meals are never
+     * all held in memory, whatever their number.
+     *
+     * @param username - the currently logged in user
+     * @param fromDate - export from this date, including, or from the first meal if null
+     * @param toDate - export until this date, including, or until the last meal if null
+     * @param format - the export format
+     * @param writer - where the meals are written to
+     * @throws IOException - if the meals could not be written
+     */
+    @Transactional(readOnly = true)
+    public void exportMeals(String username, Date fromDate, Date toDate, MealFileFormat format, Writer writer)
+            throws IOException {
+
+        assertNotBlank(username, "username cannot be blank");
+        notNull(format, "format is mandatory");
+
+        if (fromDate != null && toDate != null && fromDate.after(toDate)) {
+            throw new IllegalArgumentException("From date cannot be after to date.");
+        }
+
+        format.writeHeader(writer);
+
+        try {
+            mealRepository.scrollMeals(username, fromDate, toDate, (row) -> {
+                try {
+                    format.write(writer, new MealDTO((Long) row[0], (Date) row[1], (Time) row[2], (String) row[3],
+                            (Long) row[4]));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        writer.flush();
+    }
+
+    private static void addToPeriod(SortedMap<LocalDate, long[]> periods, LocalDate period, long calories,
+                                    long mealCount, long dayCount) {
+        long[] total = periods.computeIfAbsent(period, (start) -> new long[3]);
+        total[0] += calories;
+        total[1] += mealCount;
+        total[2] += dayCount;
+    }
+
+    private static MealStatsDTO.Series toSeries(SortedMap<LocalDate, long[]> periods, boolean withDayCounts) {
+        List<String> starts = new ArrayList<>(periods.size());
+        long[] calories = new long[periods.size()];
+        long[] mealCounts = new long[periods.size()];
+        long[] dayCounts = withDayCounts ? new long[periods.size()] : null;
+
+        int i = 0;
+
+        for (Map.Entry<LocalDate, long[]> period : periods.entrySet()) {
+            starts.add(period.getKey().format(PERIOD_FORMAT));
+            calories[i] = period.getValue()[0];
+            mealCounts[i] = period.getValue()[1];
+
+            if (dayCounts != null) {
+                dayCounts[i] = period.getValue()[2];
+            }
+
+            i++;
+        }
+
+        return new MealStatsDTO.Series(starts, calories, mealCounts, dayCounts);
+    }
+
+    private void validateSearchCriteria(Date fromDate, Date toDate, Time fromTime, Time toTime) {
         if (fromDate == null || toDate == null) {
             throw new IllegalArgumentException("Both the from and to date are needed.");
         }
@@ -62,24 +502,55 @@ public class MealService {
         if (fromDate.equals(toDate) && fromTime != null && toTime != null && fromTime.after(toTime)) {
             throw new IllegalArgumentException("On searches on the same day, from time cannot be after to time.");
         }
+    }
 
-        Long resultsCount = mealRepository.countMealsByDateTime(username, fromDate, toDate, fromTime, toTime);
-
-        List<Meal> meals = mealRepository.findMealsByDateTime(username, fromDate, toDate, fromTime, toTime, pageNumber);
+    private int capPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1.");
+        }
+        return Math.min(pageSize, MAX_PAGE_SIZE);
+    }
 
-        return new SearchResult<>(resultsCount, meals);
+    private SearchResult<MealDTO> toSearchResult(long resultsCount, boolean resultsCountCapped, List<MealDTO> meals,
+                                                 boolean hasPrevious, boolean hasNext) {
+        MealDTO first = meals.isEmpty() ? null : meals.get(0);
+        MealDTO last = meals.isEmpty() ? null : meals.get(meals.size() - 1);
+        String previousCursor = hasPrevious && first != null ?
+                MealCursor.before(first.getDate(), first.getTime(), first.getId()).encode() : null;
+        String nextCursor = hasNext && last != null ?
+                MealCursor.after(last.getDate(), last.getTime(), last.getId()).encode() : null;
+        return new SearchResult<>(resultsCount, resultsCountCapped, new ArrayList<>(meals), previousCursor, nextCursor);
     }
 
     /**
      *
-     * deletes a list of meals, given their Ids
+     * deletes a list of meals of the given user, given their Ids, and updates the daily totals of the user
      *
+     * @param username - the currently logged in user
      * @param deletedMealIds - the list of meals to delete
+     * @return - the number of meals deleted
      */
     @Transactional
-    public void deleteMeals(List<Long> deletedMealIds) {
+    public int deleteMeals(String username, List<Long> deletedMealIds) {
+        assertNotBlank(username, "username cannot be blank");
         notNull(deletedMealIds, "deletedMealsId is mandatory");
-        deletedMealIds.stream().forEach((deletedMealId) -> mealRepository.delete(deletedMealId));
+
+        Set<Long> ids = new HashSet<>(deletedMealIds);
+        List<Object[]> deletedTotals = mealRepository.findDailyTotals(username, ids);
+
+        if (deletedTotals.isEmpty()) {
+            return 0;
+        }
+
+        DailyCaloriesService.Changes changes = new DailyCaloriesService.Changes();
+        deletedTotals.forEach((row) -> changes.mealsRemoved((Date) row[0], ((Number) row[1]).longValue(),
+                ((Number) row[2]).longValue()));
+
+        int deleted = mealRepository.delete(username, ids);
+        dailyCaloriesService.apply(userRepository.findUserByUsername(username), changes);
+        eventPublisher.publish(MealsChangedEvent.of(this, username, Collections.emptyList(), ids));
+
+        return deleted;
     }
 
     /**
@@ -106,9 +577,14 @@ public class MealService {
 
         Meal meal = null;
 
+        DailyCaloriesService.Changes changes = new DailyCaloriesService.Changes();
+
         if (id != null) {
             meal = mealRepository.findMealById(id);
 
+            changes.mealsRemoved(meal.getDate(), meal.getCalories(), 1);
+            changes.mealAdded(date, calories);
+
             meal.setDate(date);
             meal.setTime(time);
             meal.setDescription(description);
@@ -118,10 +594,18 @@ public class MealService {
 
             if (user != null) {
                 meal = mealRepository.save(new Meal(user, date, time, description, calories));
+                changes.mealAdded(date, calories);
+            } else {
                 LOGGER.warn("A meal was attempted to be saved for a non-existing user: " + username);
             }
         }
 
+        if (meal != null) {
+            dailyCaloriesService.apply(meal.getUser(), changes);
+            eventPublisher.publish(MealsChangedEvent.of(this, meal.getUser().getUsername(),
+                    Collections.singletonList(MealDTO.mapFromMealEntity(meal)), Collections.emptyList()));
+        }
+
         return meal;
     }
 
@@ -129,20 +613,173 @@ public class MealService {
      *
      * saves a list of meals (new or not) into the database
      *
+     * The user is resolved once and the existing meals are loaded with a single query, the updates and inserts
+     * are then sent to the database in JDBC batches when the transaction is flushed.
+     *
      * @param username - the currently logged in user
      * @param meals - the list of meals to be saved
-     * @return - the new versions of the saved meals
+     * @return - the new versions of the saved meals, in the same order
      */
     @Transactional
     public List<Meal> saveMeals(String username, List<MealDTO> meals) {
-        return meals.stream()
-                .map((meal) -> saveMeal(
-                        username,
-                        meal.getId(),
-                        meal.getDate(),
-                        meal.getTime(),
-                        meal.getDescription(),
-                        meal.getCalories()))
-                .collect(Collectors.toList());
+
+        assertNotBlank(username, "username cannot be blank");
+        notNull(meals, "meals is mandatory");
+
+        meals.forEach(this::validateMeal);
+
+        Set<Long> existingIds = meals.stream()
+                .map(MealDTO::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        Map<Long, Meal> existingMeals = mealRepository.findMealsByIds(username, existingIds).stream()
+                .collect(Collectors.toMap(Meal::getId, Function.identity()));
+
+        User user = existingIds.size() < meals.size() ? userRepository.findUserByUsername(username) : null;
+
+        List<Meal> savedMeals = new ArrayList<>(meals.size());
+        DailyCaloriesService.Changes changes = new DailyCaloriesService.Changes();
+
+        for (MealDTO dto : meals) {
+            Meal meal;
+
+            if (dto.getId() != null) {
+                meal = existingMeals.get(dto.getId());
+
+                if (meal == null) {
+                    throw new IllegalArgumentException("Meal not found: " + dto.getId());
+                }
+
+                changes.mealsRemoved(meal.getDate(), meal.getCalories(), 1);
+                user = meal.getUser();
+
+                meal.setDate(dto.getDate());
+                meal.setTime(dto.getTime());
+                meal.setDescription(dto.getDescription());
+                meal.setCalories(dto.getCalories());
+            } else {
+                if (user == null) {
+                    LOGGER.warn("A meal was attempted to be saved for a non-existing user: " + username);
+                    throw new IllegalArgumentException("User not found: " + username);
+                }
+
+                meal = new Meal(user, dto.getDate(), dto.getTime(), dto.getDescription(), dto.getCalories());
+                mealRepository.persist(meal);
+            }
+
+            changes.mealAdded(dto.getDate(), dto.getCalories());
+            savedMeals.add(meal);
+        }
+
+        if (user != null) {
+            dailyCaloriesService.apply(user, changes);
+            eventPublisher.publish(MealsChangedEvent.of(this, user.getUsername(),
+                    MealDTO.mapFromMealsEntities(savedMeals), Collections.emptyList()));
+        }
+
+        return savedMeals;
+    }
+
+    /**
+     *
+     * imports new meals for a user from a file, that is read one record at a time
+     *
+     * Each record is validated like in saveMeal, and the valid meals are inserted and committed in chunks - the
+     * size of the chunks is set by the meals.import.chunkSize system property. A chunk that cannot be saved is
+     * rolled back on its own, and its records are reported as rejected. Only one chunk of meals is held in
+     * memory at a time, whatever the size of the file.
+     *
+     * @param username - the currently logged in user
+     * @param format - the format of the file
+     * @param in - the file to import
+     * @return - the number of imported meals, and the errors of the rejected records
+     * @throws IOException - if the file could not be read
+     */
+    public MealImportDTO importMeals(String username, MealFileFormat format, BufferedReader in) throws IOException {
+
+        assertNotBlank(username, "username cannot be blank");
+        notNull(format, "format is mandatory");
+
+        User user = userRepository.findUserByUsername(username);
+
+        if (user == null) {
+            throw new IllegalArgumentException("User not found: " + username);
+        }
+
+        int chunkSize = Integer.getInteger("meals.import.chunkSize", DEFAULT_IMPORT_CHUNK_SIZE);
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The import chunk size must be at least 1.");
+        }
+
+        MealFileFormat.MealReader reader = format.reader(in);
+        MealImportDTO report = new MealImportDTO();
+        List<Meal> chunk = new ArrayList<>(chunkSize);
+        int[] chunkLines = new int[chunkSize];
+
+        while (true) {
+            MealDTO dto;
+
+            try {
+                dto = reader.next();
+
+                if (dto == null) {
+                    break;
+                }
+
+                validateMeal(dto);
+            } catch (IllegalArgumentException e) {
+                report.rejected(reader.getLineNumber(), e.getMessage());
+                continue;
+            }
+
+            chunkLines[chunk.size()] = reader.getLineNumber();
+            chunk.add(new Meal(user, dto.getDate(), dto.getTime(), dto.getDescription(), dto.getCalories()));
+
+            if (chunk.size() == chunkSize) {
+                importChunk(user, chunk, chunkLines, report);
+                chunk.clear();
+            }
+        }
+
+        importChunk(user, chunk, chunkLines, report);
+
+        LOGGER.info("Imported " + report.getImportedCount() + " meals for user " + username + ", rejected "
+                + report.getRejectedCount() + " records.");
+
+        return report;
+    }
+
+    private void importChunk(User user, List<Meal> chunk, int[] chunkLines, MealImportDTO report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        DailyCaloriesService.Changes changes = new DailyCaloriesService.Changes();
+        chunk.forEach((meal) -> changes.mealAdded(meal.getDate(), meal.getCalories()));
+
+        try {
+            new TransactionTemplate(transactionManager).execute((status) -> {
+                mealRepository.insertMeals(chunk);
+                dailyCaloriesService.apply(user, changes);
+                eventPublisher.publish(MealsChangedEvent.bulk(this, user.getUsername()));
+                return null;
+            });
+            report.imported(chunk.size());
+        } catch (TransactionException | DataAccessException | PersistenceException e) {
+            LOGGER.error("Could not import a chunk of " + chunk.size() + " meals for user " + user.getUsername(), e);
+
+            for (int i = 0; i < chunk.size(); i++) {
+                report.rejected(chunkLines[i], "The meal could not be saved: " + e.getMessage());
+            }
+        }
+    }
+
+    private void validateMeal(MealDTO meal) {
+        notNull(meal.getDate(), "date is mandatory");
+        notNull(meal.getTime(), "time is mandatory");
+        notNull(meal.getDescription(), "description is mandatory");
+        notNull(meal.getCalories(), "calories is mandatory");
     }
 }
@@ -0,0 +1,74 @@
+package calories.tracker.app.services;
+
+
+import calories.tracker.app.dto.MealDTO;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * Published by MealService once a transaction that changed meals of a user has committed - listeners can rely
+ * on the changes being visible in the database.
+ *
+ * The saved meals and the deleted ids are only known for edits from the UI - bulk changes such as imports
+ * only tell which user changed, @see #isDetailed()
+ *
+ */
+public class MealsChangedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String username;
+    private final List<MealDTO> savedMeals;
+    private final Collection<Long> deletedIds;
+
+    private MealsChangedEvent(Object source, String username, List<MealDTO> savedMeals, Collection<Long> deletedIds) {
+        super(source);
+        this.username = username;
+        this.savedMeals = savedMeals;
+        this.deletedIds = deletedIds;
+    }
+
+    /**
+     *
+     * @param source - the service that changed the meals
+     * @param username - the owner of the meals
+     * @param savedMeals - the new or updated meals, with their ids
+     * @param deletedIds - the ids of the deleted meals
+     */
+    public static MealsChangedEvent of(Object source, String username, List<MealDTO> savedMeals,
+                                       Collection<Long> deletedIds) {
+        return new MealsChangedEvent(source, username, savedMeals, deletedIds);
+    }
+
+    /**
+     *
+     * @param source - the service that changed the meals
+     * @param username - the owner of the meals, whose meals changed in an unspecified way
+     */
+    public static MealsChangedEvent bulk(Object source, String username) {
+        return new MealsChangedEvent(source, username, null, null);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return - true if the saved meals and deleted ids are known, false if any meal of the user may have changed
+     */
+    public boolean isDetailed() {
+        return savedMeals != null;
+    }
+
+    public List<MealDTO> getSavedMeals() {
+        return savedMeals != null ? savedMeals : Collections.emptyList();
+    }
+
+    public Collection<Long> getDeletedIds() {
+        return deletedIds != null ? deletedIds : Collections.emptyList();
+    }
+}
@@ -1,5 +1,6 @@
 package calories.tracker.app.services;
 
+import calories.tracker.app.dao.DailyCaloriesRepository;
 import calories.tracker.app.dao.UserRepository;
 import calories.tracker.app.model.User;
 import org.apache.log4j.Logger;
@@ -31,6 +32,9 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private DailyCaloriesRepository dailyCaloriesRepository;
+
     /**
      *
      * updates the maximum calories of a given user
@@ -83,7 +87,7 @@ public class UserService {
 
     @Transactional(readOnly = true)
     public Long findTodaysCaloriesForUser(String username) {
-        return userRepository.findTodaysCaloriesForUser(username);
+        return dailyCaloriesRepository.findTodaysCalories(username);
     }
 
 }
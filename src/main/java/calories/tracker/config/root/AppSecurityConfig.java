@@ -2,7 +2,12 @@ package calories.tracker.config.root;
 
 
 import calories.tracker.app.security.AjaxAuthenticationSuccessHandler;
+import calories.tracker.app.security.AuthTokenService;
+import calories.tracker.app.security.CachingDaoAuthenticationProvider;
+import calories.tracker.app.security.CookieCsrfTokenRepository;
 import calories.tracker.app.security.SecurityUserDetailsService;
+import calories.tracker.app.security.TokenAuthenticationFilter;
+import calories.tracker.app.security.VerifiedCredentialCache;
 import com.allanditzel.springframework.security.web.csrf.CsrfTokenResponseHeaderBindingFilter;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,8 +17,10 @@ import org.springframework.security.config.annotation.authentication.builders.Au
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.authentication.SavedRequestAwareAuthenticationSuccessHandler;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.csrf.CsrfFilter;
 
 import javax.sql.DataSource;
@@ -23,8 +30,15 @@ import javax.sql.DataSource;
  * The Spring Security configuration for the application - its a form login config with authentication via session cookie (once logged in),
  * with fallback to HTTP Basic for non-browser clients.
  *
+ * As HTTP Basic clients send their credentials on every request, recently verified credentials are cached,
+ * @see calories.tracker.app.security.VerifiedCredentialCache
+ *
  * The CSRF token is put on the reply as a header via a filter, as there is no server-side rendering on this app.
  *
+ * Set -DauthMode=token to launch the application in stateless mode: no HTTP session is created, the login
+ * issues a signed token instead (@see calories.tracker.app.security.AuthTokenService), and the CSRF token
+ * is kept in a cookie. This allows running several nodes behind a load balancer without sticky sessions.
+ *
  */
 @Configuration
 @EnableWebSecurity
@@ -32,15 +46,26 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter {
 
     private static final Logger LOGGER = Logger.getLogger(AppSecurityConfig.class);
 
+    private static final boolean TOKEN_AUTH_MODE = "token".equals(System.getProperty("authMode"));
+
     @Autowired
     private SecurityUserDetailsService userDetailsService;
 
+    @Autowired
+    private VerifiedCredentialCache credentialCache;
+
+    @Autowired
+    private AuthTokenService authTokenService;
+
     @Autowired
     DataSource dataSource;
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userDetailsService).passwordEncoder(new BCryptPasswordEncoder());
+        CachingDaoAuthenticationProvider authenticationProvider = new CachingDaoAuthenticationProvider(credentialCache);
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(new BCryptPasswordEncoder());
+        auth.authenticationProvider(authenticationProvider);
     }
 
     @Override
@@ -62,7 +87,8 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter {
             .loginProcessingUrl("/authenticate")
             .usernameParameter("username")
             .passwordParameter("password")
-            .successHandler(new AjaxAuthenticationSuccessHandler(new SavedRequestAwareAuthenticationSuccessHandler()))
+            .successHandler(new AjaxAuthenticationSuccessHandler(new SavedRequestAwareAuthenticationSuccessHandler(),
+                    TOKEN_AUTH_MODE ? authTokenService : null))
             .loginPage("/resources/public/login.html")
             .and()
             .httpBasic()
@@ -72,6 +98,14 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter {
             .logoutSuccessUrl("/resources/public/login.html")
             .permitAll();
 
+        if (TOKEN_AUTH_MODE) {
+            LOGGER.info("launching the application in stateless token authentication mode");
+            http.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+            http.csrf().csrfTokenRepository(new CookieCsrfTokenRepository());
+            http.addFilterBefore(new TokenAuthenticationFilter(authTokenService), UsernamePasswordAuthenticationFilter.class);
+            http.logout().deleteCookies(TokenAuthenticationFilter.TOKEN_COOKIE);
+        }
+
         if ("true".equals(System.getProperty("httpsOnly"))) {
             LOGGER.info("launching the application in HTTPS-only mode");
             http.requiresChannel().anyRequest().requiresSecure();
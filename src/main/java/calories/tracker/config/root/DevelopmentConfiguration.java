@@ -2,22 +2,27 @@ package calories.tracker.config.root;
 
 
 import calories.tracker.app.init.TestDataInitializer;
+import calories.tracker.app.model.AbstractEntity;
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import org.flywaydb.core.Flyway;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Profile;
 import org.springframework.instrument.classloading.InstrumentationLoadTimeWeaver;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import javax.sql.DataSource;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  *
- * Development specific configuration - creates a localhost postgresql datasource,
- * sets hibernate on create drop mode and inserts some test data on the database.
+ * Development specific configuration - creates a pooled localhost postgresql datasource,
+ * recreates the schema with the migrations on startup and inserts some test data on the database.
  *
  * Set -Dspring.profiles.active=development to activate this config.
  *
@@ -33,17 +38,29 @@ public class DevelopmentConfiguration {
     }
 
     @Bean(name = "datasource")
-    public DriverManagerDataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName("org.postgresql.Driver");
-        dataSource.setUrl("jdbc:postgresql://localhost:5432/calorie-tracker?loglevel=0");
-        dataSource.setUsername("postgres");
-        dataSource.setPassword("postgres");
-        return dataSource;
+    public DataSource dataSource(MetricRegistry metricRegistry) {
+        HikariConfig config = PooledDataSourceConfig.poolConfig("datasource", metricRegistry);
+        config.setDriverClassName("org.postgresql.Driver");
+        config.setJdbcUrl("jdbc:postgresql://localhost:5432/calorie-tracker?loglevel=0");
+        config.setUsername("postgres");
+        config.setPassword("postgres");
+        // prepared statements are cached by the driver, per connection
+        config.addDataSourceProperty("preparedStatementCacheQueries", PooledDataSourceConfig.STATEMENT_CACHE_SIZE);
+        return PooledDataSourceConfig.dataSource(config, metricRegistry);
+    }
+
+    @Bean
+    public Flyway flyway(DataSource dataSource) {
+        Flyway flyway = SchemaMigrationConfig.flyway(dataSource, SchemaMigrationConfig.POSTGRESQL);
+        // the database is recreated on each start, along with its test data
+        flyway.clean();
+        flyway.migrate();
+        return flyway;
     }
 
     @Bean(name = "entityManagerFactory")
-    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DriverManagerDataSource dataSource) {
+    @DependsOn("flyway")
+    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
 
         LocalContainerEntityManagerFactoryBean entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
         entityManagerFactoryBean.setDataSource(dataSource);
@@ -52,10 +69,19 @@ public class DevelopmentConfiguration {
         entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
 
         Map<String, Object> jpaProperties = new HashMap<String, Object>();
-        jpaProperties.put("hibernate.hbm2ddl.auto", "create-drop");
+        jpaProperties.put("hibernate.hbm2ddl.auto", "validate");
         jpaProperties.put("hibernate.show_sql", "true");
         jpaProperties.put("hibernate.format_sql", "true");
         jpaProperties.put("hibernate.use_sql_comments", "true");
+        jpaProperties.put("hibernate.jdbc.batch_size", AbstractEntity.ID_BLOCK_SIZE);
+        jpaProperties.put("hibernate.jdbc.batch_versioned_data", "true");
+        jpaProperties.put("hibernate.order_inserts", "true");
+        jpaProperties.put("hibernate.order_updates", "true");
+        jpaProperties.put("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        jpaProperties.put("hibernate.cache.use_second_level_cache", "true");
+        jpaProperties.put("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.EhCacheRegionFactory");
+        jpaProperties.put("net.sf.ehcache.configurationResourceName", "/ehcache.xml");
+        jpaProperties.put("hibernate.generate_statistics", "true");
         jpaProperties.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
         entityManagerFactoryBean.setJpaPropertyMap(jpaProperties);
 
@@ -0,0 +1,90 @@
+package calories.tracker.config.root;
+
+
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.lang3.NotImplementedException;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * Common settings of the connection pools used by the profile specific configurations.
+ *
+ * The pool can be tuned with the following system properties:
+ *
+ * -Ddb.pool.minIdle - the minimum number of idle connections kept open (default 2)
+ * -Ddb.pool.maxSize - the maximum number of connections (default 10)
+ * -Ddb.pool.connectionTimeoutMs - how long to wait for a connection before failing (default 5000)
+ * -Ddb.pool.leakDetectionThresholdMs - log connections not returned to the pool after this time (default 60000, 0 to disable)
+ * -Ddb.pool.statementCacheSize - the number of prepared statements cached per connection, for drivers that support it (default 256)
+ *
+ * Read-only transactions can be sent to replica databases, @see ReplicaRoutingDataSource:
+ *
+ * -Ddb.replicas - comma separated JDBC urls of the replicas, with the same credentials as the primary (default none)
+ * -Ddb.replicas.stickinessMs - how long a user reads from the primary after a write (default 5000)
+ * -Ddb.replicas.retryAfterMs - how long a replica that failed to connect is skipped (default 30000)
+ *
+ * The pool gauges (active, idle, pending connections) and the connection acquisition timer are published in the
+ * metric registry under [pool name].pool.*
+ *
+ */
+public final class PooledDataSourceConfig {
+
+    public static final int STATEMENT_CACHE_SIZE = Integer.getInteger("db.pool.statementCacheSize", 256);
+
+    private PooledDataSourceConfig() {
+        throw new NotImplementedException("Utility classes cannot be instantiated");
+    }
+
+    /**
+     *
+     * @param poolName - the name of the pool, used as metrics prefix
+     * @param metricRegistry - the registry where the pool metrics are published
+     * @return - a pool configuration with the common settings, the connection settings are left to the caller
+     */
+    public static HikariConfig poolConfig(String poolName, MetricRegistry metricRegistry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setMinimumIdle(Integer.getInteger("db.pool.minIdle", 2));
+        config.setMaximumPoolSize(Integer.getInteger("db.pool.maxSize", 10));
+        config.setConnectionTimeout(Long.getLong("db.pool.connectionTimeoutMs", 5000L));
+        config.setLeakDetectionThreshold(Long.getLong("db.pool.leakDetectionThresholdMs", 60000L));
+        config.setMetricRegistry(metricRegistry);
+        return config;
+    }
+
+    /**
+     *
+     * @param config - the complete configuration of the primary database pool
+     * @param metricRegistry - the registry where the pool and routing metrics are published
+     * @return - the pool of the primary database, routed along with pools of the replicas if any are configured
+     */
+    public static DataSource dataSource(HikariConfig config, MetricRegistry metricRegistry) {
+        String replicaUrls = System.getProperty("db.replicas", "").trim();
+
+        if (replicaUrls.isEmpty()) {
+            return new HikariDataSource(config);
+        }
+
+        List<DataSource> replicas = new ArrayList<>();
+
+        for (String replicaUrl : replicaUrls.split(",")) {
+            HikariConfig replicaConfig = new HikariConfig();
+            config.copyState(replicaConfig);
+            replicaConfig.setPoolName(config.getPoolName() + "-replica-" + (replicas.size() + 1));
+            replicaConfig.setJdbcUrl(replicaUrl.trim());
+            replicaConfig.setReadOnly(true);
+            // a replica that is down must not fail the startup, reads go to the primary until it is back
+            replicaConfig.setInitializationFailFast(false);
+            replicas.add(new HikariDataSource(replicaConfig));
+        }
+
+        return new ReplicaRoutingDataSource(new HikariDataSource(config), replicas,
+                Long.getLong("db.replicas.stickinessMs", 5000L), Long.getLong("db.replicas.retryAfterMs", 30000L),
+                metricRegistry).lazy();
+    }
+}
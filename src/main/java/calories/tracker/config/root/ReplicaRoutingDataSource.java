@@ -0,0 +1,207 @@
+package calories.tracker.config.root;
+
+
+import calories.tracker.app.cache.BoundedCache;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * Data source that sends read-only transactions to the replica databases, and everything else to the primary.
+ *
+ * - the replicas are used in turn, a replica that fails to give a connection is skipped for a while, and reads
+ *   go back to the primary if no replica is available
+ * - a user that has just committed a write keeps reading from the primary for a short while, so that their own
+ *   changes are not missed while the replicas catch up
+ *
+ * The routing depends on the transaction being read-only, so the connection must only be fetched once the
+ * transaction has started, @see #lazy()
+ *
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final long retryAfterMillis;
+
+    private final BoundedCache<String, Boolean> recentWriters;
+    private final Counter failovers;
+
+    private static class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile long downUntil;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        private boolean isAvailable(long now) {
+            return downUntil <= now;
+        }
+    }
+
+    /**
+     *
+     * @param primary - the data source of the primary database
+     * @param replicas - the data sources of the replica databases
+     * @param stickinessMillis - how long a user keeps reading from the primary after a write
+     * @param retryAfterMillis - how long a failed replica is skipped
+     * @param metricRegistry - the registry where the routing metrics are published, under db.routing.*
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long stickinessMillis,
+                                    long retryAfterMillis, MetricRegistry metricRegistry) {
+        this.primary = primary;
+        this.retryAfterMillis = retryAfterMillis;
+
+        for (DataSource replica : replicas) {
+            this.replicas.add(new Replica("replica-" + (this.replicas.size() + 1), replica));
+        }
+
+        this.recentWriters = new BoundedCache<>("recentWriters", 10000, stickinessMillis, metricRegistry);
+        this.failovers = metricRegistry.counter(MetricRegistry.name("db", "routing", "failovers"));
+    }
+
+    /**
+     *
+     * @return - this data source, behind a proxy that only fetches the connection when the first statement is run
+     */
+    public LazyConnectionDataSourceProxy lazy() {
+        return new ClosingLazyConnectionDataSourceProxy(this);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = selectReplica();
+
+        if (replica == null) {
+            return primary.getConnection();
+        }
+
+        try {
+            return replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            markUnavailable(replica, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Replica replica = selectReplica();
+
+        if (replica == null) {
+            return primary.getConnection(username, password);
+        }
+
+        try {
+            return replica.dataSource.getConnection(username, password);
+        } catch (SQLException e) {
+            markUnavailable(replica, e);
+            return primary.getConnection(username, password);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(primary);
+
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+    }
+
+    private Replica selectReplica() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+
+        String username = currentUsername();
+
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (username != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        recentWriters.put(username, Boolean.TRUE);
+                    }
+                });
+            }
+            return null;
+        }
+
+        if (username != null && recentWriters.get(username) != null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        int start = nextReplica.getAndIncrement();
+
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+
+            if (replica.isAvailable(now)) {
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    private void markUnavailable(Replica replica, SQLException e) {
+        LOGGER.warn("Could not connect to " + replica.name + ", reading from the primary for the next "
+                + retryAfterMillis + " ms.", e);
+        replica.downUntil = System.currentTimeMillis() + retryAfterMillis;
+        failovers.inc();
+    }
+
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : null;
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    /**
+     * the lazy proxy, closing the routed data sources when the application stops
+     */
+    private static class ClosingLazyConnectionDataSourceProxy extends LazyConnectionDataSourceProxy implements Closeable {
+
+        private final ReplicaRoutingDataSource routingDataSource;
+
+        private ClosingLazyConnectionDataSourceProxy(ReplicaRoutingDataSource routingDataSource) {
+            super(routingDataSource);
+            this.routingDataSource = routingDataSource;
+        }
+
+        @Override
+        public void close() throws IOException {
+            routingDataSource.close();
+        }
+    }
+}
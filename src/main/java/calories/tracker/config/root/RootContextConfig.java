@@ -1,34 +1,54 @@
 package calories.tracker.config.root;
 
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
 
 /**
  *
  * The root context configuration of the application - the beans in this context will be globally visible
  * in all servlet contexts.
  *
+ * Application metrics are collected in a single metric registry, and published via JMX under the metrics domain.
+ *
+ * Scheduling is enabled for the periodic maintenance jobs of the services.
+ *
  */
 
 @Configuration
-@ComponentScan({"calories.tracker.app.services", "calories.tracker.app.dao",
+@EnableScheduling
+@ComponentScan({"calories.tracker.app.services", "calories.tracker.app.dao", "calories.tracker.app.cache",
         "calories.tracker.app.init", " calories.tracker.app.security"})
 public class RootContextConfig {
 
     @Bean(name = "transactionManager")
     public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
-                                                         DriverManagerDataSource dataSource) {
+                                                         DataSource dataSource) {
         JpaTransactionManager transactionManager = new JpaTransactionManager();
         transactionManager.setEntityManagerFactory(entityManagerFactory);
         transactionManager.setDataSource(dataSource);
         return transactionManager;
     }
 
+    @Bean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    @Bean(destroyMethod = "stop")
+    public JmxReporter jmxReporter(MetricRegistry metricRegistry) {
+        JmxReporter reporter = JmxReporter.forRegistry(metricRegistry).build();
+        reporter.start();
+        return reporter;
+    }
+
 }
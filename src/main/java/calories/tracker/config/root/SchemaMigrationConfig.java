@@ -0,0 +1,45 @@
+package calories.tracker.config.root;
+
+
+import org.apache.commons.lang3.NotImplementedException;
+import org.flywaydb.core.Flyway;
+
+import javax.sql.DataSource;
+
+/**
+ *
+ * Common settings of the schema migrations used by the profile specific configurations.
+ *
+ * The database schema is owned by the versioned migration scripts under db/migration, which are applied on startup
+ * before the entity manager factory is created. Hibernate only validates the migrated schema against the entity
+ * mappings, and fails the startup if they drifted apart - a mapping change needs a new migration script.
+ *
+ * Indexes that only some databases support (expression and trigram indexes, on PostgreSQL) are created by the
+ * scripts under db/vendor/{vendor}, applied along with the common ones in version order.
+ *
+ */
+public final class SchemaMigrationConfig {
+
+    public static final String MIGRATIONS_LOCATION = "classpath:db/migration";
+    public static final String VENDOR_MIGRATIONS_LOCATION = "classpath:db/vendor/";
+
+    public static final String POSTGRESQL = "postgresql";
+    public static final String HSQLDB = "hsqldb";
+
+    private SchemaMigrationConfig() {
+        throw new NotImplementedException("Utility classes cannot be instantiated");
+    }
+
+    /**
+     *
+     * @param dataSource - the datasource of the migrated database
+     * @param vendor - the database vendor, POSTGRESQL or HSQLDB
+     * @return - the migrations of the application schema, not yet applied
+     */
+    public static Flyway flyway(DataSource dataSource, String vendor) {
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(dataSource);
+        flyway.setLocations(MIGRATIONS_LOCATION, VENDOR_MIGRATIONS_LOCATION + vendor);
+        return flyway;
+    }
+}
@@ -2,22 +2,28 @@ package calories.tracker.config.root;
 
 
 import calories.tracker.app.init.TestDataInitializer;
+import calories.tracker.app.model.AbstractEntity;
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import org.flywaydb.core.Flyway;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Profile;
 import org.springframework.instrument.classloading.InstrumentationLoadTimeWeaver;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import javax.sql.DataSource;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
- * Integration testing specific configuration - creates a in-memory datasource,
- * sets hibernate on create drop mode and inserts some test data on the database.
+ * Integration testing specific configuration - creates a pooled in-memory datasource,
+ * creates the schema with the migrations and inserts some test data on the database.
  *
  * This allows to clone the project repository and start a running application with the command
  *
@@ -32,23 +38,38 @@ import java.util.Map;
 @EnableTransactionManagement
 public class TestConfiguration {
 
+    private static final AtomicInteger DATABASE_COUNT = new AtomicInteger();
+
     @Bean(initMethod = "init")
     public TestDataInitializer initTestData() {
         return new TestDataInitializer();
     }
 
     @Bean(name = "datasource")
-    public DriverManagerDataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName(org.hsqldb.jdbcDriver.class.getName());
-        dataSource.setUrl("jdbc:hsqldb:mem:mydb");
-        dataSource.setUsername("sa");
-        dataSource.setPassword("jdbc:hsqldb:mem:mydb");
-        return dataSource;
+    public DataSource dataSource(MetricRegistry metricRegistry) {
+        HikariConfig config = PooledDataSourceConfig.poolConfig("datasource", metricRegistry);
+        config.setDriverClassName(org.hsqldb.jdbcDriver.class.getName());
+        // each application context gets its own database, as the ids of a recreated schema would otherwise
+        // collide with the id blocks already allocated by another context. The MVCC mode locks rows rather than
+        // tables, so that concurrent transactions interleave like they do on PostgreSQL
+        config.setJdbcUrl("jdbc:hsqldb:mem:mydb" + DATABASE_COUNT.incrementAndGet() + ";hsqldb.tx=mvcc");
+        config.setUsername("sa");
+        config.setPassword("jdbc:hsqldb:mem:mydb");
+        return PooledDataSourceConfig.dataSource(config, metricRegistry);
+    }
+
+    @Bean
+    public Flyway flyway(DataSource dataSource) {
+        Flyway flyway = SchemaMigrationConfig.flyway(dataSource, SchemaMigrationConfig.HSQLDB);
+        // the database is recreated on each start, along with its test data
+        flyway.clean();
+        flyway.migrate();
+        return flyway;
     }
 
     @Bean(name = "entityManagerFactory")
-    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DriverManagerDataSource dataSource) {
+    @DependsOn("flyway")
+    public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
 
         LocalContainerEntityManagerFactoryBean entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
         entityManagerFactoryBean.setDataSource(dataSource);
@@ -57,10 +78,19 @@ public class TestConfiguration {
         entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
 
         Map<String, Object> jpaProperties = new HashMap<String, Object>();
-        jpaProperties.put("hibernate.hbm2ddl.auto", "create");
+        jpaProperties.put("hibernate.hbm2ddl.auto", "validate");
         jpaProperties.put("hibernate.show_sql", "true");
         jpaProperties.put("hibernate.format_sql", "true");
         jpaProperties.put("hibernate.use_sql_comments", "true");
+        jpaProperties.put("hibernate.jdbc.batch_size", AbstractEntity.ID_BLOCK_SIZE);
+        jpaProperties.put("hibernate.jdbc.batch_versioned_data", "true");
+        jpaProperties.put("hibernate.order_inserts", "true");
+        jpaProperties.put("hibernate.order_updates", "true");
+        jpaProperties.put("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        jpaProperties.put("hibernate.cache.use_second_level_cache", "true");
+        jpaProperties.put("hibernate.cache.region.factory_class", "org.hibernate.cache.ehcache.EhCacheRegionFactory");
+        jpaProperties.put("net.sf.ehcache.configurationResourceName", "/ehcache.xml");
+        jpaProperties.put("hibernate.generate_statistics", "true");
         entityManagerFactoryBean.setJpaPropertyMap(jpaProperties);
 
         return entityManagerFactoryBean;
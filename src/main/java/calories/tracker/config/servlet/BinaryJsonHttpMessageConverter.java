@@ -0,0 +1,47 @@
+package calories.tracker.config.servlet;
+
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ *
+ * Reads and writes the same DTOs as the JSON converter, with the same serializers, but in one of the binary
+ * encodings of the JSON data model - Smile or CBOR - for the clients that ask for it in their Accept or
+ * Content-Type headers.
+ *
+ */
+public class BinaryJsonHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+    public static final MediaType CBOR = new MediaType("application", "cbor");
+
+    private BinaryJsonHttpMessageConverter(JsonFactory factory, MediaType mediaType) {
+        super(objectMapper(factory), mediaType);
+    }
+
+    public static BinaryJsonHttpMessageConverter smile() {
+        return new BinaryJsonHttpMessageConverter(new SmileFactory(), SMILE);
+    }
+
+    public static BinaryJsonHttpMessageConverter cbor() {
+        return new BinaryJsonHttpMessageConverter(new CBORFactory(), CBOR);
+    }
+
+    /**
+     * a mapper configured like the one of the JSON converter, but on top of the binary factory
+     */
+    @SuppressWarnings("unchecked")
+    private static ObjectMapper objectMapper(JsonFactory factory) {
+        ObjectMapper objectMapper = new ObjectMapper(factory);
+        // the unchecked warning is the generic varargs array of modulesToInstall, the only one taking module classes
+        Jackson2ObjectMapperBuilder.json().modulesToInstall(AfterburnerModule.class).configure(objectMapper);
+        return objectMapper;
+    }
+}
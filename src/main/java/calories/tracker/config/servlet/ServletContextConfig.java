@@ -1,12 +1,17 @@
 package calories.tracker.config.servlet;
 
 
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import java.util.List;
+
 /**
  *
  * Spring MVC config for the servlet context in the application.
@@ -24,4 +29,20 @@ public class ServletContextConfig extends WebMvcConfigurerAdapter {
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         registry.addResourceHandler("/resources/**").addResourceLocations("/resources/");
     }
+
+    /**
+     * the JSON replies are written with generated bytecode accessors instead of reflection - plain JSON stays the
+     * default, and Smile or CBOR are used for the clients that accept or send them
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter instanceof MappingJackson2HttpMessageConverter) {
+                ((MappingJackson2HttpMessageConverter) converter).getObjectMapper().registerModule(new AfterburnerModule());
+            }
+        }
+
+        converters.add(BinaryJsonHttpMessageConverter.smile());
+        converters.add(BinaryJsonHttpMessageConverter.cbor());
+    }
 }
@@ -0,0 +1,58 @@
+-- the schema as previously generated by hibernate from the entity mappings
+
+create sequence User_SEQ start with 1 increment by 50;
+create sequence Meal_SEQ start with 1 increment by 50;
+create sequence Firm_SEQ start with 1 increment by 50;
+create sequence DailyCalories_SEQ start with 1 increment by 50;
+
+create table USERS (
+    id bigint not null,
+    UUID varchar(255),
+    version bigint,
+    email varchar(255),
+    maxCaloriesPerDay bigint,
+    passwordDigest varchar(255),
+    username varchar(255),
+    primary key (id)
+);
+
+create table MEALS (
+    id bigint not null,
+    UUID varchar(255),
+    version bigint,
+    calories bigint,
+    date timestamp,
+    description varchar(255),
+    time time,
+    user_id bigint,
+    primary key (id)
+);
+
+create table FIRMS (
+    id bigint not null,
+    UUID varchar(255),
+    version bigint,
+    account_num varchar(255),
+    address varchar(255),
+    dic varchar(255),
+    ic_dph varchar(255),
+    ico varchar(255),
+    name varchar(255),
+    user_id bigint,
+    primary key (id)
+);
+
+create table DAILY_CALORIES (
+    id bigint not null,
+    UUID varchar(255),
+    version bigint,
+    calories bigint,
+    day date,
+    mealCount bigint,
+    user_id bigint,
+    primary key (id)
+);
+
+alter table MEALS add constraint FK_MEALS_USER foreign key (user_id) references USERS;
+alter table FIRMS add constraint FK_FIRMS_USER foreign key (user_id) references USERS;
+alter table DAILY_CALORIES add constraint FK_DAILY_CALORIES_USER foreign key (user_id) references USERS;
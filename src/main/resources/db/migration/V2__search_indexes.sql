@@ -0,0 +1,10 @@
+-- usernames are looked up on every request
+alter table USERS add constraint UK_USERS_USERNAME unique (username);
+
+-- meal searches filter by user and date range, and are sorted by date desc, time and id
+create index IDX_MEALS_USER_DATE_TIME on MEALS (user_id, date desc, time, id);
+
+create index IDX_FIRMS_USER on FIRMS (user_id);
+
+-- one total per user and day, also used for the point lookups of the totals
+alter table DAILY_CALORIES add constraint UK_DAILY_CALORIES_USER_DAY unique (user_id, day);
@@ -0,0 +1,7 @@
+-- firms are looked up by their exact identifiers within the firms of a user - the user_id index is superseded,
+-- as each of these starts with it
+create index IDX_FIRMS_USER_ICO on FIRMS (user_id, ico);
+create index IDX_FIRMS_USER_DIC on FIRMS (user_id, dic);
+create index IDX_FIRMS_USER_IC_DPH on FIRMS (user_id, ic_dph);
+
+drop index IDX_FIRMS_USER;
@@ -0,0 +1,77 @@
+package calories.tracker.app;
+
+
+import calories.tracker.app.security.AuthTokenService;
+import org.junit.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AuthTokenServiceTest {
+
+    private AuthTokenService authTokenService = new AuthTokenService("secret", 60);
+
+    private List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN");
+
+    @Test
+    public void testValidToken() {
+        Authentication authentication = authTokenService.authenticate(
+                authTokenService.issueToken(UserServiceTest.USERNAME, authorities));
+
+        assertNotNull("valid token rejected", authentication);
+        assertEquals("token not issued to the user", UserServiceTest.USERNAME, authentication.getName());
+        assertEquals("authorities not signed in the token", AuthorityUtils.authorityListToSet(authorities),
+                AuthorityUtils.authorityListToSet(authentication.getAuthorities()));
+    }
+
+    @Test
+    public void testOtherSecret() {
+        String token = new AuthTokenService("other", 60).issueToken(UserServiceTest.USERNAME, authorities);
+        assertNull("token signed with another secret accepted", authTokenService.authenticate(token));
+    }
+
+    @Test
+    public void testTamperedToken() {
+        String token = authTokenService.issueToken(UserServiceTest.USERNAME,
+                AuthorityUtils.createAuthorityList("ROLE_USER"));
+        String[] parts = token.split("\\.");
+        String expiry = parts[3];
+        String tampered = token.replace("." + expiry + ".", "." + (Long.parseLong(expiry) + 1000) + ".");
+        assertNull("tampered expiry accepted", authTokenService.authenticate(tampered));
+
+        String admin = authTokenService.issueToken(UserServiceTest.USERNAME, authorities).split("\\.")[1];
+        assertNull("tampered authorities accepted", authTokenService.authenticate(token.replace(parts[1], admin)));
+    }
+
+    @Test
+    public void testExpiredToken() {
+        String token = new AuthTokenService("secret", -1).issueToken(UserServiceTest.USERNAME, authorities);
+        assertNull("expired token accepted", authTokenService.authenticate(token));
+    }
+
+    @Test
+    public void testRevokedOnPasswordChange() throws Exception {
+        String token = authTokenService.issueToken(UserServiceTest.USERNAME, authorities);
+        String otherUserToken = authTokenService.issueToken("test456", authorities);
+
+        authTokenService.revokeTokens(UserServiceTest.USERNAME);
+        Thread.sleep(2);
+
+        assertNull("token issued before the password change accepted", authTokenService.authenticate(token));
+        assertNotNull("token of another user revoked", authTokenService.authenticate(otherUserToken));
+        assertNotNull("token issued after the password change rejected",
+                authTokenService.authenticate(authTokenService.issueToken(UserServiceTest.USERNAME, authorities)));
+    }
+
+    @Test
+    public void testMalformedToken() {
+        assertNull("malformed token accepted", authTokenService.authenticate("not-a-token"));
+        assertNull("malformed token accepted", authTokenService.authenticate("a.b.c.d.e"));
+    }
+}
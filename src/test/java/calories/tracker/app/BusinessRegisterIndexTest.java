@@ -0,0 +1,133 @@
+package calories.tracker.app;
+
+import calories.tracker.app.dao.BusinessRegisterIndex;
+import calories.tracker.app.dao.BusinessRegisterIndexBuilder;
+import calories.tracker.app.dto.serialization.CsvRecordReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BusinessRegisterIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBuildFromCsv() throws IOException {
+        Path dump = write("register.csv",
+                "name,ico,legal_form,dic,ic_dph,address\r\n" +
+                "\"Alfa Stav, s.r.o.\",35700001,112,2020000001,SK2020000001,\"Hlavna 1, Bratislava\"\r\n" +
+                "Beta Trans s.r.o.,00035702,112,2020000002,,Nova 7\r\n" +
+                "no ico,,112,2020000003,,\r\n" +
+                "Zelenina \u010Cierny,36 000 003,101,,,\r\n");
+        Path indexFile = folder.getRoot().toPath().resolve("register.idx");
+
+        assertEquals(3, BusinessRegisterIndexBuilder.build(dump, indexFile));
+
+        BusinessRegisterIndex index = BusinessRegisterIndex.open(indexFile);
+        assertEquals(3, index.size());
+
+        int alfa = index.findByIco("35700001");
+        assertEquals("Alfa Stav, s.r.o.", index.getName(alfa));
+        assertEquals("Hlavna 1, Bratislava", index.getAddress(alfa));
+        assertEquals("SK2020000001", index.getIcDph(alfa));
+        assertTrue(index.dicMatches(alfa, "2020000001"));
+        assertTrue(index.dicMatches(alfa, "SK 2020000001"));
+        assertFalse(index.dicMatches(alfa, "2020000002"));
+        assertTrue(index.icDphMatches(alfa, "sk2020000001"));
+        assertFalse(index.icDphMatches(alfa, "SK2020000002"));
+        assertEquals(alfa, index.findByDic("2020000001"));
+
+        int beta = index.findByIco("35702");
+        assertEquals("00035702", index.getIco(beta));
+        assertEquals(beta, index.findByDic("SK2020000002"));
+        assertFalse(index.hasIcDph(beta));
+        assertNull(index.getIcDph(beta));
+
+        int zelenina = index.findByIco("36000003");
+        assertEquals("Zelenina \u010Cierny", index.getName(zelenina));
+        assertFalse(index.hasDic(zelenina));
+
+        assertEquals(-1, index.findByIco("35700009"));
+        assertEquals(-1, index.findByIco("not an ico"));
+        assertEquals(-1, index.findByDic("2020000003"));
+        assertEquals(-1, index.findByDic(null));
+    }
+
+    @Test
+    public void testBuildFromJson() throws IOException {
+        Path dump = write("register.json", "[" +
+                "{\"ico\": 35700001, \"name\": \"Alfa Stav s.r.o.\", \"history\": [{\"name\": \"Alfa\"}], \"dic\": \"2020000001\"},\n" +
+                "{\"ico\": \"35700002\", \"name\": \"Beta Trans s.r.o.\", \"address\": null},\n" +
+                "{\"ico\": \"35700001\", \"name\": \"Alfa Stav a.s.\", \"dic\": \"2020000001\"}" +
+                "]");
+        Path indexFile = folder.getRoot().toPath().resolve("register.idx");
+
+        assertEquals("the latest entry of an ico is kept", 2, BusinessRegisterIndexBuilder.build(dump, indexFile));
+
+        BusinessRegisterIndex index = BusinessRegisterIndex.open(indexFile);
+        assertEquals("Alfa Stav a.s.", index.getName(index.findByIco("35700001")));
+        assertNull(index.getAddress(index.findByIco("35700002")));
+    }
+
+    @Test
+    public void testRebuildReplacesTheIndex() throws IOException {
+        Path indexFile = folder.getRoot().toPath().resolve("register.idx");
+
+        BusinessRegisterIndexBuilder.build(write("first.csv", "ico,name\n35700001,First\n"), indexFile);
+        BusinessRegisterIndex first = BusinessRegisterIndex.open(indexFile);
+
+        BusinessRegisterIndexBuilder.build(write("second.csv", "ico,name\n35700001,Second\n35700002,Other\n"), indexFile);
+        BusinessRegisterIndex second = BusinessRegisterIndex.open(indexFile);
+
+        assertEquals("the replaced index can still be read", "First", first.getName(first.findByIco("35700001")));
+        assertEquals("Second", second.getName(second.findByIco("35700001")));
+        assertEquals(2, second.size());
+
+        File[] files = folder.getRoot().listFiles((directory, name) -> name.startsWith("register.idx"));
+        assertEquals("no temporary file is left behind", 1, files.length);
+    }
+
+    @Test
+    public void testTooLongCsvRecordsRejected() throws IOException {
+        char[] name = new char[CsvRecordReader.DEFAULT_MAX_FIELD_LENGTH + 1];
+        Arrays.fill(name, 'x');
+
+        Path dump = write("register.csv", "ico,name\n" +
+                "35700001,First\n" +
+                "35700002,\"" + new String(name) + "\"\n" +
+                "35700003,Third\n" +
+                "35700004,\"unbalanced quote\n" +
+                "35700005,Swallowed\n");
+        Path indexFile = folder.getRoot().toPath().resolve("register.idx");
+
+        assertEquals(2, BusinessRegisterIndexBuilder.build(dump, indexFile));
+
+        BusinessRegisterIndex index = BusinessRegisterIndex.open(indexFile);
+        assertEquals("Third", index.getName(index.findByIco("35700003")));
+        assertEquals(-1, index.findByIco("35700002"));
+        assertEquals(-1, index.findByIco("35700005"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCsvWithoutIco() throws IOException {
+        BusinessRegisterIndexBuilder.build(write("register.csv", "name,dic\nAlfa,2020000001\n"),
+                folder.getRoot().toPath().resolve("register.idx"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
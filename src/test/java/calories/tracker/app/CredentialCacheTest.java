@@ -0,0 +1,71 @@
+package calories.tracker.app;
+
+
+import calories.tracker.app.security.CachingDaoAuthenticationProvider;
+import calories.tracker.app.security.SecurityUserDetailsService;
+import calories.tracker.app.security.VerifiedCredentialCache;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes={TestConfiguration.class, RootContextConfig.class})
+public class CredentialCacheTest {
+
+    @Autowired
+    private VerifiedCredentialCache credentialCache;
+
+    @Autowired
+    private SecurityUserDetailsService userDetailsService;
+
+    private CachingDaoAuthenticationProvider authenticationProvider;
+
+    @Before
+    public void init() {
+        authenticationProvider = new CachingDaoAuthenticationProvider(credentialCache);
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(new BCryptPasswordEncoder());
+    }
+
+    @Test
+    public void testVerifiedCredentialsCached() {
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(UserServiceTest.USERNAME, "Password2"));
+        long hits = credentialCache.getHitCount();
+
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(UserServiceTest.USERNAME, "Password2"));
+
+        assertEquals("second authentication should be a cache hit", hits + 1, credentialCache.getHitCount());
+    }
+
+    @Test
+    public void testWrongPasswordNotAccepted() {
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(UserServiceTest.USERNAME, "Password2"));
+
+        try {
+            authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(UserServiceTest.USERNAME, "Wrong2"));
+        } catch (BadCredentialsException e) {
+            assertTrue("wrong password must not be cached",
+                    !credentialCache.isVerified(UserServiceTest.USERNAME, "any", "Wrong2"));
+
+            long hits = credentialCache.getHitCount();
+            authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(UserServiceTest.USERNAME, "Password2"));
+            assertEquals("a wrong password must not flush the verified credentials", hits + 1, credentialCache.getHitCount());
+            return;
+        }
+
+        throw new AssertionError("wrong password was accepted");
+    }
+}
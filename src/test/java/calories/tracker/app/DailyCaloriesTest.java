@@ -0,0 +1,172 @@
+package calories.tracker.app;
+
+
+import calories.tracker.app.dao.DailyCaloriesRepository;
+import calories.tracker.app.dao.UserRepository;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.DailyCalories;
+import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.User;
+import calories.tracker.app.services.DailyCaloriesService;
+import calories.tracker.app.services.MealService;
+import calories.tracker.app.services.UserService;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import com.codahale.metrics.MetricRegistry;
+import org.hibernate.SessionFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static calories.tracker.app.TestUtils.date;
+import static calories.tracker.app.TestUtils.time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes={TestConfiguration.class, RootContextConfig.class})
+public class DailyCaloriesTest {
+
+    @Autowired
+    private MealService mealService;
+
+    @Autowired
+    private DailyCaloriesService dailyCaloriesService;
+
+    @Autowired
+    private DailyCaloriesRepository dailyCaloriesRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    public void testTodaysCaloriesMaintained() {
+        Long before = dailyCaloriesService.findTodaysCalories(UserServiceTest.USERNAME);
+        long initial = before != null ? before : 0;
+
+        List<Meal> saved = mealService.saveMeals(UserServiceTest.USERNAME, Arrays.asList(
+                new MealDTO(null, new Date(), time("08:00"), "breakfast", 300L),
+                new MealDTO(null, new Date(), new Time(System.currentTimeMillis()), "lunch", 700L)));
+
+        assertEquals(Long.valueOf(initial + 1000), dailyCaloriesService.findTodaysCalories(UserServiceTest.USERNAME));
+
+        MealDTO lunch = MealDTO.mapFromMealEntity(saved.get(1));
+        lunch.setCalories(500L);
+        mealService.saveMeals(UserServiceTest.USERNAME, Collections.singletonList(lunch));
+
+        assertEquals(Long.valueOf(initial + 800), dailyCaloriesService.findTodaysCalories(UserServiceTest.USERNAME));
+
+        mealService.deleteMeals(UserServiceTest.USERNAME, Collections.singletonList(saved.get(0).getId()));
+
+        assertEquals(Long.valueOf(initial + 500), dailyCaloriesService.findTodaysCalories(UserServiceTest.USERNAME));
+        assertEquals("totals drifted from the meals", 0, dailyCaloriesService.rebuild(UserServiceTest.USERNAME));
+    }
+
+    @Test
+    public void testRebuildRepairsDrift() {
+        new TransactionTemplate(transactionManager).execute((status) -> dailyCaloriesRepository.addToTotal(
+                userRepository.findUserByUsername(UserServiceTest.USERNAME), DailyCalories.dayOf(date(2015, 1, 3)), 42, 0));
+
+        assertEquals(1, dailyCaloriesService.rebuildAll());
+        assertEquals(0, dailyCaloriesService.rebuildAll());
+    }
+
+    @Test
+    public void testConcurrentFirstMealsOfTheDay() throws Exception {
+        User user = userRepository.findUserByUsername(UserServiceTest.USERNAME);
+        Date day = date(2003, 3, 3);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        // both transactions add to the total before either commits, unless one waits for the other
+        CountDownLatch applied = new CountDownLatch(2);
+
+        try {
+            List<Future<Object>> saves = new ArrayList<>();
+
+            for (long calories : new long[] {300, 500}) {
+                saves.add(executor.submit(() -> new TransactionTemplate(transactionManager).execute((status) -> {
+                    DailyCaloriesService.Changes changes = new DailyCaloriesService.Changes();
+                    changes.mealAdded(day, calories);
+                    dailyCaloriesService.apply(user, changes);
+
+                    applied.countDown();
+                    try {
+                        applied.await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                })));
+            }
+
+            for (Future<Object> save : saves) {
+                save.get(10, TimeUnit.SECONDS);
+            }
+
+            List<DailyCalories> totals = new TransactionTemplate(transactionManager).execute((status) ->
+                    dailyCaloriesRepository.findByUser(userRepository.findUserByUsername(UserServiceTest.USERNAME)));
+            DailyCalories total = totals.stream().filter((dailyCalories) -> dailyCalories.getDay().getTime() == day.getTime())
+                    .findFirst().orElse(null);
+
+            assertTrue("the total of the day was not saved", total != null);
+            assertEquals(Long.valueOf(800), total.getCalories());
+            assertEquals(Long.valueOf(2), total.getMealCount());
+        } finally {
+            executor.shutdown();
+            // the totals of the day have no meals behind them
+            dailyCaloriesService.rebuild(UserServiceTest.USERNAME);
+        }
+    }
+
+    @Test
+    public void testFirstMealOfTheDayKeepsTheUsersCached() {
+        userService.createUser("bystander", "bystander@gmail.com", "Password3");
+        User bystander = userRepository.findUserByUsername("bystander");
+        userRepository.findUserByUsername("bystander");
+
+        Meal meal = mealService.saveMeal(UserServiceTest.USERNAME, null, date(2004, 4, 4), time("08:00"), "first", 300L);
+
+        try {
+            assertTrue("the users were evicted", entityManagerFactory.unwrap(SessionFactory.class).getCache()
+                    .containsEntity(User.class, bystander.getId()));
+
+            long hits = (Long) metricRegistry.getGauges().get("cache.users-by-username.hits").getValue();
+            userRepository.findUserByUsername("bystander");
+            assertEquals("the usernames were evicted", hits + 1,
+                    metricRegistry.getGauges().get("cache.users-by-username.hits").getValue());
+        } finally {
+            mealService.deleteMeals(UserServiceTest.USERNAME, Collections.singletonList(meal.getId()));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package calories.tracker.app;
+
+import calories.tracker.app.cache.FirmNameIndex;
+import calories.tracker.app.dto.FirmDTO;
+import calories.tracker.app.model.Firm;
+import calories.tracker.app.services.FirmService;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes={TestConfiguration.class, RootContextConfig.class})
+public class FirmNameIndexTest {
+
+    @Autowired
+    private FirmService firmService;
+
+    @Autowired
+    private FirmNameIndex firmNameIndex;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @After
+    public void resetIndex() {
+        firmNameIndex.setMaxBytes(FirmNameIndex.DEFAULT_MAX_BYTES);
+        firmNameIndex.setEnabled(true);
+    }
+
+    @Test
+    public void testSuggestByNamePrefix() {
+        List<String> names = names(firmService.suggestFirms(UserServiceTest.USERNAME, "alfa", 10));
+
+        assertEquals(3, names.size());
+        assertTrue(names.containsAll(Arrays.asList("Alfa Stav s.r.o.", "alfa potraviny a.s.", "Alfanet s.r.o.")));
+        assertEquals("a single letter gives no suggestions", 0,
+                firmService.suggestFirms(UserServiceTest.USERNAME, "a", 10).size());
+    }
+
+    @Test
+    public void testSuggestWithTyposAndDiacritics() {
+        assertEquals("Alfa Stav s.r.o.", firmService.suggestFirms(UserServiceTest.USERNAME, "alfs stav", 10).get(0).getName());
+        assertEquals("Alfa Stav s.r.o.", firmService.suggestFirms(UserServiceTest.USERNAME, "Alfa  St\u00E1v", 10).get(0).getName());
+        assertEquals("Pekaren Gama v.o.s.", firmService.suggestFirms(UserServiceTest.USERNAME, "pek\u00E1re\u0148 gama", 10).get(0).getName());
+        assertEquals("the firms starting with the query come first", "Gama 100% Bio s.r.o.",
+                firmService.suggestFirms(UserServiceTest.USERNAME, "gama", 10).get(0).getName());
+        assertEquals("alfa potraviny a.s.", firmService.suggestFirms(UserServiceTest.USERNAME, "Ko\u0161ice", 10).get(0).getName());
+    }
+
+    @Test
+    public void testSavedAndDeletedFirmsAreApplied() {
+        firmService.suggestFirms(UserServiceTest.USERNAME, "alfa", 10);
+        assertTrue(firmNameIndex.size() > 0);
+
+        Firm firm = firmService.saveFirm(UserServiceTest.USERNAME, null, "Zelen\u00FD Mlyn s.r.o.", "Mlynska 2, Senec",
+                "SK3100000000000000000001", "35799101", "2020099101", "SK2020099101");
+
+        try {
+            List<FirmDTO> suggested = firmService.suggestFirms(UserServiceTest.USERNAME, "zeleny mlin", 10);
+            assertEquals(firm.getId(), suggested.get(0).getId());
+        } finally {
+            firmService.deleteFirms(UserServiceTest.USERNAME, Collections.singletonList(firm.getId()));
+        }
+
+        assertFalse(names(firmService.suggestFirms(UserServiceTest.USERNAME, "zeleny mlyn", 10)).contains("Zelen\u00FD Mlyn s.r.o."));
+    }
+
+    @Test
+    public void testTiesRankTheLatestFirmsFirst() {
+        firmService.suggestFirms(UserServiceTest.USERNAME, "alfa", 10);
+
+        Firm older = firmService.saveFirm(UserServiceTest.USERNAME, null, "Rovnaky Nazov s.r.o.", "Dlha 1, Nitra",
+                "SK3100000000000000000002", "35799102", "2020099102", "SK2020099102");
+        Firm newer = firmService.saveFirm(UserServiceTest.USERNAME, null, "Rovnaky Nazov s.r.o.", "Dlha 1, Nitra",
+                "SK3100000000000000000003", "35799103", "2020099103", "SK2020099103");
+
+        try {
+            // the edit indexes the older firm again, after the newer one
+            firmService.saveFirm(UserServiceTest.USERNAME, older.getId(), "Rovnaky Nazov s.r.o.", "Dlha 1, Nitra",
+                    "SK3100000000000000000002", "35799102", "2020099102", "SK2020099102");
+
+            List<FirmDTO> suggested = firmService.suggestFirms(UserServiceTest.USERNAME, "rovnaky nazov", 10);
+            assertEquals(Arrays.asList(newer.getId(), older.getId()),
+                    suggested.stream().map(FirmDTO::getId).collect(Collectors.toList()));
+        } finally {
+            firmService.deleteFirms(UserServiceTest.USERNAME, Arrays.asList(older.getId(), newer.getId()));
+        }
+    }
+
+    @Test
+    public void testEvictionUnderBudget() {
+        firmService.suggestFirms(UserServiceTest.USERNAME, "alfa", 10);
+        assertTrue(firmNameIndex.size() > 0);
+        long evictions = firmNameIndex.getEvictionCount();
+
+        firmNameIndex.setMaxBytes(100);
+
+        assertEquals(0, firmNameIndex.size());
+        assertTrue(firmNameIndex.getEvictionCount() > evictions);
+
+        List<String> names = names(firmService.suggestFirms(UserServiceTest.USERNAME, "gama", 10));
+        assertEquals("too many firms for the budget, the names must be searched in the database",
+                Arrays.asList("Gama 100% Bio s.r.o.", "Pekaren Gama v.o.s."), names);
+        assertEquals(0, firmNameIndex.size());
+
+        long known = metricRegistry.counter("cache.firmNameIndex.tooLarge.hits").getCount();
+        firmService.suggestFirms(UserServiceTest.USERNAME, "gam", 10);
+        assertEquals("the firms of a user known to be too many must not be read again on each keystroke", known + 1,
+                metricRegistry.counter("cache.firmNameIndex.tooLarge.hits").getCount());
+    }
+
+    private List<String> names(List<FirmDTO> firms) {
+        return firms.stream().map(FirmDTO::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,168 @@
+package calories.tracker.app;
+
+import calories.tracker.app.dao.BusinessRegisterIndexBuilder;
+import calories.tracker.app.dto.FirmDTO;
+import calories.tracker.app.dto.FirmValidationDTO;
+import calories.tracker.app.model.Firm;
+import calories.tracker.app.model.FirmCursor;
+import calories.tracker.app.model.FirmNameMatch;
+import calories.tracker.app.model.SearchResult;
+import calories.tracker.app.services.BusinessRegisterService;
+import calories.tracker.app.services.FirmService;
+import calories.tracker.app.services.UserService;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes={TestConfiguration.class, RootContextConfig.class})
+public class FirmServiceTest {
+
+    @Autowired
+    private FirmService firmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BusinessRegisterService businessRegisterService;
+
+    @Test
+    public void testFindFirmsByNamePrefix() {
+        SearchResult<FirmDTO> result = firmService.findFirms(UserServiceTest.USERNAME, "ALFA", FirmNameMatch.PREFIX,
+                null, null, null, null, 1);
+
+        assertEquals(3, result.getResultsCount());
+        assertEquals(Arrays.asList("alfa potraviny a.s.", "Alfa Stav s.r.o.", "Alfanet s.r.o."), names(result));
+        assertNull("a single page has no next page", result.getNextCursor());
+    }
+
+    @Test
+    public void testFindFirmsByNameSubstring() {
+        SearchResult<FirmDTO> result = firmService.findFirms(UserServiceTest.USERNAME, "gama", FirmNameMatch.CONTAINS,
+                null, null, null, null, 1);
+
+        assertEquals(Arrays.asList("Gama 100% Bio s.r.o.", "Pekaren Gama v.o.s."), names(result));
+    }
+
+    @Test
+    public void testNameWildcardsAreMatchedLiterally() {
+        assertEquals(Arrays.asList("Gama 100% Bio s.r.o."), names(firmService.findFirms(UserServiceTest.USERNAME,
+                "0% b", FirmNameMatch.CONTAINS, null, null, null, null, 1)));
+        assertEquals(0, firmService.findFirms(UserServiceTest.USERNAME, "alfa_", FirmNameMatch.PREFIX,
+                null, null, null, null, 1).getResultsCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortNameSubstringIsRejected() {
+        firmService.findFirms(UserServiceTest.USERNAME, "ga", FirmNameMatch.CONTAINS, null, null, null, null, 1);
+    }
+
+    @Test
+    public void testFindFirmsByIdentifiers() {
+        assertEquals(Arrays.asList("Beta Trans s.r.o."), names(firmService.findFirms(UserServiceTest.USERNAME,
+                null, null, " 35700004 ", null, null, null, 1)));
+        assertEquals(Arrays.asList("Alfanet s.r.o."), names(firmService.findFirms(UserServiceTest.USERNAME,
+                null, null, null, "2020000003", "SK2020000003", null, 1)));
+        assertEquals(0, firmService.findFirms(UserServiceTest.USERNAME, "beta", FirmNameMatch.PREFIX,
+                "35700001", null, null, null, 1).getResultsCount());
+        assertEquals(0, firmService.findFirms("test456", null, null, "35700004", null, null, null, 1)
+                .getResultsCount());
+    }
+
+    @Test
+    public void testFindFirmsByCursor() {
+        String username = "firmpager";
+        userService.createUser(username, "firmpager@gmail.com", "Password3");
+
+        List<FirmDTO> firms = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            // the same name for some firms, to page through ties on the name
+            firms.add(new FirmDTO(null, "Firm " + (i % 12), "address", "account", "ico" + i, "dic" + i, "icdph" + i));
+        }
+        firmService.saveFirms(username, firms);
+
+        SearchResult<FirmDTO> page1 = firmService.findFirms(username, null, null, null, null, null, null, 1);
+        assertEquals(15, page1.getResultsCount());
+        assertEquals(FirmService.PAGE_SIZE, page1.getResult().size());
+        assertNotNull("the first page has a next page", page1.getNextCursor());
+
+        SearchResult<FirmDTO> page2 = firmService.findFirms(username, null, null, null, null, null,
+                FirmCursor.decode(page1.getNextCursor()), 2);
+        assertEquals(15, page2.getResultsCount());
+        assertNull("the second page is the last one", page2.getNextCursor());
+
+        SearchResult<FirmDTO> page2ByNumber = firmService.findFirms(username, null, null, null, null, null, null, 2);
+        assertEquals(ids(page2ByNumber), ids(page2));
+        assertEquals(5, page2.getResult().size());
+    }
+
+    @Test
+    public void testSaveFirmChecksTheBusinessRegister() throws IOException {
+        Path indexFile = Files.createTempFile("register", ".idx");
+        Path dump = Files.createTempFile("register", ".csv");
+
+        try {
+            Files.write(dump, ("ico,dic,ic_dph,name,address\n" +
+                    "35799001,2029900001,SK2029900001,Register Firm s.r.o.,Registrova 1\n").getBytes(StandardCharsets.UTF_8));
+            BusinessRegisterIndexBuilder.build(dump, indexFile);
+            businessRegisterService.setIndexFile(indexFile);
+
+            Firm firm = firmService.saveFirm(UserServiceTest.USERNAME, null, "", "", "account", "35799001", null, "");
+            assertEquals("Register Firm s.r.o.", firm.getName());
+            assertEquals("Registrova 1", firm.getAddress());
+            assertEquals("2029900001", firm.getDic());
+            assertEquals("SK2029900001", firm.getIc_dph());
+
+            try {
+                firmService.saveFirm(UserServiceTest.USERNAME, null, "Other", "address", "account", "35799001",
+                        "2029900002", "SK2029900001");
+                fail("a dic differing from the register is rejected");
+            } catch (IllegalArgumentException e) {
+                assertEquals("The dic of the firm 35799001 do not match the business register.", e.getMessage());
+            }
+
+            List<FirmValidationDTO> validations = firmService.validateFirms(Arrays.asList(
+                    new FirmDTO(null, "Register Firm s.r.o.", "Registrova 1", "account", "35799001", "SK2029900001", "SK 2029900001"),
+                    new FirmDTO(null, null, null, null, null, "2029900001", null),
+                    new FirmDTO(null, "Unknown", "address", "account", "35799009", "2029900009", "")));
+
+            assertEquals(FirmValidationDTO.Status.VALID, validations.get(0).getStatus());
+            assertEquals(FirmValidationDTO.Status.COMPLETED, validations.get(1).getStatus());
+            assertEquals("35799001", validations.get(1).getFirm().getIco());
+            assertEquals(FirmValidationDTO.Status.NOT_FOUND, validations.get(2).getStatus());
+        } finally {
+            businessRegisterService.setIndexFile(null);
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(dump);
+        }
+    }
+
+    private static List<String> names(SearchResult<FirmDTO> result) {
+        return result.getResult().stream().map(FirmDTO::getName).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(SearchResult<FirmDTO> result) {
+        return result.getResult().stream().map(FirmDTO::getId).collect(Collectors.toList());
+    }
+}
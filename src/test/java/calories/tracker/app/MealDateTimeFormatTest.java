@@ -0,0 +1,56 @@
+package calories.tracker.app;
+
+
+import calories.tracker.app.dto.serialization.MealDateTimeFormat;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static calories.tracker.app.TestUtils.time;
+import static org.junit.Assert.assertEquals;
+
+public class MealDateTimeFormatTest {
+
+    @Test
+    public void testSameAsSimpleDateFormat() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("CET"));
+
+        for (String text : new String[]{"2015/01/01", "2015/03/29", "2015/10/25", "2016/02/29", "1999/12/31"}) {
+            Date expected = dateFormat.parse(text);
+            assertEquals(expected, MealDateTimeFormat.parseDate(text));
+            assertEquals(text, MealDateTimeFormat.formatDate(expected));
+        }
+
+        assertEquals(dateFormat.parse("2015/01/02"), MealDateTimeFormat.parseDate("2015/1/2"));
+
+        for (String text : new String[]{"00:00", "09:05", "12:00", "23:59"}) {
+            assertEquals(time(text), MealDateTimeFormat.parseTime(text));
+            assertEquals(text, MealDateTimeFormat.formatTime(time(text)));
+        }
+    }
+
+    @Test
+    public void testInvalidValues() {
+        for (String text : new String[]{"", "2015", "2015/13/01", "2015/02/30", "15/01/01", "2015/01/01x", "2015/-1/01"}) {
+            assertInvalid("Invalid date: " + text, () -> MealDateTimeFormat.parseDate(text));
+        }
+
+        for (String text : new String[]{"", "12", "25:00", "12:60", "12:5", "123:00", "ab:cd"}) {
+            assertInvalid("Invalid time: " + text, () -> MealDateTimeFormat.parseTime(text));
+        }
+    }
+
+    private void assertInvalid(String message, Runnable parse) {
+        try {
+            parse.run();
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+            return;
+        }
+        throw new AssertionError("not rejected, expected: " + message);
+    }
+}
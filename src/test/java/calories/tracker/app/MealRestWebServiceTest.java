@@ -1,10 +1,18 @@
 package calories.tracker.app;
 
 import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.dto.serialization.CsvRecordReader;
 import calories.tracker.app.model.Meal;
 import calories.tracker.config.root.RootContextConfig;
 import calories.tracker.config.root.TestConfiguration;
+import calories.tracker.config.servlet.BinaryJsonHttpMessageConverter;
 import calories.tracker.config.servlet.ServletContextConfig;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -19,7 +27,12 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 import sun.security.acl.PrincipalImpl;
 
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -38,6 +51,9 @@ public class MealRestWebServiceTest {
     @Autowired
     private WebApplicationContext wac;
 
+    @Autowired
+    private MetricRegistry metricRegistry;
+
     @Before
     public void init()  {
         mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
@@ -57,6 +73,21 @@ public class MealRestWebServiceTest {
                 .andExpect(jsonPath("$.['meals'].[0].['description']").value("2 -  Chickpea with roasted cauliflower"));
     }
 
+    @Test
+    public void testSearchMealsPageSize() throws Exception {
+        mockMvc.perform(get("/meal")
+                .param("fromDate", "2015/01/01")
+                .param("toDate", "2015/01/02")
+                .param("pageSize", "1")
+                .accept(MediaType.APPLICATION_JSON)
+                .principal(new PrincipalImpl("test123")))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.['meals'].[0]").exists())
+                .andExpect(jsonPath("$.['meals'].[1]").doesNotExist())
+                .andExpect(jsonPath("$.['nextCursor']").exists());
+    }
+
     @Test
     public void testSaveMeals() throws Exception {
         mockMvc.perform(post("/meal")
@@ -70,6 +101,160 @@ public class MealRestWebServiceTest {
                 .andExpect(jsonPath("$.[0].['description']").value("test"));
     }
 
+    @Test
+    public void testBinaryJsonContentNegotiation() throws Exception {
+        JsonNode json = new ObjectMapper().readTree(searchPage(MediaType.APPLICATION_JSON));
+
+        byte[] smile = mockMvc.perform(get("/meal")
+                .param("fromDate", "2015/01/04")
+                .param("toDate", "2015/01/05")
+                .accept(BinaryJsonHttpMessageConverter.SMILE)
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BinaryJsonHttpMessageConverter.SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(json, new ObjectMapper(new SmileFactory()).readTree(smile));
+
+        ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+        byte[] cbor = mockMvc.perform(post("/meal")
+                .contentType(BinaryJsonHttpMessageConverter.CBOR)
+                .content(cborMapper.writeValueAsBytes(Collections.singletonList(
+                        new MealDTO(1L, TestUtils.date(2015, 1, 1), TestUtils.time("11:00"), "test", 100L))))
+                .accept(BinaryJsonHttpMessageConverter.CBOR)
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BinaryJsonHttpMessageConverter.CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals("test", cborMapper.readTree(cbor).get(0).get("description").asText());
+    }
+
+    @Test
+    public void testSearchPageCache() throws Exception {
+        long hits = metricRegistry.counter("cache.mealPages.hits").getCount();
+
+        String before = searchPage();
+        assertEquals(before, searchPage());
+        assertEquals("the repeated search must be a cache hit", hits + 1,
+                metricRegistry.counter("cache.mealPages.hits").getCount());
+
+        mockMvc.perform(post("/meal")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"id\":\"7\", \"date\": \"2015/01/04\",\"time\": \"12:00\", \"calories\":\"2000\", \"description\": \"cached\" }]")
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk());
+
+        String after = searchPage();
+        assertTrue("the saved meal must invalidate the cached page", before.contains("Cowboy Beef") && !after.contains("Cowboy Beef"));
+    }
+
+    private String searchPage() throws Exception {
+        return searchPage(MediaType.ALL);
+    }
+
+    private String searchPage(MediaType accept) throws Exception {
+        return mockMvc.perform(get("/meal")
+                .param("fromDate", "2015/01/04")
+                .param("toDate", "2015/01/05")
+                .accept(accept)
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Test
+    public void testExportMeals() throws Exception {
+        String csv = mockMvc.perform(get("/meal/export")
+                .param("fromDate", "2015/01/02")
+                .param("toDate", "2015/01/03")
+                .param("format", "csv")
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = csv.split("\r\n");
+        assertEquals("id,date,time,description,calories", lines[0]);
+        assertEquals("header and 4 meals expected", 5, lines.length);
+        assertTrue(lines[1], lines[1].contains(",2015/01/03,12:00,"));
+
+        String ndjson = mockMvc.perform(get("/meal/export")
+                .param("fromDate", "2015/01/02")
+                .param("toDate", "2015/01/03")
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson;charset=UTF-8"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(4, ndjson.split("\n").length);
+        assertTrue(ndjson, ndjson.startsWith("{") && ndjson.contains("\"date\":\"2015/01/03\""));
+    }
+
+    @Test
+    public void testImportMeals() throws Exception {
+        System.setProperty("meals.import.chunkSize", "2");
+
+        try {
+            mockMvc.perform(post("/meal/import")
+                    .param("format", "csv")
+                    .content("description,date,time,calories\r\n" +
+                            "\"soup, \"\"hot\"\"\nand bread\",2014/06/01,12:00,400\r\n" +
+                            "breakfast,2014/06/01,25:00,300\r\n" +
+                            "dinner,2014/06/01,19:00,\r\n" +
+                            "snack,2014/06/01,16:00,150\r\n" +
+                            "breakfast,2014/06/01,08:00,300\r\n")
+                    .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.importedCount").value(3))
+                    .andExpect(jsonPath("$.rejectedCount").value(2))
+                    .andExpect(jsonPath("$.errors[0].line").value(4))
+                    .andExpect(jsonPath("$.errors[0].message").value("Invalid time: 25:00"))
+                    .andExpect(jsonPath("$.errors[1].line").value(5));
+
+            mockMvc.perform(post("/meal/import")
+                    .content("{\"date\":\"2014/06/02\",\"time\":\"12:00\",\"description\":\"lunch\",\"calories\":700}\n" +
+                            "{\"date\":\"2014/06/02\",\n" +
+                            "{\"date\":\"2014/06/02\",\"time\":\"13:00\",\"calories\":100}\n")
+                    .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.importedCount").value(1))
+                    .andExpect(jsonPath("$.rejectedCount").value(2))
+                    .andExpect(jsonPath("$.errors[1].message").value("description is mandatory"));
+        } finally {
+            System.clearProperty("meals.import.chunkSize");
+        }
+
+        String csv = mockMvc.perform(get("/meal/export")
+                .param("fromDate", "2014/05/31")
+                .param("toDate", "2014/06/02")
+                .param("format", "csv")
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = csv.split("\r\n");
+        assertEquals("header and 4 meals expected", 5, lines.length);
+        assertTrue(lines[1], lines[1].endsWith(",2014/06/02,12:00,lunch,700"));
+        assertTrue(lines[3], lines[3].endsWith(",2014/06/01,12:00,\"soup, \"\"hot\"\"\nand bread\",400"));
+    }
+
+    @Test
+    public void testImportRejectsTooLongRecords() throws Exception {
+        char[] description = new char[CsvRecordReader.DEFAULT_MAX_FIELD_LENGTH + 1];
+        Arrays.fill(description, 'x');
+
+        mockMvc.perform(post("/meal/import")
+                .param("format", "csv")
+                .content("description,date,time,calories\r\n" +
+                        "\"" + new String(description) + "\",2014/07/01,12:00,400\r\n" +
+                        "lunch,2014/07/01,25:00,500\r\n")
+                .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rejectedCount").value(2))
+                .andExpect(jsonPath("$.errors[0].line").value(2))
+                .andExpect(jsonPath("$.errors[1].line").value(3))
+                .andExpect(jsonPath("$.errors[1].message").value("Invalid time: 25:00"));
+    }
+
     @Test
     public void deleteMeals() throws Exception {
         mockMvc.perform(delete("/meal")
@@ -78,7 +263,8 @@ public class MealRestWebServiceTest {
                 .accept(MediaType.APPLICATION_JSON)
                 .principal(new PrincipalImpl(UserServiceTest.USERNAME)))
                 .andDo(print())
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(content().string("1"));
 
         Meal meal = mealRepository.findMealById(14L);
         assertNull("meal no deleted", meal);
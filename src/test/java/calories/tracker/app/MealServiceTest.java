@@ -1,7 +1,9 @@
 package calories.tracker.app;
 
 import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.dto.MealStatsDTO;
 import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.MealCursor;
 import calories.tracker.app.model.SearchResult;
 import calories.tracker.app.services.MealService;
 import calories.tracker.config.root.RootContextConfig;
@@ -17,10 +19,15 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static calories.tracker.app.TestUtils.date;
 import static calories.tracker.app.TestUtils.time;
 import static calories.tracker.app.dto.MealDTO.mapFromMealEntity;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -37,17 +44,48 @@ public class MealServiceTest {
 
     @Test
     public void testFindMealsByDate() {
-        SearchResult<Meal> result = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,2), null ,null, 1);
+        SearchResult<MealDTO> result = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,2), null ,null, 1);
         assertTrue("results not expected, total " + result.getResultsCount(), result.getResultsCount() == 4);
     }
 
     @Test
     public void testFindMealsByDateTime() {
-        SearchResult<Meal> result = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,2),
+        SearchResult<MealDTO> result = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,2),
                 time("11:00") ,time("14:00"), 1);
         assertTrue("results not expected, total " + result.getResultsCount(), result.getResultsCount() == 2);
     }
 
+    @Test
+    public void testFindMealsByCursor() {
+        SearchResult<MealDTO> page1 = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 3);
+        SearchResult<MealDTO> page2 = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 2, 3);
+
+        assertNull("first page cannot have a previous page", page1.getPreviousCursor());
+
+        SearchResult<MealDTO> next = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null,
+                MealCursor.decode(page1.getNextCursor()), 3);
+        assertEquals("next cursor does not match the second page", ids(page2.getResult()), ids(next.getResult()));
+
+        SearchResult<MealDTO> previous = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null,
+                MealCursor.decode(next.getPreviousCursor()), 3);
+        assertEquals("previous cursor does not match the first page", ids(page1.getResult()), ids(previous.getResult()));
+    }
+
+    @Test
+    public void testFindMealsApproximateTotal() {
+        SearchResult<MealDTO> exact = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 2, 3);
+        SearchResult<MealDTO> approximate = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 2, 3, true);
+
+        assertEquals("approximate total differs bellow the cap", exact.getResultsCount(), approximate.getResultsCount());
+        assertFalse("total should not be capped", approximate.isResultsCountCapped());
+    }
+
+    @Test
+    public void testPageSizeCapped() {
+        SearchResult<MealDTO> result = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 1000);
+        assertTrue("page size not capped", result.getResult().size() <= MealService.MAX_PAGE_SIZE);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void fromDateAfterToDate() {
         mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,2), date(2015,1,1), null ,null, 1);
@@ -68,16 +106,49 @@ public class MealServiceTest {
         mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), null, time("12:00") ,time("11:00"), 1);
     }
 
+    @Test
+    public void testFindMealStats() {
+        MealStatsDTO stats = mealService.findMealStats(UserServiceTest.USERNAME, date(2015,1,3), date(2015,1,6), null, null);
+
+        assertEquals(12000, stats.getTotalCalories());
+        assertEquals(8, stats.getMealCount());
+        assertEquals(3000.0, stats.getAverageDailyCalories(), 0);
+        assertEquals(1500.0, stats.getAverageMealCalories(), 0);
+        assertEquals(4, stats.getDaysOverLimit());
+        assertEquals(Arrays.asList("2015/01/03", "2015/01/04", "2015/01/05", "2015/01/06"), stats.getDays().getPeriods());
+        assertArrayEquals(new long[]{3000, 3000, 3000, 3000}, stats.getDays().getCalories());
+        assertNull(stats.getDays().getDayCounts());
+        assertEquals(Arrays.asList("2014/12/29", "2015/01/05"), stats.getWeeks().getPeriods());
+        assertArrayEquals(new long[]{2, 2}, stats.getWeeks().getDayCounts());
+        assertEquals(Arrays.asList("2015/01/01"), stats.getMonths().getPeriods());
+        assertArrayEquals(new long[]{8}, stats.getMonths().getMealCounts());
+
+        MealStatsDTO lunches = mealService.findMealStats(UserServiceTest.USERNAME, date(2015,1,3), date(2015,1,6),
+                null, time("13:00"));
+
+        assertEquals(Long.valueOf(2000), lunches.getLowestDailyCalories());
+        assertEquals(Long.valueOf(2000), lunches.getHighestDailyCalories());
+        assertEquals(4, lunches.getMealCount());
+    }
+
     @Test
     public void deleteMeals() {
-        mealService.deleteMeals(Arrays.asList(15L));
+        int deleted = mealService.deleteMeals(UserServiceTest.USERNAME, Arrays.asList(15L));
         Meal meal = em.find(Meal.class, 15L);
         assertNull("meal was not deleted" , meal);
+        assertEquals(1, deleted);
+    }
+
+    @Test
+    public void deleteMealsOfOtherUser() {
+        int deleted = mealService.deleteMeals("otheruser", Arrays.asList(13L));
+        assertEquals("meal of another user was deleted", 0, deleted);
+        assertNotNull(em.find(Meal.class, 13L));
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void deleteMealsNull() {
-        mealService.deleteMeals(null);
+        mealService.deleteMeals(UserServiceTest.USERNAME, null);
     }
 
     @Test
@@ -100,5 +171,34 @@ public class MealServiceTest {
         assertTrue("calories not as expected: " + m2.getCalories(), m2.getCalories() == 10L);
     }
 
+    @Test
+    public void saveNewAndExistingMeals() {
+        MealDTO existing = mapFromMealEntity(em.find(Meal.class, 3L));
+        existing.setDescription("test3");
+
+        List<MealDTO> meals = Arrays.asList(
+                new MealDTO(null, date(2010,1,1), time("12:00"), "new 1", 100L),
+                existing,
+                new MealDTO(null, date(2010,1,1), time("19:00"), "new 2", 200L));
+
+        List<Meal> saved = mealService.saveMeals(UserServiceTest.USERNAME, meals);
+
+        assertEquals(Arrays.asList("new 1", "test3", "new 2"),
+                saved.stream().map(Meal::getDescription).collect(Collectors.toList()));
+        assertEquals(Long.valueOf(3L), saved.get(1).getId());
+        assertEquals("test3", em.find(Meal.class, 3L).getDescription());
+        assertEquals("new 2", em.find(Meal.class, saved.get(2).getId()).getDescription());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void saveUnknownMeal() {
+        mealService.saveMeals(UserServiceTest.USERNAME,
+                Arrays.asList(new MealDTO(999L, date(2010,1,1), time("12:00"), "unknown", 100L)));
+    }
+
+    private List<Long> ids(List<MealDTO> meals) {
+        return meals.stream().map(MealDTO::getId).collect(Collectors.toList());
+    }
+
 
 }
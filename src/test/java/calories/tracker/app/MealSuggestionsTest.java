@@ -0,0 +1,162 @@
+package calories.tracker.app;
+
+import calories.tracker.app.cache.MealSuggestions;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.dto.MealSuggestionDTO;
+import calories.tracker.app.model.Meal;
+import calories.tracker.app.services.MealService;
+import calories.tracker.app.services.MealsChangedEvent;
+import calories.tracker.app.services.UserService;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static calories.tracker.app.TestUtils.date;
+import static calories.tracker.app.TestUtils.time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes={TestConfiguration.class, RootContextConfig.class})
+public class MealSuggestionsTest {
+
+    @Autowired
+    private MealService mealService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MealSuggestions mealSuggestions;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @After
+    public void resetSuggestions() {
+        mealSuggestions.setMaxBytes(MealSuggestions.DEFAULT_MAX_BYTES);
+        mealSuggestions.setEnabled(true);
+    }
+
+    @Test
+    public void testSuggestByFrequencyAndRecency() {
+        String username = createUser("suggester1");
+
+        mealService.saveMeals(username, Arrays.asList(
+                new MealDTO(null, date(2016,3,1), time("08:00"), "Oatmeal", 300L),
+                new MealDTO(null, date(2016,3,3), time("08:00"), "oatmeal", 350L),
+                new MealDTO(null, date(2016,3,2), time("08:00"), "Oatmeal", 320L),
+                new MealDTO(null, date(2016,3,2), time("10:00"), "Orange juice", 120L),
+                new MealDTO(null, date(2014,1,1), time("12:00"), "Pancakes", 500L),
+                new MealDTO(null, date(2014,1,2), time("12:00"), "Pancakes", 500L),
+                new MealDTO(null, date(2014,1,3), time("12:00"), "Pancakes", 500L),
+                new MealDTO(null, date(2016,3,1), time("19:00"), "Pasta", 700L)));
+
+        List<MealSuggestionDTO> oat = mealService.suggestMeals(username, "OAT", 10);
+        assertEquals(1, oat.size());
+        assertEquals("the spelling and calories of the latest meal", "oatmeal", oat.get(0).getDescription());
+        assertEquals(Long.valueOf(350), oat.get(0).getCalories());
+        assertEquals(3, oat.get(0).getTimesUsed());
+
+        assertEquals(Arrays.asList("oatmeal", "Orange juice"), descriptions(mealService.suggestMeals(username, "o", 10)));
+        assertEquals("a recent meal wins over meals long ago", Arrays.asList("Pasta", "Pancakes"),
+                descriptions(mealService.suggestMeals(username, "pa", 10)));
+        assertEquals(Collections.singletonList("Orange juice"), descriptions(mealService.suggestMeals(username, "\u00D3range  ju", 10)));
+        assertEquals(1, mealService.suggestMeals(username, "o", 1).size());
+        assertEquals(0, mealService.suggestMeals(username, "x", 10).size());
+    }
+
+    @Test
+    public void testSavedAndDeletedMealsAreApplied() {
+        String username = createUser("suggester2");
+
+        mealService.saveMeals(username, Collections.singletonList(
+                new MealDTO(null, date(2016,3,1), time("08:00"), "Yogurt", 150L)));
+        assertEquals(1, mealService.suggestMeals(username, "yog", 10).get(0).getTimesUsed());
+        long misses = mealSuggestions.getMissCount();
+
+        Meal meal = mealService.saveMeal(username, null, date(2016,3,2), time("08:00"), "Yogurt", 180L);
+
+        MealSuggestionDTO yogurt = mealService.suggestMeals(username, "yog", 10).get(0);
+        assertEquals(2, yogurt.getTimesUsed());
+        assertEquals(Long.valueOf(180), yogurt.getCalories());
+        assertEquals("the new meal must be added without reading the meals again", misses, mealSuggestions.getMissCount());
+
+        mealService.deleteMeals(username, Collections.singletonList(meal.getId()));
+
+        yogurt = mealService.suggestMeals(username, "yog", 10).get(0);
+        assertEquals(1, yogurt.getTimesUsed());
+        assertEquals(Long.valueOf(150), yogurt.getCalories());
+    }
+
+    @Test
+    public void testNewMealsToldFromEditsByTheirIds() {
+        String username = createUser("suggester4");
+
+        List<Meal> saved = mealService.saveMeals(username, Collections.singletonList(
+                new MealDTO(null, date(2016,3,1), time("08:00"), "Toast", 200L)));
+        mealService.suggestMeals(username, "to", 10);
+        long misses = mealSuggestions.getMissCount();
+
+        // a meal saved by another instance, with an id from a lower block than the meals read
+        mealSuggestions.onApplicationEvent(MealsChangedEvent.of(this, username, Collections.singletonList(
+                new MealDTO(saved.get(0).getId() - 1, date(2016,3,2), time("08:00"), "Tea", 5L)), Collections.emptyList()));
+
+        assertEquals(Collections.singletonList("Tea"), descriptions(mealService.suggestMeals(username, "te", 10)));
+        assertEquals("the new meal must be added without reading the meals again", misses, mealSuggestions.getMissCount());
+
+        mealService.saveMeal(username, saved.get(0).getId(), date(2016,3,1), time("08:00"), "Toast with jam", 300L);
+
+        assertEquals(Collections.singletonList("Toast with jam"), descriptions(mealService.suggestMeals(username, "to", 10)));
+        assertEquals("an edited meal must read the meals again", misses + 1, mealSuggestions.getMissCount());
+    }
+
+    @Test
+    public void testEvictionUnderBudget() {
+        String username = createUser("suggester3");
+
+        mealService.saveMeals(username, Arrays.asList(
+                new MealDTO(null, date(2016,3,1), time("08:00"), "Muesli", 250L),
+                new MealDTO(null, date(2016,3,2), time("08:00"), "Muesli", 260L)));
+        mealService.suggestMeals(username, "mu", 10);
+        long evictions = mealSuggestions.getEvictionCount();
+
+        mealSuggestions.setMaxBytes(100);
+
+        assertEquals(0, mealSuggestions.size());
+        assertTrue(mealSuggestions.getEvictionCount() > evictions);
+
+        List<MealSuggestionDTO> muesli = mealService.suggestMeals(username, "mu", 10);
+        assertEquals("too many descriptions for the budget, the meals must be searched in the database", 1, muesli.size());
+        assertEquals(Long.valueOf(260), muesli.get(0).getCalories());
+        assertEquals(2, muesli.get(0).getTimesUsed());
+        assertEquals(0, mealSuggestions.size());
+
+        long known = metricRegistry.counter("cache.mealSuggestions.tooLarge.hits").getCount();
+        mealService.suggestMeals(username, "mue", 10);
+        assertEquals("the meals of a user known to have too many descriptions must not be read again on each keystroke",
+                known + 1, metricRegistry.counter("cache.mealSuggestions.tooLarge.hits").getCount());
+    }
+
+    private String createUser(String username) {
+        userService.createUser(username, username + "@gmail.com", "Password3");
+        return username;
+    }
+
+    private List<String> descriptions(List<MealSuggestionDTO> suggestions) {
+        return suggestions.stream().map(MealSuggestionDTO::getDescription).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,112 @@
+package calories.tracker.app;
+
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.SearchResult;
+import calories.tracker.app.services.MealService;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static calories.tracker.app.TestUtils.date;
+import static calories.tracker.app.TestUtils.time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes={TestConfiguration.class, RootContextConfig.class})
+public class MealTextSearchTest {
+
+    @Autowired
+    private MealService mealService;
+
+    @Test
+    public void testSearchByStemmedWords() {
+        SearchResult<MealDTO> result = mealService.searchMeals(UserServiceTest.USERNAME, "SALMON",
+                date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+
+        assertEquals(2, result.getResultsCount());
+        assertTrue(descriptions(result).containsAll(Arrays.asList("3 - Salmon Cakes with Olives, Lemon & Dill",
+                "6 -  Apricot-Chile Glazed Salmon")));
+        assertNull("ranked results have no cursor", result.getNextCursor());
+
+        assertEquals("plurals and verb forms match", Collections.singletonList("6 -  Apricot-Chile Glazed Salmon"),
+                descriptions(mealService.searchMeals(UserServiceTest.USERNAME, "glazing salmons",
+                        date(2015,1,1), date(2015,1,8), null, null, 1, 10)));
+        assertEquals("all the words must match", 0, mealService.searchMeals(UserServiceTest.USERNAME, "salmon duck",
+                date(2015,1,1), date(2015,1,8), null, null, 1, 10).getResultsCount());
+        assertEquals("stop words alone match nothing", 0, mealService.searchMeals(UserServiceTest.USERNAME, "with",
+                date(2015,1,1), date(2015,1,8), null, null, 1, 10).getResultsCount());
+    }
+
+    @Test
+    public void testRankedByRelevance() {
+        SearchResult<MealDTO> result = mealService.searchMeals(UserServiceTest.USERNAME, "chile",
+                date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+
+        assertEquals(4, result.getResultsCount());
+        assertEquals("the shortest descriptions first, then the latest", Arrays.asList(
+                "6 -  Duck Chiles Rellenos", "4 -  Duck Chiles Rellenos"), descriptions(result).subList(0, 2));
+
+        SearchResult<MealDTO> page2 = mealService.searchMeals(UserServiceTest.USERNAME, "chile",
+                date(2015,1,1), date(2015,1,8), null, null, 2, 3);
+        assertEquals(4, page2.getResultsCount());
+        assertEquals(descriptions(result).subList(3, 4), descriptions(page2));
+    }
+
+    @Test
+    public void testCombinedWithDateAndTime() {
+        assertEquals(Collections.singletonList("3 - Salmon Cakes with Olives, Lemon & Dill"),
+                descriptions(mealService.searchMeals(UserServiceTest.USERNAME, "salmon",
+                        date(2015,1,1), date(2015,1,5), null, null, 1, 10)));
+        assertEquals(Collections.singletonList("6 -  Duck Chiles Rellenos"),
+                descriptions(mealService.searchMeals(UserServiceTest.USERNAME, "duck",
+                        date(2015,1,1), date(2015,1,8), time("11:00"), time("13:00"), 1, 10)));
+    }
+
+    @Test
+    public void testSavedAndDeletedMealsAreIndexed() {
+        mealService.searchMeals(UserServiceTest.USERNAME, "salmon", date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+
+        Meal meal = mealService.saveMeal(UserServiceTest.USERNAME, null, date(2015,1,2), time("08:00"),
+                "Smoked salmon bagels", 450L);
+
+        try {
+            assertEquals(Collections.singletonList("Smoked salmon bagels"),
+                    descriptions(mealService.searchMeals(UserServiceTest.USERNAME, "bagel salmon",
+                            date(2015,1,1), date(2015,1,8), null, null, 1, 10)));
+
+            mealService.saveMeal(UserServiceTest.USERNAME, meal.getId(), date(2015,1,2), time("08:00"),
+                    "Smoked trout bagels", 450L);
+
+            assertEquals(0, mealService.searchMeals(UserServiceTest.USERNAME, "bagel salmon",
+                    date(2015,1,1), date(2015,1,8), null, null, 1, 10).getResultsCount());
+        } finally {
+            mealService.deleteMeals(UserServiceTest.USERNAME, Collections.singletonList(meal.getId()));
+        }
+
+        assertEquals(0, mealService.searchMeals(UserServiceTest.USERNAME, "trout",
+                date(2015,1,1), date(2015,1,8), null, null, 1, 10).getResultsCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlankQueryIsRejected() {
+        mealService.searchMeals(UserServiceTest.USERNAME, " ", date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+    }
+
+    private List<String> descriptions(SearchResult<MealDTO> result) {
+        return result.getResult().stream().map(MealDTO::getDescription).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,202 @@
+package calories.tracker.app;
+
+import calories.tracker.app.cache.MealWorkingSet;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.MealCursor;
+import calories.tracker.app.model.SearchResult;
+import calories.tracker.app.services.MealService;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Time;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static calories.tracker.app.TestUtils.date;
+import static calories.tracker.app.TestUtils.time;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes={TestConfiguration.class, RootContextConfig.class})
+public class MealWorkingSetTest {
+
+    @Autowired
+    private MealService mealService;
+
+    @Autowired
+    private MealWorkingSet mealWorkingSet;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @After
+    public void disableWorkingSet() {
+        mealWorkingSet.setEnabled(false);
+        mealWorkingSet.setMaxBytes(MealWorkingSet.DEFAULT_MAX_BYTES);
+    }
+
+    @Test
+    public void testSearchesMatchDatabase() {
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 3));
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 3, 4));
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,3), date(2015,1,5), null, null, 1, 10));
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,2), date(2015,1,7),
+                time("13:00"), time("20:00"), 1, 10));
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,4), date(2015,1,4),
+                null, time("12:00"), 1, 10));
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2016,1,1), date(2016,1,8), null, null, 1, 10));
+
+        SearchResult<MealDTO> page = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 2, 3);
+
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null,
+                MealCursor.decode(page.getNextCursor()), 3));
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null,
+                MealCursor.decode(page.getPreviousCursor()), 2));
+        assertSameResults(() -> mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8),
+                time("13:00"), null, MealCursor.decode(page.getNextCursor()), 2));
+    }
+
+    @Test
+    public void testWriteThrough() {
+        mealWorkingSet.setEnabled(true);
+        List<Long> before = ids(mealService.findMeals(UserServiceTest.USERNAME, date(2014,5,1), date(2014,5,2), null, null, 1, 10));
+        long misses = mealWorkingSet.getMissCount();
+
+        List<Meal> saved = mealService.saveMeals(UserServiceTest.USERNAME, Collections.singletonList(
+                new MealDTO(null, date(2014,5,1), time("10:00"), "working set", 100L)));
+        Long id = saved.get(0).getId();
+
+        SearchResult<MealDTO> after = mealService.findMeals(UserServiceTest.USERNAME, date(2014,5,1), date(2014,5,2), null, null, 1, 10);
+        assertEquals(before.size() + 1, after.getResult().size());
+        assertTrue(ids(after).contains(id));
+        assertEquals("the saved meal must be applied without reloading", misses, mealWorkingSet.getMissCount());
+
+        mealService.deleteMeals(UserServiceTest.USERNAME, Collections.singletonList(id));
+
+        assertFalse(ids(mealService.findMeals(UserServiceTest.USERNAME, date(2014,5,1), date(2014,5,2), null, null, 1, 10)).contains(id));
+        assertEquals(misses, mealWorkingSet.getMissCount());
+        assertEquals("the loaded meals drifted from the database", 0, mealWorkingSet.verify());
+    }
+
+    @Test
+    public void testInconsistencyDetected() {
+        mealWorkingSet.setEnabled(true);
+        mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+        assertEquals(1, mealWorkingSet.size());
+
+        String description = setDescription(10L, "changed behind the working set");
+
+        try {
+            assertEquals(1, mealWorkingSet.verify());
+            assertEquals(0, mealWorkingSet.size());
+        } finally {
+            setDescription(10L, description);
+        }
+    }
+
+    @Test
+    public void testEvictionUnderBudget() {
+        mealWorkingSet.setEnabled(true);
+        mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+        assertEquals(1, mealWorkingSet.size());
+        long evictions = mealWorkingSet.getEvictionCount();
+
+        mealWorkingSet.setMaxBytes(100);
+
+        assertEquals(0, mealWorkingSet.size());
+        assertEquals(evictions + 1, mealWorkingSet.getEvictionCount());
+
+        SearchResult<MealDTO> result = mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,2), null, null, 1);
+        assertFalse("too many meals for the budget, the search must go to the database", result.getResult().isEmpty());
+        assertEquals(0, mealWorkingSet.size());
+    }
+
+    @Test
+    public void testTooLargeUserRemembered() {
+        mealWorkingSet.setEnabled(true);
+        mealWorkingSet.setMaxBytes(100);
+        long misses = mealWorkingSet.getMissCount();
+        long known = metricRegistry.counter("cache.mealWorkingSet.tooLarge.hits").getCount();
+
+        mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+        mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+
+        assertEquals(misses + 2, mealWorkingSet.getMissCount());
+        assertEquals("the meals of a user known to be too many must not be read again", known + 1,
+                metricRegistry.counter("cache.mealWorkingSet.tooLarge.hits").getCount());
+
+        List<Meal> saved = mealService.saveMeals(UserServiceTest.USERNAME, Collections.singletonList(
+                new MealDTO(null, date(2014,5,1), time("10:00"), "working set", 100L)));
+
+        try {
+            mealService.findMeals(UserServiceTest.USERNAME, date(2015,1,1), date(2015,1,8), null, null, 1, 10);
+            assertEquals("a changed user must be looked up again", known + 1,
+                    metricRegistry.counter("cache.mealWorkingSet.tooLarge.hits").getCount());
+        } finally {
+            mealService.deleteMeals(UserServiceTest.USERNAME, Collections.singletonList(saved.get(0).getId()));
+        }
+    }
+
+    private void assertSameResults(Supplier<SearchResult<MealDTO>> search) {
+        mealWorkingSet.setEnabled(false);
+        SearchResult<MealDTO> expected = search.get();
+
+        mealWorkingSet.setEnabled(true);
+        search.get();
+        long hits = mealWorkingSet.getHitCount();
+        SearchResult<MealDTO> actual = search.get();
+        assertEquals("the search must be answered by the working set", hits + 1, mealWorkingSet.getHitCount());
+
+        assertEquals(expected.getResultsCount(), actual.getResultsCount());
+        assertEquals(ids(expected), ids(actual));
+        assertEquals(expected.getPreviousCursor(), actual.getPreviousCursor());
+        assertEquals(expected.getNextCursor(), actual.getNextCursor());
+        assertEquals(descriptions(expected), descriptions(actual));
+    }
+
+    private String setDescription(Long id, String description) {
+        return new TransactionTemplate(transactionManager).execute((status) -> {
+            String previous = em.find(Meal.class, id).getDescription();
+            em.createQuery("update Meal m set m.description = :description where m.id = :id")
+                    .setParameter("description", description)
+                    .setParameter("id", id)
+                    .executeUpdate();
+            return previous;
+        });
+    }
+
+    private List<Long> ids(SearchResult<MealDTO> result) {
+        return result.getResult().stream().map(MealDTO::getId).collect(Collectors.toList());
+    }
+
+    private List<String> descriptions(SearchResult<MealDTO> result) {
+        return result.getResult().stream()
+                .map((meal) -> meal.getDescription() + " " + meal.getTime() + " " + new Date(meal.getDate().getTime()))
+                .collect(Collectors.toList());
+    }
+}
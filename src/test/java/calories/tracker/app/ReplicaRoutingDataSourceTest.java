@@ -0,0 +1,167 @@
+package calories.tracker.app;
+
+
+import calories.tracker.config.root.ReplicaRoutingDataSource;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @After
+    public void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testReadOnlyTransactionsGoToReplica() {
+        DataSource dataSource = routing(database("routing-primary"), database("routing-replica"));
+
+        assertEquals("routing-replica", readNode(dataSource));
+        assertEquals("routing-primary", writeNode(dataSource));
+        assertEquals("routing-primary", new JdbcTemplate(dataSource).queryForObject("select name from NODE", String.class));
+    }
+
+    @Test
+    public void testReadOnlyJpaTransactionsGoToReplica() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(JpaConfig.class)) {
+            NodeService nodeService = context.getBean(NodeService.class);
+
+            assertEquals("jpa-replica", nodeService.readNode());
+            assertEquals("jpa-primary", nodeService.writeNode());
+        }
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        DataSource dataSource = routing(database("sticky-primary"), database("sticky-replica"));
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(UserServiceTest.USERNAME, null));
+
+        assertEquals("sticky-replica", readNode(dataSource));
+        writeNode(dataSource);
+        assertEquals("reads right after a write must see it", "sticky-primary", readNode(dataSource));
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("other", null));
+        assertEquals("sticky-replica", readNode(dataSource));
+    }
+
+    @Test
+    public void testFailoverToPrimary() {
+        DriverManagerDataSource unreachable = new DriverManagerDataSource("jdbc:hsqldb:hsql://localhost:1/none", "sa", "");
+        DataSource dataSource = routing(database("failover-primary"), unreachable);
+
+        assertEquals("failover-primary", readNode(dataSource));
+        assertEquals(1, metricRegistry.counter("db.routing.failovers").getCount());
+
+        assertEquals("failover-primary", readNode(dataSource));
+        assertEquals("unavailable replica must be skipped", 1, metricRegistry.counter("db.routing.failovers").getCount());
+    }
+
+    private DataSource routing(DataSource primary, DataSource replica) {
+        return new ReplicaRoutingDataSource(primary, Collections.singletonList(replica), 60000, 60000, metricRegistry).lazy();
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:hsqldb:mem:" + name, "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table NODE (name varchar(50))");
+        jdbcTemplate.update("insert into NODE values (?)", name);
+        return dataSource;
+    }
+
+    private String readNode(DataSource dataSource) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute((status) ->
+                new JdbcTemplate(dataSource).queryForObject("select name from NODE", String.class));
+    }
+
+    private String writeNode(DataSource dataSource) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        return transactionTemplate.execute((status) -> {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.update("update NODE set name = name");
+            return jdbcTemplate.queryForObject("select name from NODE", String.class);
+        });
+    }
+
+    /**
+     * the routing behind the lazy proxy, the JPA transaction manager and a transactional service, set up like the
+     * application does
+     */
+    @Configuration
+    @EnableTransactionManagement
+    static class JpaConfig {
+
+        @Bean
+        public DataSource dataSource() {
+            return new ReplicaRoutingDataSource(database("jpa-primary"), Collections.singletonList(database("jpa-replica")),
+                    60000, 60000, new MetricRegistry()).lazy();
+        }
+
+        @Bean
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+            entityManagerFactoryBean.setDataSource(dataSource);
+            entityManagerFactoryBean.setPackagesToScan(NodeService.class.getPackage().getName() + ".none");
+            entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            return entityManagerFactoryBean;
+        }
+
+        @Bean
+        public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+            JpaTransactionManager transactionManager = new JpaTransactionManager();
+            transactionManager.setEntityManagerFactory(entityManagerFactory);
+            transactionManager.setDataSource(dataSource);
+            return transactionManager;
+        }
+
+        @Bean
+        public NodeService nodeService() {
+            return new NodeService();
+        }
+    }
+
+    static class NodeService {
+
+        @PersistenceContext
+        private EntityManager em;
+
+        @Transactional(readOnly = true)
+        public String readNode() {
+            return (String) em.createNativeQuery("select name from NODE").getSingleResult();
+        }
+
+        @Transactional
+        public String writeNode() {
+            em.createNativeQuery("update NODE set name = name").executeUpdate();
+            return (String) em.createNativeQuery("select name from NODE").getSingleResult();
+        }
+    }
+}
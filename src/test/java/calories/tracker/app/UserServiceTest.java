@@ -5,6 +5,7 @@ import calories.tracker.app.model.User;
 import calories.tracker.app.services.UserService;
 import calories.tracker.config.root.RootContextConfig;
 import calories.tracker.config.root.TestConfiguration;
+import com.codahale.metrics.MetricRegistry;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +30,9 @@ public class UserServiceTest {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private MetricRegistry metricRegistry;
+
     @PersistenceContext
     private EntityManager em;
 
@@ -49,6 +53,25 @@ public class UserServiceTest {
         assertTrue("Unexpected user " + user.getUsername(), user.getUsername().equals(USERNAME));
     }
 
+    @Test
+    public void testUserLookupCached() {
+        userService.findUserByUsername(USERNAME);
+        long hits = (Long) metricRegistry.getGauges().get("cache.users-by-username.hits").getValue();
+
+        User user = userService.findUserByUsername(USERNAME);
+
+        assertEquals(USERNAME, user.getUsername());
+        assertEquals("second lookup should be a cache hit", hits + 1,
+                metricRegistry.getGauges().get("cache.users-by-username.hits").getValue());
+
+        userService.updateUserMaxCaloriesPerDay(USERNAME, 1500L);
+        hits = (Long) metricRegistry.getGauges().get("cache.users-by-username.hits").getValue();
+
+        assertEquals(Long.valueOf(1500L), userService.findUserByUsername(USERNAME).getMaxCaloriesPerDay());
+        assertEquals("the update should keep the username cached", hits + 1,
+                metricRegistry.getGauges().get("cache.users-by-username.hits").getValue());
+    }
+
     @Test
     public void testUserNotFound() {
         User user = findUserByUsername("doesnotexist");
@@ -0,0 +1,102 @@
+package calories.tracker.app.benchmark;
+
+import calories.tracker.app.dto.MealDTO;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Compares the payload size and the encode / decode time of a page of 10k meals, as sent to and received from
+ * the sync clients, in plain JSON and in the Smile and CBOR binary encodings.
+ *
+ * The payload sizes are printed before the benchmarks are run:
+ *
+ * mvn test-compile exec:java -Dexec.mainClass=calories.tracker.app.benchmark.BinaryJsonBenchmark -Dexec.classpathScope=test
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryJsonBenchmark {
+
+    private static final int MEALS = 10000;
+    private static final String[] DESCRIPTIONS = {"Chickpea with roasted cauliflower", "Salmon with bulgur and grilled courgettes",
+            "Cowboy Beef", "Scrambled eggs with toast and orange juice", "Greek salad"};
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private List<MealDTO> meals;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = objectMapper(format);
+        writer = objectMapper.writer();
+        reader = objectMapper.reader(new TypeReference<List<MealDTO>>() {});
+        meals = meals();
+        payload = writer.writeValueAsBytes(meals);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return writer.writeValueAsBytes(meals);
+    }
+
+    @Benchmark
+    public List<MealDTO> decode() throws IOException {
+        return reader.readValue(payload);
+    }
+
+    private static ObjectMapper objectMapper(String format) {
+        JsonFactory factory = format.equals("smile") ? new SmileFactory() :
+                format.equals("cbor") ? new CBORFactory() : new JsonFactory();
+        return new ObjectMapper(factory).registerModule(new AfterburnerModule());
+    }
+
+    private static List<MealDTO> meals() {
+        List<MealDTO> meals = new ArrayList<>(MEALS);
+
+        for (int i = 0; i < MEALS; i++) {
+            meals.add(new MealDTO(100000L + i, new Date(115, 0, 1 + i / 3), Time.valueOf((8 + (i % 3) * 5) + ":30:00"),
+                    DESCRIPTIONS[i % DESCRIPTIONS.length], 200L + (i * 37) % 1500));
+        }
+
+        return meals;
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        List<MealDTO> meals = meals();
+
+        for (String format : new String[]{"json", "smile", "cbor"}) {
+            System.out.println(format + " payload of " + MEALS + " meals: " +
+                    objectMapper(format).writeValueAsBytes(meals).length + " bytes");
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(BinaryJsonBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
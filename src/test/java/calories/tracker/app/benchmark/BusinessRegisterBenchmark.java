@@ -0,0 +1,99 @@
+package calories.tracker.app.benchmark;
+
+import calories.tracker.app.dao.BusinessRegisterIndex;
+import calories.tracker.app.dao.BusinessRegisterIndexBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Measures the lookups done on each firm save against a business register index of a million entries - the
+ * GC profiler shows that finding an entry and checking its dic and ic dph allocate nothing.
+ *
+ * mvn test-compile exec:java -Dexec.mainClass=calories.tracker.app.benchmark.BusinessRegisterBenchmark -Dexec.classpathScope=test
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BusinessRegisterBenchmark {
+
+    private static final int ENTRIES = 1000000;
+
+    private Path directory;
+    private BusinessRegisterIndex index;
+    private String[] icos;
+    private String[] dics;
+    private String[] icDphs;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("register");
+        Path dump = directory.resolve("register.csv");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(dump, StandardCharsets.UTF_8)) {
+            writer.write("ico,dic,ic_dph,name,address\n");
+            for (int i = 0; i < ENTRIES; i++) {
+                long dic = 2020000000L + i;
+                writer.write((30000000 + i) + "," + dic + ",SK" + dic + ",Firm " + i + " s.r.o.,Street " + i + "\n");
+            }
+        }
+
+        Path indexFile = directory.resolve("register.idx");
+        BusinessRegisterIndexBuilder.build(dump, indexFile);
+        index = BusinessRegisterIndex.open(indexFile);
+
+        icos = new String[1024];
+        dics = new String[icos.length];
+        icDphs = new String[icos.length];
+        for (int i = 0; i < icos.length; i++) {
+            int entry = (int) ((i * 7919L) % ENTRIES);
+            icos[i] = String.valueOf(30000000 + entry);
+            dics[i] = String.valueOf(2020000000L + entry);
+            icDphs[i] = "SK" + dics[i];
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(directory.resolve("register.idx"));
+        Files.delete(directory.resolve("register.csv"));
+        Files.delete(directory);
+    }
+
+    /**
+     * the check of a firm with all its identifiers filled in
+     */
+    @Benchmark
+    public boolean checkFirm() {
+        int i = next++ & (icos.length - 1);
+        int entry = index.findByIco(icos[i]);
+        return entry >= 0 && index.dicMatches(entry, dics[i]) && index.icDphMatches(entry, icDphs[i]);
+    }
+
+    @Benchmark
+    public int findByDic() {
+        return index.findByDic(dics[next++ & (dics.length - 1)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BusinessRegisterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,128 @@
+package calories.tracker.app.benchmark;
+
+import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.User;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.*;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Compares building a criteria query on each search, the way MealRepository did before, with binding the
+ * parameters of a query text rendered once per combination of the search criteria, as it does now.
+ *
+ * Both run a count and a page of the test data, with all the optional criteria set:
+ *
+ * mvn test-compile exec:java -Dexec.mainClass=calories.tracker.app.benchmark.MealQueryBenchmark -Dexec.classpathScope=test
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MealQueryBenchmark {
+
+    private static final String USERNAME = "test123";
+    private static final Date FROM_DATE = new Date(115, 0, 1);
+    private static final Date TO_DATE = new Date(115, 0, 8);
+    private static final Time FROM_TIME = Time.valueOf("11:00:00");
+    private static final Time TO_TIME = Time.valueOf("20:00:00");
+
+    private AnnotationConfigApplicationContext context;
+    private TransactionTemplate readOnlyTransaction;
+    private EntityManagerFactory entityManagerFactory;
+    private MealRepository mealRepository;
+
+    @Setup
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().setActiveProfiles("test");
+        context.register(TestConfiguration.class, RootContextConfig.class);
+        context.refresh();
+
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        mealRepository = context.getBean(MealRepository.class);
+
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * the former queries - a criteria tree built and rendered to JPQL on every call
+     */
+    @Benchmark
+    public int criteriaQueries() {
+        return readOnlyTransaction.execute((status) -> {
+            EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+
+            CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+            Root<Meal> countRoot = countQuery.from(Meal.class);
+            countQuery.select(cb.count(countRoot));
+            countQuery.where(whereCondition(cb, countRoot));
+            Long count = em.createQuery(countQuery).getSingleResult();
+
+            CriteriaQuery<Object[]> searchQuery = cb.createQuery(Object[].class);
+            Root<Meal> searchRoot = searchQuery.from(Meal.class);
+            searchQuery.multiselect(searchRoot.get("id"), searchRoot.get("date"), searchRoot.get("time"),
+                    searchRoot.get("description"), searchRoot.get("calories"));
+            searchQuery.where(whereCondition(cb, searchRoot));
+            searchQuery.orderBy(cb.desc(searchRoot.get("date")), cb.asc(searchRoot.get("time")), cb.asc(searchRoot.get("id")));
+            List<Object[]> page = em.createQuery(searchQuery).setMaxResults(10).getResultList();
+
+            return count.intValue() + page.size();
+        });
+    }
+
+    @Benchmark
+    public int templateQueries() {
+        return readOnlyTransaction.execute((status) -> {
+            Long count = mealRepository.countMealsByDateTime(USERNAME, FROM_DATE, TO_DATE, FROM_TIME, TO_TIME);
+            return count.intValue() +
+                    mealRepository.findMealsByDateTime(USERNAME, FROM_DATE, TO_DATE, FROM_TIME, TO_TIME, 1, 10).size();
+        });
+    }
+
+    private static Predicate[] whereCondition(CriteriaBuilder cb, Root<Meal> root) {
+        Join<Meal, User> user = root.join("user");
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(user.<String>get("username"), USERNAME));
+        predicates.add(cb.greaterThanOrEqualTo(root.<Date>get("date"), FROM_DATE));
+        predicates.add(cb.lessThanOrEqualTo(root.<Date>get("date"), TO_DATE));
+        predicates.add(cb.greaterThanOrEqualTo(root.<Date>get("time"), FROM_TIME));
+        predicates.add(cb.lessThanOrEqualTo(root.<Date>get("time"), TO_TIME));
+        return predicates.toArray(new Predicate[]{});
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MealQueryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
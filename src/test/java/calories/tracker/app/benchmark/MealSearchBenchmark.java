@@ -0,0 +1,125 @@
+package calories.tracker.app.benchmark;
+
+import calories.tracker.app.dao.MealRepository;
+import calories.tracker.app.dao.UserRepository;
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.model.Meal;
+import calories.tracker.app.model.User;
+import calories.tracker.app.services.UserService;
+import calories.tracker.config.root.RootContextConfig;
+import calories.tracker.config.root.TestConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Compares the cost of reading a page of meals as entities and mapping them to DTOs, the way the searches did
+ * before, with selecting the columns straight into DTOs, as MealRepository does now.
+ *
+ * Run it with the GC profiler, to see the allocations per page besides the time:
+ *
+ * mvn test-compile exec:java -Dexec.mainClass=calories.tracker.app.benchmark.MealSearchBenchmark -Dexec.classpathScope=test
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MealSearchBenchmark {
+
+    private static final String USERNAME = "benchmark";
+    private static final int MEALS = 10000;
+    private static final Date FROM_DATE = new Date(0);
+    private static final Date TO_DATE = new Date(Long.MAX_VALUE / 2);
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    private AnnotationConfigApplicationContext context;
+    private TransactionTemplate readOnlyTransaction;
+    private EntityManagerFactory entityManagerFactory;
+    private MealRepository mealRepository;
+
+    @Setup
+    public void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().setActiveProfiles("test");
+        context.register(TestConfiguration.class, RootContextConfig.class);
+        context.refresh();
+
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        mealRepository = context.getBean(MealRepository.class);
+
+        context.getBean(UserService.class).createUser(USERNAME, "benchmark@gmail.com", "Password3");
+
+        TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transaction.execute((status) -> {
+            User user = context.getBean(UserRepository.class).findUserByUsername(USERNAME);
+
+            List<Meal> meals = new ArrayList<>(MEALS);
+            for (int i = 0; i < MEALS; i++) {
+                meals.add(new Meal(user, new Date(115, 0, 1 + i / 3), Time.valueOf((8 + (i % 3) * 5) + ":00:00"),
+                        "meal " + i, 500L));
+            }
+            mealRepository.insertMeals(meals);
+            return null;
+        });
+
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * the former read path - meals hydrated as managed entities along with their user, then mapped to DTOs
+     */
+    @Benchmark
+    public List<MealDTO> entitiesMappedToDTOs() {
+        return readOnlyTransaction.execute((status) -> {
+            EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+            List<Meal> meals = em.createQuery("select m from Meal m join fetch m.user u " +
+                    "where u.username = :username and m.date >= :fromDate and m.date <= :toDate " +
+                    "order by m.date desc, m.time asc, m.id asc", Meal.class)
+                    .setParameter("username", USERNAME)
+                    .setParameter("fromDate", FROM_DATE)
+                    .setParameter("toDate", TO_DATE)
+                    .setMaxResults(pageSize)
+                    .getResultList();
+            return MealDTO.mapFromMealsEntities(meals);
+        });
+    }
+
+    @Benchmark
+    public List<MealDTO> projection() {
+        return readOnlyTransaction.execute((status) ->
+                mealRepository.findMealsByDateTime(USERNAME, FROM_DATE, TO_DATE, null, null, 1, pageSize));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MealSearchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,90 @@
+package calories.tracker.app.benchmark;
+
+import calories.tracker.app.dto.MealDTO;
+import calories.tracker.app.dto.MealsDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Measures the time and the bytes allocated to serialize a page of meals to JSON, as the search replies are
+ * written, with and without the generated accessors of the Afterburner module.
+ *
+ * mvn test-compile exec:java -Dexec.mainClass=calories.tracker.app.benchmark.MealsSerializationBenchmark -Dexec.classpathScope=test
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MealsSerializationBenchmark {
+
+    @Param({"10", "100"})
+    private int pageSize;
+
+    @Param({"false", "true"})
+    private boolean afterburner;
+
+    private ObjectWriter writer;
+    private MealsDTO page;
+
+    /**
+     * discards the written bytes, so that only the serialization is measured
+     */
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        if (afterburner) {
+            objectMapper.registerModule(new AfterburnerModule());
+        }
+
+        writer = objectMapper.writer();
+
+        List<MealDTO> meals = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            meals.add(new MealDTO((long) i, new Date(115, 0, 1 + i / 3), Time.valueOf((8 + (i % 3) * 5) + ":30:00"),
+                    "meal " + i, 500L + i));
+        }
+        page = new MealsDTO(1, 10, false, null, "cursor", meals);
+    }
+
+    @Benchmark
+    public MealsDTO serialize() throws IOException {
+        writer.writeValue(sink, page);
+        return page;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MealsSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}